@@ -19,9 +19,12 @@
 package com.github.owlcs.map;
 
 import com.github.owlcs.ontapi.jena.model.OntModel;
+import org.apache.jena.graph.Factory;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFOps;
 import org.apache.jena.shared.PrefixMapping;
 
 import java.util.Objects;
@@ -215,6 +218,24 @@ public interface MapManager {
         default void run(Model source, Model target) throws MapJenaException {
             run(source.getGraph(), target.getGraph());
         }
+
+        /**
+         * Performs an inference operation over the {@code source} data graph
+         * pushing the result triples into the specified {@code sink}.
+         * This is intended for bulk processing, when the result is too large to be kept in memory.
+         * The default implementation collects the whole result into an in-memory graph first,
+         * an engine implementation may (and is expected to) override it to stream triples as they are produced.
+         *
+         * @param source a graph with data to infer, not {@code null}
+         * @param sink   a {@link StreamRDF} to write mapping results, not {@code null}
+         * @throws MapJenaException in case if something goes wrong
+         * @see #run(Graph, Graph)
+         */
+        default void run(Graph source, StreamRDF sink) throws MapJenaException {
+            Graph target = Factory.createGraphMem();
+            run(source, target);
+            StreamRDFOps.sendGraphToStream(target, sink);
+        }
     }
 
 }
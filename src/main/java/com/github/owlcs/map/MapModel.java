@@ -23,6 +23,7 @@ import com.github.owlcs.ontapi.jena.model.OntID;
 import com.github.owlcs.ontapi.jena.model.OntModel;
 import com.github.owlcs.ontapi.jena.model.OntObjectProperty;
 import org.apache.jena.graph.Graph;
+import org.apache.jena.riot.system.StreamRDF;
 
 import java.util.stream.Stream;
 
@@ -185,4 +186,17 @@ public interface MapModel {
     default void runInference(Graph source, Graph target) throws MapJenaException {
         getManager().getInferenceEngine(this).run(source, target);
     }
+
+    /**
+     * Performs an inference operation over the given {@code source} graph,
+     * pushing the result triples into the specified {@code sink}.
+     *
+     * @param source {@link Graph}, not {@code null}
+     * @param sink   {@link StreamRDF}, not {@code null}
+     * @throws MapJenaException unable to perform inference
+     * @see MapManager.InferenceEngine#run(Graph, StreamRDF)
+     */
+    default void runInference(Graph source, StreamRDF sink) throws MapJenaException {
+        getManager().getInferenceEngine(this).run(source, sink);
+    }
 }
@@ -0,0 +1,201 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.owlcs.map.spin;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.sparql.core.DatasetImpl;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.expr.ExprEvalException;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.function.FunctionEnv;
+import org.apache.jena.sparql.util.Context;
+import org.topbraid.spin.arq.ARQFactory;
+import org.topbraid.spin.arq.DatasetWithDifferentDefaultModel;
+import org.topbraid.spin.model.SPINFactory;
+import org.topbraid.spin.model.Variable;
+import org.topbraid.spin.util.SPINUtil;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A SPIN expression (an RDF tree of a function call, a variable or a constant),
+ * that is parsed once into an executable form.
+ * It is an alternative of {@link org.topbraid.spin.util.SPINExpressions#evaluate SPINExpressions.evaluate},
+ * which reads the RDF tree and builds a query on each call.
+ * If the expression is pure (see {@link ExpressionFunctionBody}), it is evaluated in place without query execution.
+ * <p>
+ * While inference the compiled expressions are cached in the {@link MapARQFactory#COMPILED_EXPRESSIONS context}
+ * by expression node, the cache is cleared by the inference engine when the mapping is changed.
+ *
+ * @see com.github.owlcs.map.spin.functions.spin.eval
+ * @see com.github.owlcs.map.spin.functions.spinmap.targetResource
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class CompiledExpression {
+
+    /**
+     * Evaluates the expression.
+     *
+     * @param binding {@link Binding} with the variables of the expression, not {@code null}
+     * @param env     {@link FunctionEnv} of the calling function, not {@code null}
+     * @return {@link NodeValue}, not {@code null}
+     * @throws ExprEvalException if the expression has no result
+     */
+    public abstract NodeValue eval(Binding binding, FunctionEnv env) throws ExprEvalException;
+
+    /**
+     * Gets the compiled expression for the given node from the cache of the execution context,
+     * compiling it against the {@link FunctionEnv#getActiveGraph() active graph} if it is absent.
+     *
+     * @param expression {@link Node} uri or blank, not {@code null}
+     * @param env        {@link FunctionEnv}, not {@code null}
+     * @return {@link CompiledExpression}
+     */
+    public static CompiledExpression get(Node expression, FunctionEnv env) {
+        Context context = env.getContext();
+        Map<Node, CompiledExpression> cache = context == null ? null : context.get(MapARQFactory.COMPILED_EXPRESSIONS);
+        if (cache == null) {
+            return compile(expression, env);
+        }
+        CompiledExpression res = cache.get(expression);
+        if (res == null) {
+            // no computeIfAbsent: the compilation reads graph and may be long
+            cache.put(expression, res = compile(expression, env));
+        }
+        return res;
+    }
+
+    private static CompiledExpression compile(Node expression, FunctionEnv env) {
+        Model m = SpinModelConfig.createSpinModel(env.getActiveGraph());
+        return compile(m.wrapAsResource(expression), MapARQFactory.get(env));
+    }
+
+    /**
+     * Compiles the given SPIN expression.
+     *
+     * @param expression {@link Resource} from a model with spin personalities, not {@code null}
+     * @param factory    {@link ARQFactory} to create the query, not {@code null}
+     * @return {@link CompiledExpression}
+     */
+    public static CompiledExpression compile(Resource expression, ARQFactory factory) {
+        RDFNode expr = SPINFactory.asExpression(Objects.requireNonNull(expression));
+        if (expr instanceof Variable) {
+            return new VariableExpression(Var.alloc(((Variable) expr).getName()));
+        }
+        if (expr.isURIResource()) {
+            return new ConstantExpression(NodeValue.makeNode(expr.asNode()));
+        }
+        Query query = factory.createExpressionQuery((Resource) expr);
+        Optional<ExpressionFunctionBody> inline = ExpressionFunctionBody.compile(query);
+        if (inline.isPresent()) {
+            return new InlineExpression(inline.get());
+        }
+        return new QueryExpression(query);
+    }
+
+    /**
+     * A constant (URI).
+     */
+    public static class ConstantExpression extends CompiledExpression {
+        private final NodeValue value;
+
+        protected ConstantExpression(NodeValue value) {
+            this.value = value;
+        }
+
+        @Override
+        public NodeValue eval(Binding binding, FunctionEnv env) {
+            return value;
+        }
+    }
+
+    /**
+     * A variable, which is taken from the binding.
+     */
+    public static class VariableExpression extends CompiledExpression {
+        private final Var var;
+
+        protected VariableExpression(Var var) {
+            this.var = var;
+        }
+
+        @Override
+        public NodeValue eval(Binding binding, FunctionEnv env) {
+            Node res = binding.get(var);
+            if (res == null) {
+                throw new ExprEvalException("Expression has no result");
+            }
+            return NodeValue.makeNode(res);
+        }
+    }
+
+    /**
+     * A pure expression, that is evaluated in place.
+     */
+    public static class InlineExpression extends CompiledExpression {
+        private final ExpressionFunctionBody body;
+
+        protected InlineExpression(ExpressionFunctionBody body) {
+            this.body = body;
+        }
+
+        @Override
+        public NodeValue eval(Binding binding, FunctionEnv env) {
+            return body.exec(binding, env);
+        }
+    }
+
+    /**
+     * An expression, that requires a query execution (e.g. it contains {@code EXISTS}).
+     */
+    public static class QueryExpression extends CompiledExpression {
+        private final Query query;
+
+        protected QueryExpression(Query query) {
+            this.query = query;
+        }
+
+        @Override
+        public NodeValue eval(Binding binding, FunctionEnv env) {
+            Model model = ModelFactory.createModelForGraph(env.getActiveGraph());
+            Dataset ds = new DatasetWithDifferentDefaultModel(model, DatasetImpl.wrap(env.getDataset()));
+            QuerySolutionMap bindings = new QuerySolutionMap();
+            binding.vars().forEachRemaining(v -> bindings.add(v.getVarName(), model.asRDFNode(binding.get(v))));
+            try (QueryExecution exec = MapARQFactory.get(env).createQueryExecution(query, ds, bindings)) {
+                RDFNode res = SPINUtil.getFirstResult(exec);
+                if (res != null) {
+                    return NodeValue.makeNode(res.asNode());
+                }
+            }
+            throw new ExprEvalException("Expression has no result");
+        }
+    }
+}
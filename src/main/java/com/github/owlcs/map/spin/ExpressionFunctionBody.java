@@ -0,0 +1,200 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.owlcs.map.spin;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.algebra.walker.Walker;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.core.VarExprList;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.apache.jena.sparql.expr.*;
+import org.apache.jena.sparql.function.FunctionEnv;
+import org.apache.jena.sparql.syntax.Element;
+import org.apache.jena.sparql.syntax.ElementBind;
+import org.apache.jena.sparql.syntax.ElementFilter;
+import org.apache.jena.sparql.syntax.ElementGroup;
+
+import java.util.*;
+
+/**
+ * A compiled form of a SPARQL-bodied function, whose body is a pure expression,
+ * i.e. a {@code SELECT} query with a single flat group pattern consisting of {@code BIND}s and {@code FILTER}s only,
+ * e.g. {@code SELECT ?r WHERE { BIND(?arg1 + ?arg2 AS ?r) }}.
+ * Such a body does not need any query execution: the expressions are evaluated in place,
+ * with the same semantic as ARQ does:
+ * {@code BIND}s are evaluated in order and leave the variable unbound in case of error,
+ * {@code FILTER}s are applied to the whole group, then the projection expressions are evaluated.
+ * Bodies that have graph patterns, sub-queries, {@code EXISTS}, aggregates or solution modifiers
+ * (except {@code DISTINCT} and {@code LIMIT}) are not compiled and must be executed as queries.
+ *
+ * @see MapARQFactory.ARQFunction
+ */
+@SuppressWarnings("WeakerAccess")
+public class ExpressionFunctionBody {
+    private final List<Var> binds;
+    private final List<Expr> values;
+    // the number of leading binds, that are evaluated before the filters:
+    private final int filtered;
+    private final List<Expr> filters;
+    private final Var result;
+
+    protected ExpressionFunctionBody(List<Var> binds, List<Expr> values, int filtered, List<Expr> filters, Var result) {
+        this.binds = binds;
+        this.values = values;
+        this.filtered = filtered;
+        this.filters = filters;
+        this.result = result;
+    }
+
+    /**
+     * Tries to compile the given function body query.
+     *
+     * @param query {@link Query}, not {@code null}
+     * @return {@code Optional} of {@link ExpressionFunctionBody}, empty if the body is not a pure expression
+     */
+    public static Optional<ExpressionFunctionBody> compile(Query query) {
+        if (!query.isSelectType() || query.isQueryResultStar()
+                || query.hasAggregators() || query.hasGroupBy() || query.hasHaving() || query.hasOrderBy()
+                || query.hasOffset() || query.hasValues() || query.hasDatasetDescription()
+                || (query.hasLimit() && query.getLimit() < 1)) {
+            return Optional.empty();
+        }
+        VarExprList project = query.getProject();
+        if (project.isEmpty()) {
+            return Optional.empty();
+        }
+        List<Var> binds = new ArrayList<>();
+        List<Expr> values = new ArrayList<>();
+        List<Expr> filters = new ArrayList<>();
+        Element pattern = query.getQueryPattern();
+        if (pattern != null) {
+            if (!(pattern instanceof ElementGroup)) {
+                return Optional.empty();
+            }
+            for (Element e : ((ElementGroup) pattern).getElements()) {
+                if (e instanceof ElementBind) {
+                    binds.add(((ElementBind) e).getVar());
+                    values.add(((ElementBind) e).getExpr());
+                } else if (e instanceof ElementFilter) {
+                    filters.add(((ElementFilter) e).getExpr());
+                } else {
+                    return Optional.empty();
+                }
+            }
+        }
+        int filtered = binds.size();
+        // projection expressions are evaluated after filters:
+        project.forEachVarExpr((v, x) -> {
+            if (x == null) return;
+            binds.add(v);
+            values.add(x);
+        });
+        if (values.stream().anyMatch(x -> !isPure(x)) || filters.stream().anyMatch(x -> !isPure(x))) {
+            return Optional.empty();
+        }
+        return Optional.of(new ExpressionFunctionBody(Collections.unmodifiableList(binds),
+                Collections.unmodifiableList(values), filtered, Collections.unmodifiableList(filters),
+                project.getVars().get(0)));
+    }
+
+    /**
+     * Answers {@code true} if the expression does not contain graph patterns or aggregates.
+     *
+     * @param expr {@link Expr}
+     * @return boolean
+     */
+    protected static boolean isPure(Expr expr) {
+        boolean[] res = {true};
+        Walker.walk(expr, new ExprVisitorBase() {
+            @Override
+            public void visit(ExprFunctionOp func) {
+                res[0] = false;
+            }
+
+            @Override
+            public void visit(ExprAggregator eAgg) {
+                res[0] = false;
+            }
+        });
+        return res[0];
+    }
+
+    /**
+     * Evaluates the body.
+     *
+     * @param initial {@link Binding} with the function arguments (and {@code ?this}) bound
+     * @param env     {@link FunctionEnv} of the outer query execution
+     * @return {@link NodeValue}, not {@code null}
+     * @throws ExprEvalException if the result is empty
+     */
+    public NodeValue exec(Binding initial, FunctionEnv env) throws ExprEvalException {
+        BindingMap binding = BindingFactory.create(initial);
+        for (int i = 0; i < binds.size(); i++) {
+            if (i == filtered && !filter(binding, env)) {
+                throw new ExprEvalException("Empty result set for SPIN function");
+            }
+            bind(binding, binds.get(i), values.get(i), env);
+        }
+        if (filtered == binds.size() && !filter(binding, env)) {
+            throw new ExprEvalException("Empty result set for SPIN function");
+        }
+        Node res = binding.get(result);
+        if (res == null) {
+            throw new ExprEvalException("Empty result set for SPIN function");
+        }
+        return NodeValue.makeNode(res);
+    }
+
+    private static void bind(BindingMap binding, Var var, Expr expr, FunctionEnv env) {
+        try {
+            NodeValue v = expr.eval(binding, env);
+            if (v != null) {
+                binding.add(var, v.asNode());
+            }
+        } catch (ExprEvalException e) {
+            // as in ARQ: the variable is left unbound
+        }
+    }
+
+    private boolean filter(Binding binding, FunctionEnv env) {
+        for (Expr f : filters) {
+            try {
+                if (!f.isSatisfied(binding, env)) {
+                    return false;
+                }
+            } catch (ExprEvalException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the result variable.
+     *
+     * @return {@link Var}
+     */
+    public Var getResultVar() {
+        return result;
+    }
+}
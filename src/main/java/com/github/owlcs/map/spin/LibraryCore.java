@@ -0,0 +1,162 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.spin;
+
+import com.github.owlcs.map.spin.system.SystemLibraries;
+import com.github.owlcs.map.spin.vocabulary.AVC;
+import com.github.owlcs.ontapi.jena.impl.UnionModel;
+import com.github.owlcs.ontapi.jena.utils.Graphs;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.shared.PrefixMapping;
+import org.topbraid.spin.system.ExtraPrefixes;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The immutable part of the ONT-MAP library, that is built once per JVM and shared by all {@link MapManagerImpl}s.
+ * It consists of the system library model (all the {@code avc.*} and spin-family graphs, but no primary graph),
+ * the system prefixes and the {@link MapARQFactory ARQ factory} with the native ARQ functions,
+ * the ONT-MAP java functions and all the SPARQL-based system functions.
+ * The bodies of the latter are compiled on the first call, and then the compiled queries are reused by every manager.
+ * The core also holds the {@link MapManagerImpl.FunctionImpl map-function} descriptors of all the system functions
+ * together with their visibility index, they are shared by the managers as well.
+ * A manager does not copy the core, it builds a {@link MapARQFactory#createOverlay(MapConfigImpl) overlay factory},
+ * so that its own (user-defined) functions are visible only within that manager.
+ * <p>
+ * There are two cores, one per {@link MapConfigImpl#optimizeFunctions()} setting,
+ * since it decides whether a system function with {@link AVC#optimize} is executed by java or by SPARQL.
+ * Both are created on demand.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class LibraryCore {
+    private final UnionModel library;
+    private final PrefixMapping prefixes;
+    private final MapARQFactory factory;
+    // URIs of the functions registered in the core factory:
+    private final Set<String> functions;
+    // the read-only manager, that holds the shared map-function descriptors:
+    private final MapManagerImpl system;
+
+    private LibraryCore(boolean optimize) {
+        this.library = MapManagerImpl.createLibraryModel(Graph.emptyGraph);
+        this.prefixes = Graphs.collectPrefixes(SystemLibraries.graphs().values()).lock();
+        this.factory = new MapARQFactory(MapARQFactory.createSharedContext(SystemLibraries.functions(),
+                SystemLibraries.properties()));
+        SystemLibraries.deterministic().forEach(factory::markDeterministic);
+        Set<String> functions = new HashSet<>();
+        SpinModels.spinFunctions(library).forEach(r -> {
+            register(r, optimize);
+            functions.add(r.getURI());
+        });
+        this.functions = Collections.unmodifiableSet(functions);
+        this.system = new MapManagerImpl(this, MapConfigImpl.INSTANCE.setAllOptimizations(optimize));
+    }
+
+    /**
+     * Returns the shared core for the given config.
+     *
+     * @param config {@link MapConfigImpl}, not {@code null}
+     * @return {@link LibraryCore}, the same instance for all configs with the same optimization setting
+     */
+    public static LibraryCore get(MapConfigImpl config) {
+        return Objects.requireNonNull(config, "Null config").optimizeFunctions() ? Optimized.CORE : Plain.CORE;
+    }
+
+    private void register(Resource inModel, boolean optimize) {
+        org.topbraid.spin.model.Function f = inModel.as(org.topbraid.spin.model.Function.class);
+        ExtraPrefixes.add(f);
+        if (f.hasLiteral(AVC.deterministic, true)) {
+            factory.markDeterministic(f.getURI());
+        }
+        if (f.isMagicProperty()) {
+            factory.registerProperty(f);
+            return;
+        }
+        if (!optimize && f.hasProperty(AVC.optimize)) {
+            // unregister java-ARQ body to use spin (SPARQL) body instead:
+            factory.getFunctionRegistry().remove(f.getURI());
+        }
+        factory.registerFunction(f);
+    }
+
+    /**
+     * Returns the system library model, which is the same as a {@link MapManagerImpl#getLibrary() manager library},
+     * but has an empty primary graph.
+     * It must not be modified.
+     *
+     * @return {@link UnionModel}
+     */
+    public UnionModel getLibrary() {
+        return library;
+    }
+
+    /**
+     * Returns all prefixes from the system library.
+     *
+     * @return unmodifiable {@link PrefixMapping}
+     */
+    public PrefixMapping prefixes() {
+        return prefixes;
+    }
+
+    /**
+     * Returns the shared factory, which must not be modified, a manager should use an overlay instead.
+     *
+     * @return {@link MapARQFactory}
+     * @see MapARQFactory#createOverlay(MapConfigImpl)
+     */
+    public MapARQFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * Answers {@code true} if the function with the given URI is a part of the core,
+     * i.e. it has already been registered in the shared factory.
+     *
+     * @param uri String
+     * @return boolean
+     */
+    public boolean contains(String uri) {
+        return functions.contains(uri);
+    }
+
+    /**
+     * Returns the read-only manager, that owns the {@link MapManagerImpl.FunctionImpl map-function}s
+     * for all the system functions.
+     * A {@link MapManagerImpl} looks up a system function here,
+     * unless it has a wrapper of its own (e.g. the function is re-defined in the primary graph).
+     *
+     * @return {@link MapManagerImpl}
+     */
+    MapManagerImpl system() {
+        return system;
+    }
+
+    private static class Optimized {
+        private static final LibraryCore CORE = new LibraryCore(true);
+    }
+
+    private static class Plain {
+        private static final LibraryCore CORE = new LibraryCore(false);
+    }
+}
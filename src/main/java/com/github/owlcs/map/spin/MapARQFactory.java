@@ -18,8 +18,12 @@
 
 package com.github.owlcs.map.spin;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.github.owlcs.map.MapJenaException;
 import com.github.owlcs.map.spin.functions.avc.UUID;
+import com.github.owlcs.map.spin.functions.spif.MintedURIRegistry;
+import com.github.owlcs.map.spin.infer.InferenceMetrics;
+import com.github.owlcs.map.utils.CacheMap;
 import org.apache.jena.atlas.io.IndentedWriter;
 import org.apache.jena.enhanced.UnsupportedPolymorphismException;
 import org.apache.jena.graph.Graph;
@@ -31,12 +35,15 @@ import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.sparql.ARQConstants;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.OpVisitorBase;
+import org.apache.jena.sparql.algebra.walker.Walker;
 import org.apache.jena.sparql.core.*;
 import org.apache.jena.sparql.engine.binding.Binding;
-import org.apache.jena.sparql.expr.Expr;
-import org.apache.jena.sparql.expr.ExprEvalException;
-import org.apache.jena.sparql.expr.ExprList;
-import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.apache.jena.sparql.expr.*;
 import org.apache.jena.sparql.function.Function;
 import org.apache.jena.sparql.function.FunctionEnv;
 import org.apache.jena.sparql.function.FunctionFactory;
@@ -56,11 +63,9 @@ import org.topbraid.spin.vocabulary.SPIN;
 
 import java.io.ByteArrayOutputStream;
 import java.lang.reflect.Field;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
-import java.util.Objects;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 /**
  * An extended spin implementation, that is tightly bound with the {@link Context Jena Context}.
@@ -81,11 +86,95 @@ public class MapARQFactory extends org.topbraid.spin.arq.ARQFactory {
      * @see UUID
      */
     public static final Symbol NODE_TO_VALUE_CACHE = Symbol.create(MapARQFactory.class.getName() + ".NodesCache");
+    /**
+     * A key to hold {@link InferenceMetrics} while inference, if it is absent, function calls are not recorded.
+     *
+     * @see #recordCall(FunctionEnv, String)
+     */
+    public static final Symbol INFERENCE_METRICS = Symbol.create(MapARQFactory.class.getName() + ".Metrics");
+    /**
+     * A key to hold {@link UUID.Mode} - the form of the {@code avc:UUID} output, the default is {@link UUID.Mode#MD5}.
+     *
+     * @see MapConfigImpl#uuidMode()
+     */
+    public static final Symbol UUID_MODE = Symbol.create(MapARQFactory.class.getName() + ".UUIDMode");
+    /**
+     * A key to hold a {@link Graph} to search data in, that is narrower than the whole query graph:
+     * it contains only the source data, the schemas and the target, but no library graphs.
+     * It is present only while inference, otherwise the functions use the active graph.
+     *
+     * @see #getSearchGraph(FunctionEnv)
+     */
+    public static final Symbol SEARCH_GRAPH = Symbol.create(MapARQFactory.class.getName() + ".SearchGraph");
+    /**
+     * A key to hold {@link FunctionResults} - the results of deterministic function calls.
+     * It is present only in the {@link #createChild() child} contexts, that are used while inference.
+     */
+    public static final Symbol FUNCTION_RESULTS = Symbol.create(MapARQFactory.class.getName() + ".FunctionResults");
+    /**
+     * A key to hold {@code Map<Node, CompiledExpression>} - the parsed SPIN expressions.
+     * It is present only in the {@link #createChild() child} contexts, that are used while inference.
+     *
+     * @see CompiledExpression
+     */
+    public static final Symbol COMPILED_EXPRESSIONS = Symbol.create(MapARQFactory.class.getName() + ".Expressions");
+    /**
+     * A key to hold the {@link MapARQFactory} in its own {@link Context},
+     * so that the functions can build and run queries through the factory of the current execution.
+     *
+     * @see #get(FunctionEnv)
+     */
+    public static final Symbol FACTORY = Symbol.create(MapARQFactory.class.getName() + ".Factory");
+    /**
+     * A key to hold {@link MintedURIRegistry} - the URIs produced by {@code spif:buildUniqueURI} while inference.
+     * It is present only in the {@link #createChild() child} contexts, that are used while inference.
+     */
+    public static final Symbol MINTED_URIS = Symbol.create(MapARQFactory.class.getName() + ".MintedURIs");
+
+    // a reference to ?this (or $this) in a function body text:
+    private static final Pattern THIS_REFERENCE = Pattern.compile("[?$]" + SPIN.THIS_VAR_NAME + "\\b");
+    // namespaces of the standard ARQ functions, that never read the current binding:
+    private static final List<String> STANDARD_NAMESPACES = Collections.unmodifiableList(Arrays.asList(
+            ARQConstants.fnPrefix, ARQConstants.mathPrefix, ARQConstants.xsdPrefix,
+            ARQConstants.ARQFunctionLibraryURI, ARQConstants.ARQFunctionLibraryURI_Jena2));
 
     private final Context context;
+    private final int queryCacheSize;
+    private final int functionCacheSize;
+    // the bounded replacements for the spin caches (node2String, string2Query, string2Update):
+    private final Map<String, CacheMap<?, ?>> queryCaches = new LinkedHashMap<>();
+    // URIs of functions whose calls can be memoized, shared with the child factories:
+    private final Set<String> deterministic;
 
     public MapARQFactory(Context context) {
+        this(context, MapConfigImpl.INSTANCE.queryCacheSize(), MapConfigImpl.INSTANCE.functionCacheSize());
+    }
+
+    /**
+     * Creates a factory with bounded caches.
+     *
+     * @param context           {@link Context}, not {@code null}
+     * @param queryCacheSize    int, the maximum size of each query cache
+     * @param functionCacheSize int, the maximum size of the {@link #FUNCTION_RESULTS function cache},
+     *                          that is used by the {@link #createChild() child} factories
+     * @see MapConfigImpl#queryCacheSize()
+     * @see MapConfigImpl#functionCacheSize()
+     */
+    public MapARQFactory(Context context, int queryCacheSize, int functionCacheSize) {
+        this(context, queryCacheSize, functionCacheSize, ConcurrentHashMap.newKeySet());
+    }
+
+    protected MapARQFactory(Context context, int queryCacheSize, int functionCacheSize, Set<String> deterministic) {
         this.context = Objects.requireNonNull(context, "Null context");
+        this.deterministic = Objects.requireNonNull(deterministic);
+        this.queryCacheSize = queryCacheSize;
+        this.functionCacheSize = functionCacheSize;
+        context.put(FACTORY, this);
+        for (String name : Arrays.asList("node2String", "string2Query", "string2Update")) {
+            CacheMap<?, ?> cache = CacheMap.create(queryCacheSize);
+            setPrivateField(name, cache);
+            queryCaches.put(name, cache);
+        }
     }
 
     /**
@@ -99,18 +188,192 @@ public class MapARQFactory extends org.topbraid.spin.arq.ARQFactory {
      */
     public static MapARQFactory createSPINARQFactory(Map<String, Class<? extends Function>> functions,
                                                      Map<String, Class<? extends PropertyFunction>> properties) {
+        return createSPINARQFactory(functions, properties, MapConfigImpl.INSTANCE);
+    }
+
+    /**
+     * Creates a fresh {@link MapARQFactory} with a new {@link Context} inside
+     * and with the cache limits from the given config.
+     *
+     * @param functions  a {@code Map} of {@link Function}s to register, not {@code null}
+     * @param properties a {@code Map} of {@link PropertyFunction}s to register, not {@code null}
+     * @param config     {@link MapConfigImpl}, not {@code null}
+     * @return {@link MapARQFactory}, not {@code null}
+     * @see #createSPINARQFactory(Map, Map)
+     */
+    public static MapARQFactory createSPINARQFactory(Map<String, Class<? extends Function>> functions,
+                                                     Map<String, Class<? extends PropertyFunction>> properties,
+                                                     MapConfigImpl config) {
         // copy of system-wide context:
         Context context = copyContext(ARQ.getContext());
 
         FunctionRegistry fr = FunctionRegistry.get(context);
         PropertyFunctionRegistry pfr = PropertyFunctionRegistry.get(context);
-        // register functions and magic properties:
-        functions.forEach(fr::put);
+        // register functions (wrapped to be able to record calls) and magic properties:
+        functions.forEach((uri, type) -> fr.put(uri, new MeteredFunctionFactory(type)));
+        properties.forEach(pfr::put);
+
+        // a cache to be use while processing avc:UUID, may be turned off:
+        if (config.uuidCacheSize() > 0) {
+            context.put(NODE_TO_VALUE_CACHE, CacheMap.create(config.uuidCacheSize()));
+        }
+        context.put(UUID_MODE, config.uuidMode());
+        return new MapARQFactory(context, config.queryCacheSize(), config.functionCacheSize());
+    }
+
+    /**
+     * Creates a new {@link Context} with a copy of the system-wide ARQ registries and the given functions inside,
+     * that is suitable to be shared between threads and managers (see {@link LibraryCore}):
+     * its {@link FunctionRegistry} is {@link SynchronizedFunctionRegistry synchronized}.
+     * Unlike {@link #createSPINARQFactory(Map, Map, MapConfigImpl)} no caches are put into the context,
+     * they are created per manager, by the {@link #createOverlay(MapConfigImpl) overlay} factory.
+     *
+     * @param functions  a {@code Map} of {@link Function}s to register, not {@code null}
+     * @param properties a {@code Map} of {@link PropertyFunction}s to register, not {@code null}
+     * @return {@link Context}, not {@code null}
+     */
+    public static Context createSharedContext(Map<String, Class<? extends Function>> functions,
+                                              Map<String, Class<? extends PropertyFunction>> properties) {
+        Context res = copyContext(ARQ.getContext());
+        FunctionRegistry fr = FunctionRegistry.get(res);
+        functions.forEach((uri, type) -> fr.put(uri, new MeteredFunctionFactory(type)));
+        PropertyFunctionRegistry pfr = PropertyFunctionRegistry.get(res);
         properties.forEach(pfr::put);
+        return res;
+    }
+
+    /**
+     * Creates a factory, that is layered over this one, which is assumed to be shared and no longer modified
+     * (see {@link LibraryCore}).
+     * The new factory has its own {@link Context} with an {@link OverlayFunctionRegistry},
+     * a copy of the {@link PropertyFunctionRegistry}, its own query caches
+     * and the {@link #NODE_TO_VALUE_CACHE UUID cache} configured by the given config.
+     * All functions registered in the new factory are visible only within it,
+     * while the functions of this factory, including their compiled bodies, are reused as is.
+     * The {@link #markDeterministic(String) deterministic} functions of this factory are inherited.
+     *
+     * @param config {@link MapConfigImpl}, not {@code null}
+     * @return {@link MapARQFactory}, not {@code null}
+     */
+    public MapARQFactory createOverlay(MapConfigImpl config) {
+        Context res = new Context(context) {
+
+            @Override
+            public String toString() {
+                return String.format("%s(overlay):::%s", MapARQFactory.class.getSimpleName(), super.toString());
+            }
+        };
+        FunctionRegistry.set(res, new OverlayFunctionRegistry(getFunctionRegistry()));
+        PropertyFunctionRegistry pfr = getPropertyFunctionRegistry();
+        synchronized (pfr) {
+            PropertyFunctionRegistry.set(res, copy(pfr));
+        }
+        if (config.uuidCacheSize() > 0) {
+            res.put(NODE_TO_VALUE_CACHE, CacheMap.create(config.uuidCacheSize()));
+        }
+        res.put(UUID_MODE, config.uuidMode());
+        Set<String> deterministic = ConcurrentHashMap.newKeySet();
+        deterministic.addAll(this.deterministic);
+        return new MapARQFactory(res, config.queryCacheSize(), config.functionCacheSize(), deterministic);
+    }
 
-        // a cache to be use while processing some target functions (e.g. avc:UUID):
-        context.put(NODE_TO_VALUE_CACHE, new ConcurrentHashMap<>());
-        return new MapARQFactory(context);
+    /**
+     * Returns the graph to search data in by the functions that look up property values (e.g. {@code spl:object}).
+     * While inference it is the {@link #SEARCH_GRAPH narrow search graph}, which does not include any library;
+     * otherwise, e.g. when a function is called by the SPIN API, it is the whole active graph.
+     *
+     * @param env {@link FunctionEnv}, not {@code null}
+     * @return {@link Graph}
+     */
+    public static Graph getSearchGraph(FunctionEnv env) {
+        Context context = env.getContext();
+        Graph res = context == null ? null : context.get(SEARCH_GRAPH);
+        return res == null ? env.getActiveGraph() : res;
+    }
+
+    /**
+     * Creates a lightweight child factory, that shares everything with this one,
+     * but has its own {@link Context} with private function caches
+     * ({@link #NODE_TO_VALUE_CACHE}, {@link #FUNCTION_RESULTS}, {@link #COMPILED_EXPRESSIONS},
+     * {@link #MINTED_URIS})
+     * and its own query caches.
+     * The functions registered in the child (e.g. via {@link #replace(Resource)})
+     * are visible only within the child, the {@link FunctionRegistry} of this factory is not changed.
+     * This allows to run several inferences on the same manager at the same time without any interference.
+     *
+     * @return {@link MapARQFactory}, not {@code null}
+     * @see OverlayFunctionRegistry
+     */
+    public MapARQFactory createChild() {
+        Context res = new Context(context) {
+
+            @Override
+            public String toString() {
+                return String.format("%s(child):::%s", MapARQFactory.class.getSimpleName(), super.toString());
+            }
+        };
+        FunctionRegistry.set(res, new OverlayFunctionRegistry(getFunctionRegistry()));
+        Object nodes = context.get(NODE_TO_VALUE_CACHE);
+        if (nodes instanceof CacheMap) {
+            res.put(NODE_TO_VALUE_CACHE, CacheMap.create(((CacheMap<?, ?>) nodes).maxSize()));
+        }
+        res.put(FUNCTION_RESULTS, new FunctionResults(deterministic, functionCacheSize));
+        res.put(COMPILED_EXPRESSIONS, CacheMap.create(queryCacheSize));
+        res.put(MINTED_URIS, new MintedURIRegistry());
+        res.remove(INFERENCE_METRICS);
+        return new MapARQFactory(res, queryCacheSize, functionCacheSize, deterministic);
+    }
+
+    /**
+     * Marks the function as deterministic,
+     * so that its calls are memoized while inference (i.e. in the {@link #createChild() child} contexts).
+     * The change is visible for all children.
+     *
+     * @param uri String, the function URI, not {@code null}
+     * @see com.github.owlcs.map.spin.vocabulary.AVC#deterministic
+     */
+    public void markDeterministic(String uri) {
+        deterministic.add(Objects.requireNonNull(uri, "Null uri"));
+    }
+
+    /**
+     * Answers {@code true} if the function with the given URI is deterministic.
+     *
+     * @param uri String
+     * @return boolean
+     */
+    public boolean isDeterministic(String uri) {
+        return deterministic.contains(uri);
+    }
+
+    /**
+     * Gets the factory of the current execution from the function environment.
+     * If the function is called outside of any {@link MapARQFactory} context,
+     * the global spin {@link org.topbraid.spin.arq.ARQFactory} is returned.
+     *
+     * @param env {@link FunctionEnv}, can be {@code null}
+     * @return {@link org.topbraid.spin.arq.ARQFactory}, not {@code null}
+     * @see #FACTORY
+     */
+    public static org.topbraid.spin.arq.ARQFactory get(FunctionEnv env) {
+        Context context = env == null ? null : env.getContext();
+        MapARQFactory res = context == null ? null : context.get(FACTORY);
+        return res != null ? res : org.topbraid.spin.arq.ARQFactory.get();
+    }
+
+    /**
+     * Records the function call into the {@link InferenceMetrics}, if there is one in the execution context.
+     *
+     * @param env {@link FunctionEnv}, can be {@code null}
+     * @param uri String, the function URI
+     */
+    public static void recordCall(FunctionEnv env, String uri) {
+        Context context = env == null ? null : env.getContext();
+        if (context == null) return;
+        InferenceMetrics metrics = context.get(INFERENCE_METRICS);
+        if (metrics != null) {
+            metrics.functionCalled(uri);
+        }
     }
 
     /**
@@ -137,11 +400,14 @@ public class MapARQFactory extends org.topbraid.spin.arq.ARQFactory {
     /**
      * Copies a {@link FunctionRegistry} to a new one.
      *
+     * The result is thread-safe, since the registry is shared by the inference workers.
+     *
      * @param from registry to copy from, not {@code null}
      * @return new instance with the same content
+     * @see SynchronizedFunctionRegistry
      */
     public static FunctionRegistry copy(FunctionRegistry from) {
-        FunctionRegistry res = new FunctionRegistry();
+        FunctionRegistry res = new SynchronizedFunctionRegistry();
         from.keys().forEachRemaining(k -> res.put(k, from.get(k)));
         return res;
     }
@@ -149,11 +415,14 @@ public class MapARQFactory extends org.topbraid.spin.arq.ARQFactory {
     /**
      * Copies a {@link PropertyFunctionRegistry} to a new one.
      *
+     * The result is thread-safe, since the registry is shared by the inference workers.
+     *
      * @param from registry to copy from, not {@code null}
      * @return new instance with the same content
+     * @see SynchronizedPropertyFunctionRegistry
      */
     public static PropertyFunctionRegistry copy(PropertyFunctionRegistry from) {
-        PropertyFunctionRegistry res = new PropertyFunctionRegistry();
+        PropertyFunctionRegistry res = new SynchronizedPropertyFunctionRegistry();
         from.keys().forEachRemaining(k -> res.put(k, from.get(k)));
         return res;
     }
@@ -197,6 +466,41 @@ public class MapARQFactory extends org.topbraid.spin.arq.ARQFactory {
         return DatasetFactory.wrap(dg);
     }
 
+    /**
+     * Returns the hit and miss statistics of the caches of this factory:
+     * the query caches, the function caches ({@link #NODE_TO_VALUE_CACHE} and {@link #FUNCTION_RESULTS})
+     * and the {@link #COMPILED_EXPRESSIONS expressions cache}, if they are present in the context.
+     *
+     * @return unmodifiable {@code Map} with cache names as keys
+     */
+    public Map<String, CacheStats> getCacheStats() {
+        Map<String, CacheStats> res = new LinkedHashMap<>();
+        queryCaches.forEach((k, v) -> res.put(k, v.stats()));
+        Object cache = context.get(NODE_TO_VALUE_CACHE);
+        if (cache instanceof CacheMap) {
+            res.put("nodeToValue", ((CacheMap<?, ?>) cache).stats());
+        }
+        Object expressions = context.get(COMPILED_EXPRESSIONS);
+        if (expressions instanceof CacheMap) {
+            res.put("expressions", ((CacheMap<?, ?>) expressions).stats());
+        }
+        Object results = context.get(FUNCTION_RESULTS);
+        if (results instanceof FunctionResults) {
+            res.put("functionResults", ((FunctionResults) results).stats());
+        }
+        return Collections.unmodifiableMap(res);
+    }
+
+    private void setPrivateField(String name, Object value) {
+        try {
+            Field f = org.topbraid.spin.arq.ARQFactory.class.getDeclaredField(name);
+            f.setAccessible(true);
+            f.set(this, value);
+        } catch (NoSuchFieldException | IllegalAccessException | IllegalArgumentException e) {
+            throw new IllegalStateException("Can't set field " + name, e);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private <O> O getPrivateField(String name) {
         try {
@@ -349,11 +653,20 @@ public class MapARQFactory extends org.topbraid.spin.arq.ARQFactory {
     @SuppressWarnings({"WeakerAccess", "unused"})
     public class ARQFunction implements org.apache.jena.sparql.function.Function,
             org.topbraid.shacl.arq.OptionalArgsFunction,
-            org.topbraid.spin.arq.SPINFunctionFactory {
+            org.topbraid.spin.arq.SPINFunctionFactory,
+            FunctionResults.BindingDependent {
 
+        protected final List<org.topbraid.spin.model.Argument> args;
+        // the body is compiled on demand, on the first call:
+        protected volatile boolean compiled;
         protected org.apache.jena.query.Query query;
-        protected List<org.topbraid.spin.model.Argument> args;
         protected String queryString;
+        // the compiled body, if it is a pure expression:
+        protected ExpressionFunctionBody inline;
+        // true if the result depends on ?this, directly or through the called functions; computed on demand:
+        protected volatile Boolean usesThis;
+        // the compilation failure, to not parse a broken body on each call:
+        protected volatile MapJenaException.IllegalArgument error;
 
         protected final org.topbraid.spin.model.Function spin;
         protected final org.topbraid.spin.system.SPINArgumentChecker argumentChecker;
@@ -362,6 +675,8 @@ public class MapARQFactory extends org.topbraid.spin.arq.ARQFactory {
         /**
          * Constructs a new ARQFunction based on a given SPIN Function.
          * The spinFunction model be associated with the Model containing the triples of its definition.
+         * The function body is not parsed here, but on the first call (see {@link #compile()}),
+         * so the registration of a large library is cheap, only the functions really used are compiled.
          *
          * @param spin the SPIN function
          */
@@ -381,16 +696,47 @@ public class MapARQFactory extends org.topbraid.spin.arq.ARQFactory {
                 throw new MapJenaException.IllegalArgument("Some of the function <" + spin.getURI() + "> " +
                         "arguments have not a valid predicate");
             }
-            try {
-                org.topbraid.spin.model.Query spinQuery = (org.topbraid.spin.model.Query) spin.getBody();
-                queryString = MapARQFactory.this.createCommandString(spinQuery);
-                query = MapARQFactory.this.createQuery(queryString);
-            } catch (Exception ex) {
-                throw new MapJenaException.IllegalArgument("Function <" + spin.getURI() + "> " +
-                        "does not define a valid body", ex);
+        }
+
+        /**
+         * Parses the function body, if it is not done yet.
+         *
+         * @throws MapJenaException.IllegalArgument if the body is not valid
+         */
+        protected void compile() throws MapJenaException.IllegalArgument {
+            if (compiled) {
+                return;
+            }
+            // the spin model is shared by all functions of the library, its enhanced nodes are not thread-safe:
+            synchronized (spin.getModel()) {
+                if (compiled) {
+                    return;
+                }
+                if (error != null) {
+                    throw error;
+                }
+                try {
+                    org.topbraid.spin.model.Query spinQuery = (org.topbraid.spin.model.Query) spin.getBody();
+                    queryString = MapARQFactory.this.createCommandString(spinQuery);
+                    query = MapARQFactory.this.createQuery(queryString);
+                    inline = ExpressionFunctionBody.compile(query).orElse(null);
+                } catch (Exception ex) {
+                    throw error = new MapJenaException.IllegalArgument("Function <" + spin.getURI() + "> " +
+                            "does not define a valid body", ex);
+                }
+                compiled = true;
             }
         }
 
+        /**
+         * Answers {@code true} if the function body has already been parsed.
+         *
+         * @return boolean
+         */
+        public boolean isCompiled() {
+            return compiled;
+        }
+
         @Override
         public void build(String uri, ExprList args) {
         }
@@ -405,6 +751,107 @@ public class MapARQFactory extends org.topbraid.spin.arq.ARQFactory {
                               ExprList args,
                               String uri,
                               FunctionEnv env) throws ExprEvalException {
+            recordCall(env, uri);
+            try {
+                compile();
+            } catch (MapJenaException.IllegalArgument ex) {
+                // a broken body of a library function is found only on the first call,
+                // it must fail the expression, not the whole inference:
+                throw new ExprEvalException(ex.getMessage(), ex);
+            }
+            return FunctionResults.exec(this::doExec, binding, args, uri, env, this);
+        }
+
+        /**
+         * Answers {@code ?this} if the function result depends on it,
+         * since that variable is passed to the body from the current binding,
+         * and, therefore, it must be a part of the result cache key.
+         *
+         * @param args {@link ExprList} the evaluated arguments, ignored
+         * @return {@code Collection} of variable names
+         * @see #dependsOnThis(Set)
+         */
+        @Override
+        public Collection<String> bindingVariables(ExprList args) {
+            Boolean res = usesThis;
+            if (res == null) {
+                usesThis = res = dependsOnThis(new HashSet<>());
+            }
+            return res ? Collections.singleton(SPIN.THIS_VAR_NAME) : Collections.emptySet();
+        }
+
+        /**
+         * Answers {@code true} if the function result may depend on {@code ?this}.
+         * This is so if the body refers to {@code ?this} or calls a function, that may read it:
+         * a SPARQL-bodied function, that depends on {@code ?this} itself,
+         * a java function, that is not deterministic and is not a standard ARQ one,
+         * or a deterministic function, that reads the binding (see {@link FunctionResults.BindingDependent}).
+         *
+         * @param seen {@code Set} of the function URIs, that are already being checked, to handle recursion
+         * @return boolean
+         */
+        protected boolean dependsOnThis(Set<String> seen) {
+            if (usesThis != null) {
+                return usesThis;
+            }
+            if (!seen.add(spin.getURI())) {
+                return false;
+            }
+            try {
+                compile();
+            } catch (MapJenaException.IllegalArgument ex) {
+                // the call fails anyway:
+                return true;
+            }
+            if (THIS_REFERENCE.matcher(queryString).find()) {
+                return true;
+            }
+            List<E_Function> calls = new ArrayList<>();
+            Walker.walk(Algebra.compile(query), new OpVisitorBase(), new ExprVisitorBase() {
+                @Override
+                public void visit(ExprFunctionN func) {
+                    if (func instanceof E_Function) {
+                        calls.add((E_Function) func);
+                    }
+                }
+            });
+            FunctionRegistry registry = getFunctionRegistry();
+            for (E_Function call : calls) {
+                String uri = call.getFunctionIRI();
+                FunctionFactory factory = registry.get(uri);
+                if (factory instanceof ARQFunction) {
+                    if (((ARQFunction) factory).dependsOnThis(seen)) {
+                        return true;
+                    }
+                    continue;
+                }
+                if (STANDARD_NAMESPACES.stream().anyMatch(uri::startsWith)) {
+                    continue;
+                }
+                if (factory == null || !isDeterministic(uri)) {
+                    return true;
+                }
+                Function function = factory.create(uri);
+                if (function instanceof FunctionResults.BindingDependent) {
+                    Collection<String> vars = ((FunctionResults.BindingDependent) function)
+                            .bindingVariables(new ExprList(call.getArgs()));
+                    if (vars == null || !vars.isEmpty()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        protected NodeValue doExec(Binding binding,
+                                   ExprList args,
+                                   String uri,
+                                   FunctionEnv env) throws ExprEvalException {
+            compile();
+            if (inline != null && argumentChecker == null && !isRecording()) {
+                // no need in query execution:
+                return inline.exec(bindArguments(binding, args, env), env);
+            }
             Graph activeGraph = env.getActiveGraph();
             Model model = activeGraph != null ?
                     ModelFactory.createModelForGraph(activeGraph) : ModelFactory.createDefaultModel();
@@ -437,9 +884,7 @@ public class MapARQFactory extends org.topbraid.spin.arq.ARQFactory {
                 argumentChecker.check(spin, bindings);
             }
             Dataset dataset = DatasetImpl.wrap(env.getDataset());
-            if (statisticsManager == null
-                    || !statisticsManager.isRecording()
-                    || !statisticsManager.isRecordingSPINFunctions()) {
+            if (!isRecording()) {
                 return executeBody(dataset, model, bindings);
             }
             StringBuilder sb = new StringBuilder();
@@ -486,6 +931,52 @@ public class MapARQFactory extends org.topbraid.spin.arq.ARQFactory {
             return result;
         }
 
+        protected boolean isRecording() {
+            return statisticsManager != null
+                    && statisticsManager.isRecording()
+                    && statisticsManager.isRecordingSPINFunctions();
+        }
+
+        /**
+         * Evaluates the arguments and binds them to the variables of the function body.
+         *
+         * @param binding {@link Binding} of the outer query
+         * @param args    {@link ExprList} function call arguments
+         * @param env     {@link FunctionEnv}
+         * @return {@link Binding} to evaluate the {@link #inline inline body}
+         */
+        protected Binding bindArguments(Binding binding, ExprList args, FunctionEnv env) {
+            BindingMap res = BindingFactory.create();
+            Var thisVar = Var.alloc(SPIN.THIS_VAR_NAME);
+            Node t = binding.get(thisVar);
+            if (t != null) {
+                res.add(thisVar, t);
+            }
+            for (int i = 0; i < args.size(); i++) {
+                Expr expr = args.get(i);
+                if (expr == null || (expr.isVariable() && !binding.contains(expr.asVar()))) {
+                    continue;
+                }
+                NodeValue x = expr.eval(binding, env);
+                if (x == null) {
+                    continue;
+                }
+                String argName = i < this.args.size() ? this.args.get(i).getVarName() : SP.ARG + (i + 1);
+                res.add(Var.alloc(argName), x.asNode());
+            }
+            return res;
+        }
+
+        /**
+         * Answers the compiled body if the function is a pure expression.
+         *
+         * @return {@link ExpressionFunctionBody} or {@code null}
+         */
+        public ExpressionFunctionBody getInlineBody() {
+            compile();
+            return inline;
+        }
+
         public NodeValue executeBody(Model model, QuerySolution bindings) {
             return executeBody(null, model, bindings);
         }
@@ -501,6 +992,7 @@ public class MapARQFactory extends org.topbraid.spin.arq.ARQFactory {
         public NodeValue executeBody(Dataset dataset,
                                      Model defaultModel,
                                      QuerySolution bindings) throws ExprEvalException {
+            compile();
             try (QueryExecution qexec = createQueryExecution(dataset, defaultModel, bindings)) {
                 if (query.isAskType()) {
                     return NodeValue.makeBoolean(qexec.execAsk());
@@ -528,6 +1020,7 @@ public class MapARQFactory extends org.topbraid.spin.arq.ARQFactory {
          * @return the Jena Query
          */
         public org.apache.jena.query.Query getBodyQuery() {
+            compile();
             return query;
         }
 
@@ -545,7 +1038,330 @@ public class MapARQFactory extends org.topbraid.spin.arq.ARQFactory {
             return String.format("%s{func=<%s>, query='%s'}",
                     getClass().getSimpleName(),
                     spin.getURI(),
-                    queryString);
+                    compiled ? queryString : "<not compiled>");
+        }
+    }
+
+    /**
+     * A bounded cache of the results of deterministic function calls,
+     * keyed by the function URI and the values of the arguments.
+     * It is created per {@link #createChild() child} factory, and cleared after each inference run.
+     *
+     * @see #markDeterministic(String)
+     */
+    public static class FunctionResults {
+        private static final BindingDependent NO_VARIABLES = args -> Collections.emptySet();
+        private final Set<String> functions;
+        private final CacheMap<List<Node>, NodeValue> results;
+
+        protected FunctionResults(Set<String> functions, int size) {
+            this.functions = Objects.requireNonNull(functions);
+            this.results = CacheMap.create(size);
+        }
+
+        /**
+         * Executes the function call, using the cache from the execution context if the function is deterministic.
+         * The arguments are evaluated once: the call is performed with the already evaluated values.
+         * If some argument cannot be evaluated, the call is performed as is, without caching.
+         *
+         * @param call    {@link Call} to perform
+         * @param binding {@link Binding}
+         * @param args    {@link ExprList}
+         * @param uri     String, the function URI
+         * @param env     {@link FunctionEnv}
+         * @return {@link NodeValue}
+         */
+        public static NodeValue exec(Call call, Binding binding, ExprList args, String uri, FunctionEnv env) {
+            return exec(call, binding, args, uri, env, NO_VARIABLES);
+        }
+
+        /**
+         * Executes the function call, using the cache from the execution context if the function is deterministic.
+         * The values of the binding variables, the function depends on, are also a part of the cache key.
+         *
+         * @param call    {@link Call} to perform
+         * @param binding {@link Binding}
+         * @param args    {@link ExprList}
+         * @param uri     String, the function URI
+         * @param env     {@link FunctionEnv}
+         * @param vars    {@link BindingDependent} to get the binding variables the call depends on
+         * @return {@link NodeValue}
+         */
+        public static NodeValue exec(Call call,
+                                     Binding binding,
+                                     ExprList args,
+                                     String uri,
+                                     FunctionEnv env,
+                                     BindingDependent vars) {
+            Context context = env == null ? null : env.getContext();
+            FunctionResults cache = context == null ? null : context.get(FUNCTION_RESULTS);
+            if (cache == null || !cache.functions.contains(uri)) {
+                return call.exec(binding, args, uri, env);
+            }
+            List<Node> key = new ArrayList<>(args.size() + 1);
+            key.add(NodeFactory.createURI(uri));
+            ExprList values = new ExprList();
+            for (Expr expr : args) {
+                if (expr == null || (expr.isVariable() && !binding.contains(expr.asVar()))) {
+                    key.add(null);
+                    values.add(expr);
+                    continue;
+                }
+                NodeValue v;
+                try {
+                    v = expr.eval(binding, env);
+                } catch (ExprEvalException e) {
+                    return call.exec(binding, args, uri, env);
+                }
+                key.add(v == null ? null : v.asNode());
+                values.add(v == null ? expr : v);
+            }
+            Collection<String> dependencies = vars.bindingVariables(values);
+            if (dependencies == null) {
+                return call.exec(binding, values, uri, env);
+            }
+            for (String var : dependencies) {
+                key.add(binding.get(Var.alloc(var)));
+            }
+            // no computeIfAbsent: the call may lead to nested calls of other deterministic functions
+            NodeValue res = cache.results.get(key);
+            if (res != null) {
+                return res;
+            }
+            res = call.exec(binding, values, uri, env);
+            if (res != null) {
+                cache.results.put(key, res);
+            }
+            return res;
+        }
+
+        public void clear() {
+            results.clear();
+        }
+
+        public CacheStats stats() {
+            return results.stats();
+        }
+
+        /**
+         * A function call.
+         */
+        @FunctionalInterface
+        public interface Call {
+            NodeValue exec(Binding binding, ExprList args, String uri, FunctionEnv env);
+        }
+
+        /**
+         * A function, whose result depends not only on the arguments,
+         * but also on some variables of the current binding (e.g. {@code ?this}).
+         */
+        @FunctionalInterface
+        public interface BindingDependent {
+
+            /**
+             * Lists the binding variables, the call with the given arguments depends on.
+             *
+             * @param args {@link ExprList} the arguments
+             * @return {@code Collection} of variable names,
+             * or {@code null} if the dependencies are unknown and the result must not be cached
+             */
+            Collection<String> bindingVariables(ExprList args);
+        }
+    }
+
+    /**
+     * A {@link FunctionRegistry} that is layered over another (shared) registry.
+     * All new registrations go to the overlay, the lookup checks the overlay first and then the parent,
+     * which is never modified through this registry.
+     *
+     * @see #createChild()
+     */
+    public static class OverlayFunctionRegistry extends FunctionRegistry {
+        private final FunctionRegistry parent;
+        private final Map<String, FunctionFactory> overlay = new ConcurrentHashMap<>();
+
+        public OverlayFunctionRegistry(FunctionRegistry parent) {
+            this.parent = Objects.requireNonNull(parent, "Null parent registry");
+        }
+
+        @Override
+        public void put(String uri, FunctionFactory f) {
+            overlay.put(uri, f);
+        }
+
+        @Override
+        public boolean isRegistered(String uri) {
+            return overlay.containsKey(uri) || parent.isRegistered(uri);
+        }
+
+        @Override
+        public FunctionFactory get(String uri) {
+            FunctionFactory res = overlay.get(uri);
+            return res != null ? res : parent.get(uri);
+        }
+
+        @Override
+        public Iterator<String> keys() {
+            Set<String> res = new LinkedHashSet<>(overlay.keySet());
+            parent.keys().forEachRemaining(res::add);
+            return res.iterator();
+        }
+
+        /**
+         * Removes the function from the overlay only.
+         *
+         * @param uri String
+         * @return {@link FunctionFactory} or {@code null}
+         */
+        @Override
+        public FunctionFactory remove(String uri) {
+            return overlay.remove(uri);
+        }
+
+        public FunctionRegistry getParent() {
+            return parent;
+        }
+    }
+
+    /**
+     * A {@link FunctionFactory} for java {@link Function}s,
+     * that is like the ARQ default one, but the created functions record their calls.
+     *
+     * @see #recordCall(FunctionEnv, String)
+     */
+    public static class MeteredFunctionFactory implements FunctionFactory {
+        private final Class<? extends Function> type;
+
+        public MeteredFunctionFactory(Class<? extends Function> type) {
+            this.type = Objects.requireNonNull(type);
+        }
+
+        @Override
+        public Function create(String uri) {
+            try {
+                return new MeteredFunction(type.newInstance());
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new MapJenaException.IllegalState("Can't instantiate function <" + uri + ">: " + type, e);
+            }
+        }
+
+        public Class<? extends Function> getType() {
+            return type;
+        }
+    }
+
+    /**
+     * A {@link Function} wrapper that records calls.
+     */
+    public static class MeteredFunction implements Function, FunctionResults.BindingDependent {
+        private final Function delegate;
+
+        public MeteredFunction(Function delegate) {
+            this.delegate = Objects.requireNonNull(delegate);
+        }
+
+        @Override
+        public void build(String uri, ExprList args) {
+            delegate.build(uri, args);
+        }
+
+        @Override
+        public NodeValue exec(Binding binding, ExprList args, String uri, FunctionEnv env) {
+            recordCall(env, uri);
+            return FunctionResults.exec(delegate::exec, binding, args, uri, env, this);
+        }
+
+        @Override
+        public Collection<String> bindingVariables(ExprList args) {
+            return delegate instanceof FunctionResults.BindingDependent ?
+                    ((FunctionResults.BindingDependent) delegate).bindingVariables(args) : Collections.emptySet();
+        }
+
+        public Function getDelegate() {
+            return delegate;
+        }
+    }
+
+    /**
+     * A thread-safe {@link FunctionRegistry}.
+     * All access is guarded, since the original registry may load and register a function while lookup.
+     */
+    public static class SynchronizedFunctionRegistry extends FunctionRegistry {
+
+        @Override
+        public synchronized void put(String uri, Class<?> funcClass) {
+            super.put(uri, funcClass);
+        }
+
+        @Override
+        public synchronized void put(String uri, FunctionFactory f) {
+            super.put(uri, f);
+        }
+
+        @Override
+        public synchronized boolean isRegistered(String uri) {
+            return super.isRegistered(uri);
+        }
+
+        @Override
+        public synchronized FunctionFactory get(String uri) {
+            return super.get(uri);
+        }
+
+        @Override
+        public synchronized Iterator<String> keys() {
+            List<String> res = new ArrayList<>();
+            super.keys().forEachRemaining(res::add);
+            return res.iterator();
+        }
+
+        @Override
+        public synchronized FunctionFactory remove(String uri) {
+            return super.remove(uri);
+        }
+    }
+
+    /**
+     * A thread-safe {@link PropertyFunctionRegistry}.
+     * All access is guarded, since the original registry may load and register a function while lookup.
+     */
+    public static class SynchronizedPropertyFunctionRegistry extends PropertyFunctionRegistry {
+
+        @Override
+        public synchronized void put(String uri, Class<?> extClass) {
+            super.put(uri, extClass);
+        }
+
+        @Override
+        public synchronized void put(String uri, PropertyFunctionFactory factory) {
+            super.put(uri, factory);
+        }
+
+        @Override
+        public synchronized boolean manages(String uri) {
+            return super.manages(uri);
+        }
+
+        @Override
+        public synchronized PropertyFunctionFactory get(String uri) {
+            return super.get(uri);
+        }
+
+        @Override
+        public synchronized boolean isRegistered(String uri) {
+            return super.isRegistered(uri);
+        }
+
+        @Override
+        public synchronized PropertyFunctionFactory remove(String uri) {
+            return super.remove(uri);
+        }
+
+        @Override
+        public synchronized Iterator<String> keys() {
+            List<String> res = new ArrayList<>();
+            super.keys().forEachRemaining(res::add);
+            return res.iterator();
         }
     }
 }
@@ -18,9 +18,13 @@
 
 package com.github.owlcs.map.spin;
 
+import com.github.owlcs.map.MapJenaException;
+import com.github.owlcs.map.spin.functions.avc.UUID;
 import com.github.owlcs.map.spin.vocabulary.AVC;
 import com.github.owlcs.map.spin.vocabulary.SPINMAPL;
 
+import java.util.Objects;
+
 /**
  * A container to store all configuration options that are used during inference or while building mappings.
  * Currently it is a part of internal impl, not for general use.
@@ -30,16 +34,40 @@ import com.github.owlcs.map.spin.vocabulary.SPINMAPL;
 @SuppressWarnings("WeakerAccess")
 public class MapConfigImpl implements MapConfig {
 
-    public final static MapConfigImpl INSTANCE = new MapConfigImpl(true, true, false);
+    public final static MapConfigImpl INSTANCE = new MapConfigImpl(true, true, false, 1, 1, false,
+            4096, 50_000, 50_000, UUID.Mode.MD5);
 
     private final boolean namedIndividuals;
     private final boolean queriesOptimization;
     private final boolean functionsOptimization;
+    private final int inferenceThreads;
+    private final int inferenceBatchSize;
+    private final boolean spillToDisk;
+    private final int queryCacheSize;
+    private final int functionCacheSize;
+    private final int uuidCacheSize;
+    private final UUID.Mode uuidMode;
 
-    private MapConfigImpl(boolean withFuncOpt, boolean withQueryOpt, boolean withNIDeclaration) {
+    private MapConfigImpl(boolean withFuncOpt,
+                          boolean withQueryOpt,
+                          boolean withNIDeclaration,
+                          int threads,
+                          int batchSize,
+                          boolean spill,
+                          int queryCache,
+                          int functionCache,
+                          int uuidCache,
+                          UUID.Mode uuid) {
         this.namedIndividuals = withNIDeclaration;
         this.queriesOptimization = withQueryOpt;
         this.functionsOptimization = withFuncOpt;
+        this.inferenceThreads = threads;
+        this.inferenceBatchSize = batchSize;
+        this.spillToDisk = spill;
+        this.queryCacheSize = queryCache;
+        this.functionCacheSize = functionCache;
+        this.uuidCacheSize = uuidCache;
+        this.uuidMode = uuid;
     }
 
     /**
@@ -86,6 +114,94 @@ public class MapConfigImpl implements MapConfig {
         return functionsOptimization;
     }
 
+    /**
+     * Answers the number of worker threads that are used to process source individuals while inference.
+     * If it is {@code 1} (the default) the inference is sequential and runs entirely in the calling thread.
+     * Otherwise the source individuals are split into chunks, which are processed by a fixed thread pool,
+     * the inferred triples are merged into the target graph.
+     * Please note: the result of inference must not be differ depending on this option.
+     *
+     * @return positive int
+     */
+    public int inferenceThreads() {
+        return inferenceThreads;
+    }
+
+    /**
+     * Answers the maximum number of source individuals that are processed by a single rule query execution.
+     * If it is {@code 1} (the default) each rule is run separately for each individual with pre-bound {@code ?this}.
+     * Otherwise, the set-at-a-time mode is used:
+     * a rule query is rewritten to accept a {@code VALUES} block with a batch of individuals for {@code ?this},
+     * and it is run once per batch, which allows ARQ to use joins instead of many tiny query executions.
+     * Rules that cannot be rewritten safely (e.g. with nested blocks using {@code ?this})
+     * are still run for each individual.
+     *
+     * @return positive int
+     */
+    public int inferenceBatchSize() {
+        return inferenceBatchSize;
+    }
+
+    /**
+     * Answers {@code true} if the intermediate individuals, that are collected for dependent rules while inference,
+     * must be spilled into memory-mapped temporary files instead of being kept in the heap.
+     * In both cases the individuals are stored in a compact dictionary-encoded form,
+     * the disk mode is for very large data, when even the compact form does not fit into the memory.
+     * Please note: the result of inference must not be differ depending on this option.
+     *
+     * @return boolean
+     * @see com.github.owlcs.map.spin.infer.IntermediateStore
+     */
+    public boolean spillToDisk() {
+        return spillToDisk;
+    }
+
+    /**
+     * Answers the maximum number of entries in each of the query caches of the ARQ factory
+     * (parsed queries and update requests, and query strings of spin commands).
+     * The least recently used entries are evicted when the limit is reached.
+     *
+     * @return not negative int
+     * @see MapARQFactory#getCacheStats()
+     */
+    public int queryCacheSize() {
+        return queryCacheSize;
+    }
+
+    /**
+     * Answers the maximum number of entries in the cache of deterministic function results, that is used while inference.
+     * The least recently used entries are evicted when the limit is reached.
+     *
+     * @return not negative int
+     * @see MapARQFactory#FUNCTION_RESULTS
+     */
+    public int functionCacheSize() {
+        return functionCacheSize;
+    }
+
+    /**
+     * Answers the maximum number of entries in the cache of the {@link AVC#UUID avc:UUID} function results.
+     * The least recently used entries are evicted when the limit is reached,
+     * {@code 0} means no cache at all: each URI is computed anew, which is cheap enough.
+     *
+     * @return not negative int
+     * @see MapARQFactory#NODE_TO_VALUE_CACHE
+     */
+    public int uuidCacheSize() {
+        return uuidCacheSize;
+    }
+
+    /**
+     * Answers the form of the URIs produced by the {@link AVC#UUID avc:UUID} function.
+     * The default is {@link UUID.Mode#MD5}, other modes produce RFC 4122 name-based UUIDs.
+     *
+     * @return {@link UUID.Mode}, not {@code null}
+     * @see MapARQFactory#UUID_MODE
+     */
+    public UUID.Mode uuidMode() {
+        return uuidMode;
+    }
+
     /**
      * Creates a config with disabled/enabled optimization depending to the parameter.
      *
@@ -93,7 +209,8 @@ public class MapConfigImpl implements MapConfig {
      * @return new instance
      */
     public MapConfigImpl setAllOptimizations(boolean b) {
-        return new MapConfigImpl(b, b, namedIndividuals);
+        return new MapConfigImpl(b, b, namedIndividuals, inferenceThreads, inferenceBatchSize,
+                spillToDisk, queryCacheSize, functionCacheSize, uuidCacheSize, uuidMode);
     }
 
     /**
@@ -103,12 +220,114 @@ public class MapConfigImpl implements MapConfig {
      * @return new instance
      */
     public MapConfigImpl setGenerateNamedIndividuals(boolean b) {
-        return new MapConfigImpl(functionsOptimization, queriesOptimization, b);
+        return new MapConfigImpl(functionsOptimization, queriesOptimization, b, inferenceThreads, inferenceBatchSize,
+                spillToDisk, queryCacheSize, functionCacheSize, uuidCacheSize, uuidMode);
+    }
+
+    /**
+     * Creates a config with the specified number of inference worker threads.
+     *
+     * @param threads positive int, {@code 1} to turn off the parallel mode
+     * @return new instance
+     * @throws MapJenaException.IllegalArgument if the number is not positive
+     */
+    public MapConfigImpl setInferenceThreads(int threads) {
+        if (threads < 1) {
+            throw new MapJenaException.IllegalArgument("Wrong number of threads: " + threads);
+        }
+        return new MapConfigImpl(functionsOptimization, queriesOptimization, namedIndividuals, threads,
+                inferenceBatchSize, spillToDisk, queryCacheSize, functionCacheSize, uuidCacheSize, uuidMode);
+    }
+
+    /**
+     * Creates a config with the specified inference batch size.
+     *
+     * @param size positive int, {@code 1} to turn off the set-at-a-time mode
+     * @return new instance
+     * @throws MapJenaException.IllegalArgument if the size is not positive
+     */
+    public MapConfigImpl setInferenceBatchSize(int size) {
+        if (size < 1) {
+            throw new MapJenaException.IllegalArgument("Wrong batch size: " + size);
+        }
+        return new MapConfigImpl(functionsOptimization, queriesOptimization, namedIndividuals, inferenceThreads,
+                size, spillToDisk, queryCacheSize, functionCacheSize, uuidCacheSize, uuidMode);
+    }
+
+    /**
+     * Creates a config with enabled/disabled spilling intermediate individuals to disk.
+     *
+     * @param b boolean
+     * @return new instance
+     */
+    public MapConfigImpl setSpillToDisk(boolean b) {
+        return new MapConfigImpl(functionsOptimization, queriesOptimization, namedIndividuals, inferenceThreads,
+                inferenceBatchSize, b, queryCacheSize, functionCacheSize, uuidCacheSize, uuidMode);
+    }
+
+    /**
+     * Creates a config with the specified size of the query caches.
+     *
+     * @param size not negative int
+     * @return new instance
+     * @throws MapJenaException.IllegalArgument if the size is negative
+     */
+    public MapConfigImpl setQueryCacheSize(int size) {
+        if (size < 0) {
+            throw new MapJenaException.IllegalArgument("Wrong cache size: " + size);
+        }
+        return new MapConfigImpl(functionsOptimization, queriesOptimization, namedIndividuals, inferenceThreads,
+                inferenceBatchSize, spillToDisk, size, functionCacheSize, uuidCacheSize, uuidMode);
+    }
+
+    /**
+     * Creates a config with the specified size of the function results cache.
+     *
+     * @param size not negative int
+     * @return new instance
+     * @throws MapJenaException.IllegalArgument if the size is negative
+     */
+    public MapConfigImpl setFunctionCacheSize(int size) {
+        if (size < 0) {
+            throw new MapJenaException.IllegalArgument("Wrong cache size: " + size);
+        }
+        return new MapConfigImpl(functionsOptimization, queriesOptimization, namedIndividuals, inferenceThreads,
+                inferenceBatchSize, spillToDisk, queryCacheSize, size, uuidCacheSize, uuidMode);
+    }
+
+    /**
+     * Creates a config with the specified size of the {@code avc:UUID} cache.
+     *
+     * @param size not negative int, {@code 0} to turn off the cache
+     * @return new instance
+     * @throws MapJenaException.IllegalArgument if the size is negative
+     */
+    public MapConfigImpl setUUIDCacheSize(int size) {
+        if (size < 0) {
+            throw new MapJenaException.IllegalArgument("Wrong cache size: " + size);
+        }
+        return new MapConfigImpl(functionsOptimization, queriesOptimization, namedIndividuals, inferenceThreads,
+                inferenceBatchSize, spillToDisk, queryCacheSize, functionCacheSize, size, uuidMode);
+    }
+
+    /**
+     * Creates a config with the specified form of the {@code avc:UUID} output.
+     *
+     * @param mode {@link UUID.Mode}, not {@code null}
+     * @return new instance
+     */
+    public MapConfigImpl setUUIDMode(UUID.Mode mode) {
+        return new MapConfigImpl(functionsOptimization, queriesOptimization, namedIndividuals, inferenceThreads,
+                inferenceBatchSize, spillToDisk, queryCacheSize, functionCacheSize, uuidCacheSize,
+                Objects.requireNonNull(mode, "Null mode"));
     }
 
     @Override
     public String toString() {
-        return String.format("MappingConfiguration{namedIndividuals=%s, queriesOptimization=%s, functionsOptimization=%s}",
-                namedIndividuals, queriesOptimization, functionsOptimization);
+        return String.format("MappingConfiguration{namedIndividuals=%s, queriesOptimization=%s, " +
+                        "functionsOptimization=%s, inferenceThreads=%d, inferenceBatchSize=%d, spillToDisk=%s, " +
+                        "queryCacheSize=%d, functionCacheSize=%d, uuidCacheSize=%d, uuidMode=%s}",
+                namedIndividuals, queriesOptimization, functionsOptimization, inferenceThreads, inferenceBatchSize,
+                spillToDisk, queryCacheSize, functionCacheSize, uuidCacheSize, uuidMode);
     }
 }
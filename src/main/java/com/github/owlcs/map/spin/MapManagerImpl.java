@@ -19,6 +19,7 @@
 package com.github.owlcs.map.spin;
 
 import com.github.owlcs.map.*;
+import com.github.owlcs.map.spin.infer.IncrementalInferenceEngine;
 import com.github.owlcs.map.spin.infer.InferenceEngineImpl;
 import com.github.owlcs.map.spin.system.Resources;
 import com.github.owlcs.map.spin.system.SystemLibraries;
@@ -39,6 +40,7 @@ import org.apache.jena.enhanced.UnsupportedPolymorphismException;
 import org.apache.jena.graph.Factory;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.compose.MultiUnion;
 import org.apache.jena.rdf.model.ModelGraphInterface;
 import org.apache.jena.rdf.model.Property;
 import org.apache.jena.rdf.model.Resource;
@@ -67,7 +69,9 @@ import java.util.stream.Stream;
 public class MapManagerImpl implements MapManager, HasConfig {
     private static final Logger LOGGER = LoggerFactory.getLogger(MapModelImpl.class);
 
-    // prefix library:
+    // the system library part, that is shared by all managers:
+    protected final LibraryCore core;
+    // prefix library (shared):
     protected final PrefixMapping prefixes;
     // whole graph library (primary graph + avc complement graphs + original spin graphs):
     protected final UnionModel library;
@@ -75,11 +79,15 @@ public class MapManagerImpl implements MapManager, HasConfig {
     private Graph rawSpinLibrary;
     // cache; a part of #library: everything except the spin family:
     private List<Graph> additional;
-    // map-functions:
+    // map-functions, that are specific to this manager (the system ones are taken from the core):
     protected final Map<String, FunctionImpl> functions;
+    // the version of the function registry, it is changed on each registration to invalidate the cached states:
+    private volatile long version;
+    // cache; the index of the functions that are listed by #functions():
+    private volatile Index index;
     // config:
     protected final MapConfigImpl config;
-    // ARQ factory:
+    // ARQ factory (an overlay over the shared core factory):
     protected final MapARQFactory arqFactory;
     // Graph factory:
     protected final Supplier<Graph> graphFactory;
@@ -90,6 +98,8 @@ public class MapManagerImpl implements MapManager, HasConfig {
 
     /**
      * The main constructor.
+     * The system part of the library (graphs, prefixes, registered ARQ functions) is taken from the {@link LibraryCore},
+     * only the primary graph and the user-defined functions are manager-specific.
      *
      * @param library {@link Graph} to use as primary in the library, not {@code null}
      * @param graphs  a factory to produce Graphs for mappings, not {@code null}
@@ -103,10 +113,41 @@ public class MapManagerImpl implements MapManager, HasConfig {
         this.graphFactory = Objects.requireNonNull(graphs, "Null graph factory");
         this.functions = Objects.requireNonNull(map, "Null map");
         this.library = createLibraryModel(Objects.requireNonNull(library, "Null primary graph"));
-        this.prefixes = Graphs.collectPrefixes(SystemLibraries.graphs().values());
         this.config = Objects.requireNonNull(conf, "Null config");
-        this.arqFactory = MapARQFactory.createSPINARQFactory(SystemLibraries.functions(), SystemLibraries.properties());
-        SpinModels.spinFunctions(this.library).forEach(this::register);
+        this.core = LibraryCore.get(config);
+        this.prefixes = core.prefixes();
+        this.arqFactory = core.getFactory().createOverlay(config);
+        // the system functions are shared by the core,
+        // only the functions from the primary graph (user-defined or changed system ones) need own map-functions:
+        Graph base = this.library.getBaseGraph();
+        Set<String> own = new LinkedHashSet<>();
+        SpinModels.listSpinFunctions(SpinModelConfig.createSpinModel(base)).forEachRemaining(f -> own.add(f.getURI()));
+        base.find().mapWith(Triple::getSubject)
+                .filterKeep(s -> s.isURI() && core.contains(s.getURI()))
+                .forEachRemaining(s -> own.add(s.getURI()));
+        own.forEach(uri -> register(this.library.getResource(uri)));
+        invalidate();
+    }
+
+    /**
+     * Creates the read-only manager, that owns the map-functions for all the system functions of the given core.
+     * It has an empty primary graph and uses the core factory directly, it must not register anything.
+     *
+     * @param core {@link LibraryCore}, not {@code null}
+     * @param conf {@link MapConfigImpl}, with the same function optimization setting as the core
+     * @see LibraryCore#system()
+     */
+    MapManagerImpl(LibraryCore core, MapConfigImpl conf) {
+        this.graphFactory = Factory::createGraphMem;
+        this.functions = new HashMap<>();
+        this.library = core.getLibrary();
+        this.config = conf;
+        this.core = core;
+        this.prefixes = core.prefixes();
+        this.arqFactory = core.getFactory();
+        SpinModels.spinFunctions(library).forEach(f -> functions.put(f.getURI(),
+                new FunctionImpl(f.as(org.topbraid.spin.model.Function.class))));
+        invalidate();
     }
 
     /**
@@ -174,6 +215,8 @@ public class MapManagerImpl implements MapManager, HasConfig {
      * <li>{@code avc.xsd.ttl} - functions for xsd types which were forgotten in {@code spinmapl.spin.ttl}</li>
      * <li>{@code spinmapl.spin.ttl} - a top of the standard (composer's) spin-family graphs</li>
      * </ul>
+     * Note: the functions from {@code avc.math.ttl}, {@code avc.fn.ttl} and {@code avc.xsd.ttl} have no SPIN bodies,
+     * these are just declarations of the native ARQ functions, that are executed directly, without any SPARQL.
      *
      * @return {@link UnionModel}
      */
@@ -244,6 +287,9 @@ public class MapManagerImpl implements MapManager, HasConfig {
         ExtraPrefixes.add(f); // <- wtf?
         FunctionImpl map = new FunctionImpl(f);
         functions.put(f.getURI(), map);
+        if (f.hasLiteral(AVC.deterministic, true)) {
+            arqFactory.markDeterministic(f.getURI());
+        }
         if (f.isMagicProperty()) {
             arqFactory.registerProperty(f);
         } else {
@@ -253,27 +299,100 @@ public class MapManagerImpl implements MapManager, HasConfig {
             }
             arqFactory.registerFunction(f);
         }
+        invalidate();
+    }
+
+    /**
+     * Invalidates all cached states of the functions (visibility, executability, etc.).
+     * Must be called each time the set of functions or the function registry is changed.
+     */
+    protected void invalidate() {
+        version++;
+        index = null;
+    }
+
+    /**
+     * Returns the index of the functions, that are listed by {@link #functions()}, building it if necessary.
+     *
+     * @return {@link Index}
+     */
+    private Index index() {
+        long v = version;
+        Index res = index;
+        if (res != null && res.version == v) {
+            return res;
+        }
+        Map<String, MapFunction> visible = new LinkedHashMap<>();
+        functions.values().forEach(f -> {
+            if (filter(f)) visible.put(f.name(), f);
+        });
+        MapManagerImpl system = core.system();
+        return index = system == this ? new Index(v, visible, null, Collections.emptySet()) :
+                new Index(v, visible, system.index(), new HashSet<>(functions.keySet()));
+    }
+
+    /**
+     * Finds the map-function by its URI, first in this manager, then in the {@link LibraryCore core}.
+     *
+     * @param name String
+     * @return {@link FunctionImpl} or {@code null}
+     */
+    protected FunctionImpl function(String name) {
+        FunctionImpl res = functions.get(name);
+        if (res != null) return res;
+        MapManagerImpl system = core.system();
+        return system == this ? null : system.functions.get(name);
     }
 
     /**
      * Lists all common (i.e. no magic) executable spin functions that are not private, abstract, deprecated or hidden
      * (the last property is calculated using info provided by avc supplement graph).
      * Spin templates are not included also.
+     * The list is cached and rebuilt only after the registry is changed (see {@link #invalidate()}).
      *
      * @return Stream of {@link MapFunction}s.
      */
     @Override
     public Stream<MapFunction> functions() {
-        return Iter.asStream(Iter.create(functions.values()).filterKeep(this::filter));
+        return index().functions();
+    }
+
+    /**
+     * Finds the function, that is listed by {@link #functions()}, by its name.
+     * Unlike {@link #getFunction(String)} it does not return hidden or not executable functions.
+     *
+     * @param name String, not {@code null}
+     * @return Optional around the {@link MapFunction}
+     */
+    public Optional<MapFunction> findFunction(String name) {
+        return Optional.ofNullable(index().find(name));
     }
 
     /**
      * Gets all available functions as unmodifiable Map.
+     * Note: it is a copy, that includes the shared system functions,
+     * use {@link #containsFunction(String)} or {@link #getFunction(String)} for a single lookup.
      *
      * @return {@link Map} with IRIs as keys and {@link FunctionImpl}s as values
      */
     public Map<String, FunctionImpl> getFunctionsMap() {
-        return Collections.unmodifiableMap(functions);
+        MapManagerImpl system = core.system();
+        if (system == this) {
+            return Collections.unmodifiableMap(functions);
+        }
+        Map<String, FunctionImpl> res = new HashMap<>(system.functions);
+        res.putAll(functions);
+        return Collections.unmodifiableMap(res);
+    }
+
+    /**
+     * Answers {@code true} if there is a function (either system or user-defined) with the given name.
+     *
+     * @param name String
+     * @return boolean
+     */
+    public boolean containsFunction(String name) {
+        return function(name) != null;
     }
 
     /**
@@ -294,7 +413,7 @@ public class MapManagerImpl implements MapManager, HasConfig {
 
     @Override
     public FunctionImpl getFunction(String name) throws MapJenaException {
-        return MapJenaException.notNull(functions.get(name), "Can't find function " + name);
+        return MapJenaException.notNull(function(name), "Can't find function " + name);
     }
 
     /**
@@ -447,7 +566,7 @@ public class MapManagerImpl implements MapManager, HasConfig {
                     // if it is contained in the map and has different content, but it is not avc:runtime -> FAIL
                     // if it is contained in the map and has different content, but it is avc:runtime -> OK, re-register
                     // if it is no contained anywhere -> OK, register and add definition to the primary graph
-                    if (functions.containsKey(f.getURI())) {
+                    if (containsFunction(f.getURI())) {
                         if (ModelUtils.containsResource(library, f)) {
                             if (LOGGER.isDebugEnabled())
                                 LOGGER.debug("Function <{}> is already within the manager {}.", f, MapManagerImpl.this);
@@ -460,7 +579,9 @@ public class MapManagerImpl implements MapManager, HasConfig {
                         }
                         if (LOGGER.isDebugEnabled())
                             LOGGER.debug("Found avc:runtime function: <{}> .", f);
+                        compile(f);
                     } else { // add content to the primary graph:
+                        compile(f);
                         f = SpinModels.printSpinFunctionBody(library, f);
                     }
                     if (LOGGER.isDebugEnabled())
@@ -469,6 +590,26 @@ public class MapManagerImpl implements MapManager, HasConfig {
                 });
     }
 
+    /**
+     * Parses the body of the given user-defined function.
+     * In contrast to the system library functions, that are compiled lazily on the first call,
+     * the user functions are compiled eagerly, to report a broken body before the function is added to the manager.
+     * The body is printed against the spin library, as it is when the registered function is called,
+     * since the query string is cached by body node.
+     *
+     * @param f {@link Resource} function from a model with spin personalities
+     * @throws MapJenaException.IllegalArgument if the body is not valid
+     */
+    protected void compile(Resource f) throws MapJenaException.IllegalArgument {
+        Graph g = new MultiUnion(new Graph[]{f.getModel().getGraph(), getTopSpinGraph()});
+        org.topbraid.spin.model.Function func = f.inModel(SpinModelConfig.createSpinModel(g))
+                .as(org.topbraid.spin.model.Function.class);
+        if (!func.hasProperty(SPIN.body) || func.isMagicProperty()) {
+            return;
+        }
+        ((MapARQFactory.ARQFunction) arqFactory.asARQFunction(func)).compile();
+    }
+
     /**
      * Gets a a class-properties map object.
      * The resulting {@link ClassPropertyMap Class-Properties Mapping} is cached object and
@@ -509,12 +650,59 @@ public class MapManagerImpl implements MapManager, HasConfig {
 
     @Override
     public InferenceEngine getInferenceEngine(MapModel mapping) throws MapJenaException {
+        return new InferenceEngineImpl(checkMapping(mapping), this);
+    }
+
+    /**
+     * Creates an inference engine that supports incremental inference driven by source graph changes.
+     *
+     * @param mapping {@link MapModel}, not {@code null}
+     * @return {@link IncrementalInferenceEngine}
+     * @throws MapJenaException in case the mapping has no valid contexts
+     */
+    public IncrementalInferenceEngine getIncrementalInferenceEngine(MapModel mapping) throws MapJenaException {
+        return new IncrementalInferenceEngine(checkMapping(mapping), this);
+    }
+
+    private static MapModel checkMapping(MapModel mapping) throws MapJenaException {
         if (MapJenaException.notNull(mapping, "Null mapping").contexts().noneMatch(MapContext::isValid)) {
             throw Exceptions.INFERENCE_NO_CONTEXTS.create()
                     .add(Exceptions.Key.MAPPING, String.valueOf(mapping))
                     .build();
         }
-        return new InferenceEngineImpl(mapping, this);
+        return mapping;
+    }
+
+    /**
+     * An immutable snapshot of the function visibility for some {@link #version}.
+     */
+    private static class Index {
+        private final long version;
+        // own visible functions:
+        private final Map<String, MapFunction> functions;
+        // the shared index of the system functions, null for the core itself:
+        private final Index system;
+        // the names of all own functions, they hide the system functions with the same names:
+        private final Set<String> own;
+
+        private Index(long version, Map<String, MapFunction> functions, Index system, Set<String> own) {
+            this.version = version;
+            this.functions = Collections.unmodifiableMap(functions);
+            this.system = system;
+            this.own = own;
+        }
+
+        private MapFunction find(String name) {
+            MapFunction res = functions.get(name);
+            if (res != null || system == null || own.contains(name)) return res;
+            return system.functions.get(name);
+        }
+
+        private Stream<MapFunction> functions() {
+            if (system == null) return functions.values().stream();
+            return Stream.concat(system.functions.values().stream().filter(f -> !own.contains(f.name())),
+                    functions.values().stream());
+        }
     }
 
     /**
@@ -523,6 +711,8 @@ public class MapManagerImpl implements MapManager, HasConfig {
     public class FunctionImpl extends MapFunctionImpl {
         private Triple root;
         private Set<FunctionImpl> dependencies;
+        // cache; the states that are calculated against the manager's library and registry:
+        private volatile State state;
 
         public FunctionImpl(org.topbraid.spin.model.Function func) {
             super(func);
@@ -535,8 +725,7 @@ public class MapManagerImpl implements MapManager, HasConfig {
 
         @Override
         public boolean isCustom() {
-            Triple root = getRootTriple();
-            return listAdditionalGraphs().anyMatch(g -> g.contains(root));
+            return state(State.CUSTOM).is(State.CUSTOM);
         }
 
         /**
@@ -569,7 +758,7 @@ public class MapManagerImpl implements MapManager, HasConfig {
 
         @Override
         public boolean isUserDefined() {
-            return getLibrary().getBaseGraph().contains(getRootTriple());
+            return state(State.USER_DEFINED).is(State.USER_DEFINED);
         }
 
         @Override
@@ -584,6 +773,49 @@ public class MapManagerImpl implements MapManager, HasConfig {
          * @return boolean
          */
         public boolean isExecutable() {
+            return state(State.EXECUTABLE).is(State.EXECUTABLE);
+        }
+
+        /**
+         * Returns the cached state, that contains the given property, calculating it if necessary.
+         * The state is valid until the manager's function registry is changed.
+         *
+         * @param property int, one of the {@link State} constants
+         * @return {@link State}
+         */
+        private State state(int property) {
+            long v = version;
+            State res = state;
+            if (res == null || res.version != v) {
+                res = new State(v);
+            }
+            if (!res.has(property)) {
+                boolean value;
+                switch (property) {
+                    case State.EXECUTABLE:
+                        value = calcExecutable();
+                        break;
+                    case State.CUSTOM:
+                        Triple root = getRootTriple();
+                        value = listAdditionalGraphs().anyMatch(g -> g.contains(root));
+                        break;
+                    case State.USER_DEFINED:
+                        value = getLibrary().getBaseGraph().contains(getRootTriple());
+                        break;
+                    default:
+                        throw new MapJenaException.IllegalArgument("Unknown property " + property);
+                }
+                // the current state may have been replaced while the calculation, so merge with it:
+                State current = state;
+                if (current != null && current.version == v) {
+                    res = current;
+                }
+                state = res = res.with(property, value);
+            }
+            return res;
+        }
+
+        private boolean calcExecutable() {
             // SPARQL operators are always executable:
             if (isSparqlOperator()) return true;
             // unregistered functions are not executable:
@@ -606,8 +838,45 @@ public class MapManagerImpl implements MapManager, HasConfig {
          */
         public Set<FunctionImpl> getDependencies() {
             return dependencies == null ? dependencies = listDependencyResources()
-                    .mapWith(r -> MapJenaException.notNull(functions.get(r.getURI()), "Can't find function " + r))
+                    .mapWith(r -> MapJenaException.notNull(function(r.getURI()), "Can't find function " + r))
                     .toSet() : dependencies;
         }
     }
+
+    /**
+     * An immutable set of the calculated boolean properties of a function for some {@link #version}.
+     * Each property takes two bits: whether it is known, and its value.
+     */
+    private static class State {
+        static final int EXECUTABLE = 0;
+        static final int CUSTOM = 1;
+        static final int USER_DEFINED = 2;
+
+        private final long version;
+        private final int known;
+        private final int values;
+
+        private State(long version) {
+            this(version, 0, 0);
+        }
+
+        private State(long version, int known, int values) {
+            this.version = version;
+            this.known = known;
+            this.values = values;
+        }
+
+        boolean has(int property) {
+            return (known & (1 << property)) != 0;
+        }
+
+        boolean is(int property) {
+            return (values & (1 << property)) != 0;
+        }
+
+        State with(int property, boolean value) {
+            int bit = 1 << property;
+            return new State(version, known | bit, value ? values | bit : values & ~bit);
+        }
+    }
 }
@@ -102,7 +102,7 @@ public class ModelCallImpl extends MapFunctionImpl.CallImpl {
     public MapFunctionImpl save(String name) throws MapJenaException {
         MapJenaException.notNull(name, "Null function name");
         MapManagerImpl manager = model.getManager();
-        if (manager.getFunctionsMap().containsKey(name)) {
+        if (manager.containsFunction(name)) {
             throw new MapJenaException.IllegalArgument("A function with the same name (<" + name + ">)" +
                     " already exists. Please choose another name.");
         }
@@ -200,6 +200,11 @@ public class OWLMapManagerImpl extends OntologyManagerImpl implements OWLMapMana
         return manager.functions();
     }
 
+    @Override
+    public MapFunction getFunction(String name) throws MapJenaException {
+        return manager.findFunction(name).orElseThrow(() -> new MapJenaException("Function " + name + " not found."));
+    }
+
     @Override
     public Graph getGraph() {
         lock.readLock().lock();
@@ -18,14 +18,19 @@
 
 package com.github.owlcs.map.spin.functions.avc;
 
+import com.github.owlcs.map.MapJenaException;
 import com.github.owlcs.map.spin.MapARQFactory;
 import com.github.owlcs.map.spin.vocabulary.AVC;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.sparql.expr.*;
 import org.apache.jena.sparql.function.FunctionEnv;
+import org.apache.jena.sparql.util.Context;
 import org.topbraid.spin.arq.AbstractFunction1;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Map;
 import java.util.function.UnaryOperator;
 
@@ -41,6 +46,9 @@ import java.util.function.UnaryOperator;
  *     BIND (CONCAT("urn:uuid:", ?value) AS ?uri) .
  * }
  * }</pre>
+ * The digest is computed directly, with a per-thread {@link MessageDigest}, without any ARQ expressions.
+ * The output form depends on the {@link Mode} from the {@link MapARQFactory#UUID_MODE context},
+ * the results are cached in the {@link MapARQFactory#NODE_TO_VALUE_CACHE context cache}, if it is present.
  * Created by @ssz on 30.12.2018.
  *
  * @see AVC#optimize
@@ -49,8 +57,15 @@ import java.util.function.UnaryOperator;
 public class UUID extends AbstractFunction1 {
     public static final String URI_PREFIX = "urn:uuid:";
     public static final ExprDigest MD5_CALCULATOR = new E_MD5(new ExprVar(UUID.class.getName()));
-    public static final UnaryOperator<String> URI_MAKER =
-            s -> URI_PREFIX + MD5_CALCULATOR.eval(NodeValue.makeString(s)).getString();
+    public static final UnaryOperator<String> URI_MAKER = s -> URI_PREFIX + Mode.MD5.apply(s);
+
+    // the RFC 4122 name space for URLs (6ba7b811-9dad-11d1-80b4-00c04fd430c8):
+    private static final byte[] URL_NAMESPACE = {
+            0x6b, (byte) 0xa7, (byte) 0xb8, 0x11, (byte) 0x9d, (byte) 0xad, 0x11, (byte) 0xd1,
+            (byte) 0x80, (byte) 0xb4, 0x00, (byte) 0xc0, 0x4f, (byte) 0xd4, 0x30, (byte) 0xc8};
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> digest("MD5"));
+    private static final ThreadLocal<MessageDigest> SHA1 = ThreadLocal.withInitial(() -> digest("SHA-1"));
 
     @Override
     protected NodeValue exec(Node source, FunctionEnv env) {
@@ -60,10 +75,97 @@ public class UUID extends AbstractFunction1 {
         if (!source.isBlank() && !source.isURI()) {
             throw new ExprEvalException("?source must be either b-node or uri resource");
         }
-        Map<Node, NodeValue> cache = env.getContext().get(MapARQFactory.NODE_TO_VALUE_CACHE);
-        return cache.computeIfAbsent(source, s -> {
-            String res = s.isBlank() ? s.getBlankNodeId().getLabelString() : s.getURI();
-            return NodeValue.makeNode(NodeFactory.createURI(URI_MAKER.apply(res)));
-        });
+        Context context = env.getContext();
+        Mode mode = context == null ? null : context.get(MapARQFactory.UUID_MODE);
+        Map<Node, NodeValue> cache = context == null ? null : context.get(MapARQFactory.NODE_TO_VALUE_CACHE);
+        if (cache == null) {
+            return create(source, mode);
+        }
+        NodeValue res = cache.get(source);
+        if (res == null) {
+            cache.put(source, res = create(source, mode));
+        }
+        return res;
+    }
+
+    private static NodeValue create(Node source, Mode mode) {
+        String name = source.isBlank() ? source.getBlankNodeLabel() : source.getURI();
+        String uuid = (mode == null ? Mode.MD5 : mode).apply(name);
+        return NodeValue.makeNode(NodeFactory.createURI(URI_PREFIX + uuid));
+    }
+
+    private static MessageDigest digest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new MapJenaException.IllegalState("No " + algorithm + " digest", e);
+        }
+    }
+
+    /**
+     * Encodes the first {@code length} bytes as a lower-case hex string,
+     * inserting dashes at the RFC 4122 positions if required.
+     *
+     * @param bytes  array
+     * @param length int
+     * @param dashes boolean
+     * @return String
+     */
+    private static String hex(byte[] bytes, int length, boolean dashes) {
+        char[] res = new char[length * 2 + (dashes ? 4 : 0)];
+        int j = 0;
+        for (int i = 0; i < length; i++) {
+            if (dashes && (i == 4 || i == 6 || i == 8 || i == 10)) {
+                res[j++] = '-';
+            }
+            res[j++] = HEX[(bytes[i] >> 4) & 0xF];
+            res[j++] = HEX[bytes[i] & 0xF];
+        }
+        return new String(res);
+    }
+
+    private static String nameBased(MessageDigest md, int version, String name) {
+        md.reset();
+        md.update(URL_NAMESPACE);
+        byte[] bytes = md.digest(name.getBytes(StandardCharsets.UTF_8));
+        bytes[6] = (byte) ((bytes[6] & 0x0F) | (version << 4));
+        bytes[8] = (byte) ((bytes[8] & 0x3F) | 0x80);
+        return hex(bytes, 16, true);
+    }
+
+    /**
+     * The forms of the {@code avc:UUID} output, the {@link #URI_PREFIX} is prepended to each of them.
+     */
+    public enum Mode implements UnaryOperator<String> {
+        /**
+         * The default: a plain 32-chars hex MD5 digest of the URI (or blank node label),
+         * the same as the SPARQL {@code MD5} function produces.
+         */
+        MD5 {
+            @Override
+            public String apply(String name) {
+                MessageDigest md = UUID.MD5.get();
+                md.reset();
+                return hex(md.digest(name.getBytes(StandardCharsets.UTF_8)), 16, false);
+            }
+        },
+        /**
+         * A RFC 4122 name-based version 3 (MD5) UUID in the URL name space.
+         */
+        NAME_BASED_V3 {
+            @Override
+            public String apply(String name) {
+                return nameBased(UUID.MD5.get(), 3, name);
+            }
+        },
+        /**
+         * A RFC 4122 name-based version 5 (SHA-1) UUID in the URL name space.
+         */
+        NAME_BASED_V5 {
+            @Override
+            public String apply(String name) {
+                return nameBased(SHA1.get(), 5, name);
+            }
+        },
     }
 }
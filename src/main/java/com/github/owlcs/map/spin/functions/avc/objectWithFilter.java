@@ -18,6 +18,7 @@
 
 package com.github.owlcs.map.spin.functions.avc;
 
+import com.github.owlcs.map.spin.MapARQFactory;
 import com.github.owlcs.map.spin.functions.spl.object;
 import com.github.owlcs.map.spin.vocabulary.AVC;
 import com.github.owlcs.ontapi.jena.utils.Iter;
@@ -87,8 +88,7 @@ public class objectWithFilter extends AbstractFunction4 {
             throw new ExprEvalException("The fourth argument must be a RDF node");
         }
 
-        // TODO: need to select only the query graph
-        Graph g = env.getActiveGraph();
+        Graph g = MapARQFactory.getSearchGraph(env);
 
         return Iter.findFirst(g.find(subject, predicate, Node.ANY)
                 .filterKeep(x -> g.contains(x.getObject(), filterPredicate, filterObject))
@@ -18,6 +18,8 @@
 
 package com.github.owlcs.map.spin.functions.spif;
 
+import com.github.owlcs.map.spin.MapARQFactory;
+import com.github.owlcs.map.utils.CacheMap;
 import org.apache.jena.ext.xerces.util.XMLChar;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
@@ -36,7 +38,8 @@ import org.apache.jena.sparql.function.FunctionEnv;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.function.Function;
@@ -49,7 +52,8 @@ import java.util.function.UnaryOperator;
  * Created by @ssz on 04.12.2018.
  */
 @SuppressWarnings("WeakerAccess")
-abstract class AbstractBuildFunction implements org.apache.jena.sparql.function.Function {
+abstract class AbstractBuildFunction implements org.apache.jena.sparql.function.Function,
+        MapARQFactory.FunctionResults.BindingDependent {
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractBuildFunction.class);
 
     public static final Function<RDFNode, String> DEFAULT_INSERTION_STRATEGY = node -> {
@@ -130,7 +134,13 @@ abstract class AbstractBuildFunction implements org.apache.jena.sparql.function.
         Objects.requireNonNull(template, "Null template");
         Objects.requireNonNull(bindings, "Null variable binding");
         Objects.requireNonNull(strategy, "Null insertion strategy");
-        return format(template, var -> {
+        return Template.get(template).format(toMapping(template, bindings, strategy));
+    }
+
+    private static UnaryOperator<String> toMapping(String template,
+                                                   Function<String, RDFNode> bindings,
+                                                   Function<RDFNode, String> strategy) {
+        return var -> {
             RDFNode node = bindings.apply(var);
             if (node == null) {
                 if (LOGGER.isDebugEnabled()) {
@@ -139,7 +149,7 @@ abstract class AbstractBuildFunction implements org.apache.jena.sparql.function.
                 return "";
             }
             return strategy.apply(node);
-        });
+        };
     }
 
     /**
@@ -152,30 +162,7 @@ abstract class AbstractBuildFunction implements org.apache.jena.sparql.function.
     public static String format(String template, UnaryOperator<String> mapping) {
         Objects.requireNonNull(template, "Null template");
         Objects.requireNonNull(mapping, "Null variable mapping");
-        List<Integer> starts = new LinkedList<>();
-        for (int i = template.length() - 2; i > 0; i--) {
-            if (template.charAt(i) == '?' && template.charAt(i - 1) == '{') {
-                starts.add(i - 1);
-            }
-        }
-        if (starts.isEmpty())
-            return template;
-        String res = template;
-        for (int start : starts) {
-            int ends = template.indexOf('}', start + 2);
-            if (ends < 0) {
-                continue;
-            }
-            String var = template.substring(start + 2, ends);
-            if (!isVariable(var) && (var.isEmpty() || !Character.isDigit(var.charAt(0)))) {
-                continue;
-            }
-            String str = mapping.apply(var);
-            String prefix = res.substring(0, start);
-            String suffix = res.substring(ends + 1);
-            res = prefix + str + suffix;
-        }
-        return res;
+        return Template.get(template).format(mapping);
     }
 
     /**
@@ -211,20 +198,11 @@ abstract class AbstractBuildFunction implements org.apache.jena.sparql.function.
     public static String buildURI(String template,
                                   PrefixMapping pm,
                                   Function<String, RDFNode> variables) {
-        String name = format(template, variables, URI_INSERTION_STRATEGY);
-        String res;
-        if (name.startsWith("<") && name.endsWith(">")) {
-            res = name.substring(1, name.length() - 1);
-        } else if (name.startsWith(":")) {
-            res = name.substring(1);
-            String ns = pm.getNsPrefixURI("");
-            if (ns != null) {
-                res = ns + res;
-            }
-        } else {
-            res = pm.expandPrefix(name);
-        }
-        return res;
+        Objects.requireNonNull(template, "Null template");
+        Objects.requireNonNull(pm, "Null prefix mapping");
+        Objects.requireNonNull(variables, "Null variable binding");
+        Template t = Template.get(template);
+        return t.expand(t.format(toMapping(template, variables, URI_INSERTION_STRATEGY)), pm);
     }
 
     /**
@@ -242,11 +220,46 @@ abstract class AbstractBuildFunction implements org.apache.jena.sparql.function.
                                       Function<String, RDFNode> variables,
                                       Graph graph);
 
+    /**
+     * Executes a template-based function body within the given environment.
+     * By default it delegates to {@link #exec(String, PrefixMapping, Function, Graph)} with the active graph,
+     * to be overridden by functions that need the execution context.
+     *
+     * @param template  String, not {@code null}
+     * @param pm        {@link PrefixMapping}
+     * @param variables not {@code null}, String (variable) to {@link RDFNode} binding
+     * @param env       {@link FunctionEnv}, not {@code null}
+     * @return {@link NodeValue}
+     * @throws ExprEvalException if something is wrong
+     */
+    protected NodeValue exec(String template,
+                             PrefixMapping pm,
+                             Function<String, RDFNode> variables,
+                             FunctionEnv env) {
+        return exec(template, pm, variables, env.getActiveGraph());
+    }
+
     @Override
     public void build(String uri, ExprList args) {
         // nothing
     }
 
+    /**
+     * Lists the variables of the template (the first argument), that are not argument references ({@code {?N}}),
+     * since they are taken from the binding.
+     *
+     * @param args {@link ExprList} the arguments
+     * @return {@code Collection} of variable names or {@code null} if the template is not known
+     */
+    @Override
+    public Collection<String> bindingVariables(ExprList args) {
+        Expr e = args.isEmpty() ? null : args.get(0);
+        if (!(e instanceof NodeValue) || !((NodeValue) e).asNode().isLiteral()) {
+            return null;
+        }
+        return Template.get(((NodeValue) e).asNode().getLiteralLexicalForm()).bindingVariables();
+    }
+
     @Override
     public NodeValue exec(Binding binding, ExprList args, String func, FunctionEnv env) {
         if (args.isEmpty()) {
@@ -254,34 +267,189 @@ abstract class AbstractBuildFunction implements org.apache.jena.sparql.function.
         }
         Expr e = args.get(0);
         String template = e.eval(binding, env).asNode().getLiteralLexicalForm();
-        Model model = ModelFactory.createModelForGraph(env.getActiveGraph());
+        Graph graph = env.getActiveGraph();
+        Model[] model = new Model[1];
         Function<String, RDFNode> variables = var -> {
             Node node = binding.get(Var.alloc(var));
-            if (node != null) {
-                return model.asRDFNode(node);
+            if (node == null) {
+                int index = argumentIndex(var);
+                if (index <= 0 || index >= args.size()) {
+                    return null;
+                }
+                Expr expr = args.get(index);
+                if (expr == null) return null;
+                try {
+                    NodeValue value = expr.eval(binding, env);
+                    if (value == null) {
+                        return null;
+                    }
+                    node = value.asNode();
+                } catch (ExprEvalException ex) {
+                    throw new ExprEvalException("Cannot exec " + func + ": '" + ex.getMessage() + "'", ex);
+                }
+            }
+            if (model[0] == null) {
+                model[0] = ModelFactory.createModelForGraph(graph);
             }
-            if (!Character.isDigit(var.charAt(0))) {
-                return null;
+            return model[0].asRDFNode(node);
+        };
+        return exec(template, graph.getPrefixMapping(), variables, env);
+    }
+
+    /**
+     * Parses the argument reference ({@code {?N}}).
+     * The template compiler accepts any placeholder that starts with a digit (e.g. {@code {?1x}}),
+     * such a placeholder does not refer to any argument.
+     *
+     * @param var String, the placeholder variable, not empty
+     * @return int, the argument index or {@code -1}
+     */
+    private static int argumentIndex(String var) {
+        if (var.length() > 9) {
+            return -1;
+        }
+        int res = 0;
+        for (int i = 0; i < var.length(); i++) {
+            char c = var.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
             }
-            int index = Integer.parseInt(var);
-            if (index <= 0 || index >= args.size()) {
-                return null;
+            res = res * 10 + (c - '0');
+        }
+        return res;
+    }
+
+    /**
+     * A template, that is parsed once into a sequence of literal text and variable segments.
+     * Compiled templates are cached by their string form,
+     * so that each function call only fills the segments into a reused per-thread builder.
+     */
+    static final class Template {
+        private static final CacheMap<String, Template> TEMPLATES = CacheMap.create(1024);
+        private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(StringBuilder::new);
+
+        // literal text, texts[i] precedes vars[i], the last text is a suffix:
+        private final String[] texts;
+        private final String[] vars;
+        private final String source;
+        // the prefix, if it can be determined by the leading text, for the URI expansion:
+        private final String prefix;
+        private final int localStart;
+
+        private Template(String source, String[] texts, String[] vars) {
+            this.source = source;
+            this.texts = texts;
+            this.vars = vars;
+            String head = texts[0];
+            int colon = head.startsWith("<") || head.startsWith(":") ? -1 : head.indexOf(':');
+            this.prefix = colon < 0 ? null : head.substring(0, colon);
+            this.localStart = colon + 1;
+        }
+
+        /**
+         * Gets a compiled template from the cache or compiles a new one.
+         *
+         * @param template String, not {@code null}
+         * @return {@link Template}
+         */
+        static Template get(String template) {
+            return TEMPLATES.computeIfAbsent(template, Template::compile);
+        }
+
+        /**
+         * Parses the string template.
+         * A segment {@code {?var}} is a placeholder if {@code var} is a good variable name or starts with a digit,
+         * any other text (including malformed placeholders) is kept as is.
+         *
+         * @param template String, not {@code null}
+         * @return {@link Template}
+         */
+        static Template compile(String template) {
+            List<String> texts = new ArrayList<>();
+            List<String> vars = new ArrayList<>();
+            int from = 0;
+            int start = template.indexOf("{?");
+            while (start >= 0) {
+                int end = template.indexOf('}', start + 2);
+                if (end < 0) {
+                    break;
+                }
+                String var = template.substring(start + 2, end);
+                if (isVariable(var) || (!var.isEmpty() && Character.isDigit(var.charAt(0)))) {
+                    texts.add(template.substring(from, start));
+                    vars.add(var);
+                    from = end + 1;
+                    start = template.indexOf("{?", from);
+                } else {
+                    start = template.indexOf("{?", start + 1);
+                }
             }
-            Expr expr = args.get(index);
-            if (expr == null) return null;
-            try {
-                NodeValue value = expr.eval(binding, env);
-                if (value != null) {
-                    node = value.asNode();
-                    return ModelFactory.createModelForGraph(env.getActiveGraph()).asRDFNode(node);
+            texts.add(template.substring(from));
+            return new Template(template, texts.toArray(new String[0]), vars.toArray(new String[0]));
+        }
+
+        /**
+         * Lists the template variables, that are not argument references ({@code {?N}}).
+         *
+         * @return {@code List} of variable names
+         */
+        List<String> bindingVariables() {
+            List<String> res = new ArrayList<>(vars.length);
+            for (String var : vars) {
+                if (!Character.isDigit(var.charAt(0)) && !res.contains(var)) {
+                    res.add(var);
                 }
-            } catch (ExprEvalException ex) {
-                throw new ExprEvalException("Cannot exec " + func + ": '" + ex.getMessage() + "'", ex);
             }
-            return null;
-        };
-        PrefixMapping pm = env.getActiveGraph().getPrefixMapping();
-        return exec(template, pm, variables, env.getActiveGraph());
+            return res;
+        }
+
+        /**
+         * Fills the template using the given variable mapping.
+         * All the variables are translated before the builder is touched,
+         * so a mapping is free to call another template-based function.
+         *
+         * @param mapping variable mapping, to translate String (var) to another form, not {@code null}
+         * @return String
+         */
+        String format(UnaryOperator<String> mapping) {
+            if (vars.length == 0) {
+                return source;
+            }
+            String[] values = new String[vars.length];
+            for (int i = 0; i < vars.length; i++) {
+                values[i] = mapping.apply(vars[i]);
+            }
+            StringBuilder res = BUILDER.get();
+            res.setLength(0);
+            for (int i = 0; i < vars.length; i++) {
+                res.append(texts[i]).append(values[i]);
+            }
+            return res.append(texts[vars.length]).toString();
+        }
+
+        /**
+         * Turns the formatted name into a full URI.
+         * If the prefix is a fixed part of the template,
+         * it is not searched for in the name again, only its namespace is looked up.
+         *
+         * @param name String, the result of {@link #format(UnaryOperator)}
+         * @param pm   {@link PrefixMapping}
+         * @return String, URI
+         */
+        String expand(String name, PrefixMapping pm) {
+            if (prefix != null) {
+                String ns = pm.getNsPrefixURI(prefix);
+                return ns == null ? name : ns + name.substring(localStart);
+            }
+            if (name.startsWith("<") && name.endsWith(">")) {
+                return name.substring(1, name.length() - 1);
+            }
+            if (name.startsWith(":")) {
+                String ns = pm.getNsPrefixURI("");
+                return ns == null ? name.substring(1) : ns + name.substring(1);
+            }
+            return pm.expandPrefix(name);
+        }
     }
 
 }
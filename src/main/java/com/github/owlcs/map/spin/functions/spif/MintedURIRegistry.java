@@ -0,0 +1,91 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.owlcs.map.spin.functions.spif;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A registry of URIs minted by the {@link buildUniqueURI spif:buildUniqueURI} function.
+ * For each stem (the URI built from a template) it remembers the next suffix to try,
+ * so that a new unique URI is found without probing all the previously minted ones again.
+ * A candidate URI is accepted if it has not been minted yet and there is no such resource in the graph,
+ * the graph is still checked for each candidate to stay consistent with the existing data.
+ * It is expected that the graph is only growing while the registry is in use.
+ * <p>
+ * The registry is thread-safe.
+ * While inference an instance is kept in the {@link com.github.owlcs.map.spin.MapARQFactory#MINTED_URIS context}
+ * and cleared after each run.
+ */
+@SuppressWarnings("WeakerAccess")
+public class MintedURIRegistry {
+    private final Map<String, AtomicInteger> stems = new ConcurrentHashMap<>();
+    private final Set<String> minted = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Finds a new URI, that starts with the given {@code stem}:
+     * either the stem itself or the stem with an integer suffix ({@code 0, 1, 2, ...}).
+     *
+     * @param stem  String, URI, not {@code null}
+     * @param graph {@link Graph} to check for existing resources, not {@code null}
+     * @return {@link Node} URI, which is neither registered nor present in the graph
+     */
+    public Node mint(String stem, Graph graph) {
+        AtomicInteger next = stems.computeIfAbsent(stem, k -> new AtomicInteger(-1));
+        while (true) {
+            int i = next.getAndIncrement();
+            String uri = i < 0 ? stem : stem + i;
+            Node res = NodeFactory.createURI(uri);
+            if (containsResource(graph, res) || !minted.add(uri)) {
+                continue;
+            }
+            return res;
+        }
+    }
+
+    /**
+     * Answers the number of minted URIs.
+     *
+     * @return int
+     */
+    public int size() {
+        return minted.size();
+    }
+
+    /**
+     * Forgets all minted URIs.
+     */
+    public void clear() {
+        stems.clear();
+        minted.clear();
+    }
+
+    private static boolean containsResource(Graph graph, Node node) {
+        return graph.contains(node, Node.ANY, Node.ANY)
+                || graph.contains(Node.ANY, Node.ANY, node)
+                || graph.contains(Node.ANY, node, Node.ANY);
+    }
+}
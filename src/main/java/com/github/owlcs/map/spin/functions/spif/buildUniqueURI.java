@@ -18,14 +18,13 @@
 
 package com.github.owlcs.map.spin.functions.spif;
 
+import com.github.owlcs.map.spin.MapARQFactory;
 import org.apache.jena.graph.Graph;
-import org.apache.jena.graph.Node;
-import org.apache.jena.graph.NodeFactory;
-import org.apache.jena.rdf.model.Model;
-import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.shared.PrefixMapping;
 import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.function.FunctionEnv;
+import org.apache.jena.sparql.util.Context;
 
 import java.util.function.Function;
 
@@ -35,13 +34,17 @@ import java.util.function.Function;
 public class buildUniqueURI extends AbstractBuildFunction {
 
     @Override
-    protected NodeValue exec(String template, PrefixMapping pm, Function<String, RDFNode> variables, Graph graph) {
-        String uri = buildURI(template, pm, variables);
-        Model model = ModelFactory.createModelForGraph(graph);
-        Node res = NodeFactory.createURI(uri);
-        for (int i = 0; model.containsResource(model.asRDFNode(res)); ++i) {
-            res = NodeFactory.createURI(uri + i);
+    protected NodeValue exec(String template, PrefixMapping pm, Function<String, RDFNode> variables, FunctionEnv env) {
+        Context context = env.getContext();
+        MintedURIRegistry registry = context == null ? null : context.get(MapARQFactory.MINTED_URIS);
+        if (registry == null) {
+            registry = new MintedURIRegistry();
         }
-        return NodeValue.makeNode(res);
+        return NodeValue.makeNode(registry.mint(buildURI(template, pm, variables), env.getActiveGraph()));
+    }
+
+    @Override
+    protected NodeValue exec(String template, PrefixMapping pm, Function<String, RDFNode> variables, Graph graph) {
+        return NodeValue.makeNode(new MintedURIRegistry().mint(buildURI(template, pm, variables), graph));
     }
 }
@@ -18,7 +18,7 @@
 
 package com.github.owlcs.map.spin.functions.spin;
 
-import com.github.owlcs.map.spin.SpinModelConfig;
+import com.github.owlcs.map.spin.CompiledExpression;
 import org.apache.jena.graph.Node;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.query.QuerySolutionMap;
@@ -27,7 +27,13 @@ import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.core.DatasetImpl;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.apache.jena.sparql.expr.Expr;
 import org.apache.jena.sparql.expr.ExprEvalException;
+import org.apache.jena.sparql.expr.ExprList;
 import org.apache.jena.sparql.expr.NodeValue;
 import org.apache.jena.sparql.function.FunctionEnv;
 import org.apache.jena.sparql.function.FunctionFactory;
@@ -35,12 +41,16 @@ import org.topbraid.spin.arq.AbstractFunction;
 import org.topbraid.spin.arq.DatasetWithDifferentDefaultModel;
 import org.topbraid.spin.model.SPINFactory;
 import org.topbraid.spin.util.SPINExpressions;
+import org.topbraid.spin.vocabulary.SPIN;
 
 import java.util.Arrays;
 import java.util.Objects;
 
 /**
  * Re-implementation of {@code spin:eval}.
+ * Unlike the original, it passes the {@code ?this} variable from the calling binding into the evaluated expression,
+ * so that {@code ?this} (and {@link com.github.owlcs.map.spin.vocabulary.AVC#currentIndividual avc:currentIndividual})
+ * is available at any level of a function chain.
  * <p>
  * Created by @ssz on 12.06.2019.
  *
@@ -48,14 +58,66 @@ import java.util.Objects;
  * @see org.topbraid.spin.arq.functions.EvalFunction
  */
 public class eval extends AbstractFunction implements FunctionFactory {
+    private static final Var THIS_VAR = Var.alloc(SPIN.THIS_VAR_NAME);
 
     @Override
     public eval create(String uri) {
         return this;
     }
 
+    /**
+     * Answers the value of the {@code ?this} variable from the given binding.
+     *
+     * @param binding {@link Binding}, not {@code null}
+     * @return {@link Node} or {@code null} if {@code ?this} is unbound
+     */
+    public static Node getThis(Binding binding) {
+        return binding.get(THIS_VAR);
+    }
+
+    /**
+     * Evaluates the function arguments against the given binding.
+     * An unbound variable or an expression that has no value gives {@code null} in the returned array.
+     *
+     * @param binding {@link Binding}, not {@code null}
+     * @param args    {@link ExprList}, not {@code null}
+     * @param env     {@link FunctionEnv}
+     * @return array of {@link Node}s
+     */
+    public static Node[] evalArgs(Binding binding, ExprList args, FunctionEnv env) {
+        Node[] res = new Node[args.size()];
+        for (int i = 0; i < args.size(); i++) {
+            Expr expr = args.get(i);
+            if (expr == null || (expr.isVariable() && !binding.contains(expr.asVar()))) {
+                continue;
+            }
+            NodeValue x = expr.eval(binding, env);
+            if (x != null) {
+                res[i] = x.asNode();
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public NodeValue exec(Binding binding, ExprList args, String uri, FunctionEnv env) {
+        return exec(evalArgs(binding, args, env), getThis(binding), env);
+    }
+
     @Override
     public NodeValue exec(Node[] nodes, FunctionEnv env) {
+        return exec(nodes, null, env);
+    }
+
+    /**
+     * Evaluates the expression from the given arguments array.
+     *
+     * @param nodes array of {@link Node}s, the first is an expression, the rest are pairs of predicate-value
+     * @param _this {@link Node}, the value of {@code ?this} variable to pass into the expression, can be {@code null}
+     * @param env   {@link FunctionEnv}
+     * @return {@link NodeValue}
+     */
+    public NodeValue exec(Node[] nodes, Node _this, FunctionEnv env) {
         if (nodes.length == 0) {
             throw new ExprEvalException("Missing arguments");
         }
@@ -66,12 +128,24 @@ public class eval extends AbstractFunction implements FunctionFactory {
         if (exprNode == null) {
             throw new ExprEvalException("No expression specified");
         }
+        return exec(exprNode, getBinding(nodes, _this), env);
+    }
+
+    /**
+     * Evaluates the expression, that is given as a node from the {@link FunctionEnv#getActiveGraph() active graph}.
+     * The expression is parsed only once, while inference it is taken from the cache.
+     *
+     * @param exprNode {@link Node} a literal or the root of a SPIN expression, not {@code null}
+     * @param binding  {@link Binding} with values of the expression variables, not {@code null}
+     * @param env      {@link FunctionEnv}, not {@code null}
+     * @return {@link NodeValue}
+     * @see CompiledExpression
+     */
+    public NodeValue exec(Node exprNode, Binding binding, FunctionEnv env) {
         if (exprNode.isLiteral()) {
             return NodeValue.makeNode(exprNode);
         }
-
-        Model model = SpinModelConfig.createSpinModel(env.getActiveGraph());
-        return exec(model.wrapAsResource(exprNode), getBindings(nodes, model), env.getDataset());
+        return CompiledExpression.get(exprNode, env).eval(binding, env);
     }
 
     public NodeValue exec(RDFNode exprNode, QuerySolutionMap bindings, DatasetGraph dsg) {
@@ -114,15 +188,19 @@ public class eval extends AbstractFunction implements FunctionFactory {
         throw new ExprEvalException("Expression has no result");
     }
 
-    private QuerySolutionMap getBindings(Node[] nodes, Model model) {
-        QuerySolutionMap res = new QuerySolutionMap();
-        for (int i = 1; i < nodes.length - 1; i += 2) {
-            Node property = nodes[i];
+    private static Binding getBinding(Node[] nodes, Node _this) {
+        BindingMap res = BindingFactory.create();
+        // in reverse order, so that the last value of a repeated variable wins:
+        for (int i = nodes.length - 2; i >= 1; i -= 2) {
             Node value = nodes[i + 1];
-            if (value != null) {
-                res.add(property.getLocalName(), model.asRDFNode(value));
+            Var var = Var.alloc(nodes[i].getLocalName());
+            if (value != null && !res.contains(var)) {
+                res.add(var, value);
             }
         }
+        if (_this != null && !res.contains(THIS_VAR)) { // explicit arguments have priority
+            res.add(THIS_VAR, _this);
+        }
         return res;
     }
 }
@@ -18,18 +18,21 @@
 
 package com.github.owlcs.map.spin.functions.spinmap;
 
-import com.github.owlcs.map.spin.SpinModelConfig;
 import com.github.owlcs.map.spin.functions.spin.eval;
 import com.github.owlcs.map.spin.vocabulary.AVC;
 import com.github.owlcs.ontapi.jena.utils.Iter;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
-import org.apache.jena.query.QuerySolutionMap;
-import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
 import org.apache.jena.sparql.expr.ExprEvalException;
+import org.apache.jena.sparql.expr.ExprList;
 import org.apache.jena.sparql.expr.NodeValue;
 import org.apache.jena.sparql.function.FunctionEnv;
 import org.topbraid.spin.arq.AbstractFunction2;
+import org.topbraid.spin.vocabulary.SPIN;
 import org.topbraid.spin.vocabulary.SPINMAP;
 
 /**
@@ -41,26 +44,41 @@ import org.topbraid.spin.vocabulary.SPINMAP;
  *     BIND (spl:object(?context, spinmap:target) AS ?targetExpr) .
  * }
  * }</pre>
+ * The {@code ?this} variable from the calling binding is passed into the evaluated target expression.
+ * <p>
  * Created by @ssz on 12.06.2019.
  *
  * @see AVC#optimize
  */
 public class targetResource extends AbstractFunction2 {
-    private static final String SPINMAP_SOURCE_NAME = SPINMAP.source.getLocalName();
+    private static final Var SPINMAP_SOURCE_VAR = Var.alloc(SPINMAP.source.getLocalName());
+    private static final Var THIS_VAR = Var.alloc(SPIN.THIS_VAR_NAME);
     private static final Node SPINMAP_TARGET_NODE = SPINMAP.target.asNode();
 
     private final eval evalFunction = new eval();
 
+    @Override
+    public NodeValue exec(Binding binding, ExprList args, String uri, FunctionEnv env) {
+        Node[] nodes = eval.evalArgs(binding, args, env);
+        return exec(nodes.length > 0 ? nodes[0] : null, nodes.length > 1 ? nodes[1] : null, eval.getThis(binding), env);
+    }
+
     @Override
     protected NodeValue exec(Node arg1, Node arg2, FunctionEnv env) {
+        return exec(arg1, arg2, null, env);
+    }
+
+    protected NodeValue exec(Node arg1, Node arg2, Node _this, FunctionEnv env) {
         Node source = requireResource(arg1, "arg1");
         Node context = requireResource(arg2, "context");
         Graph g = env.getActiveGraph();
-        Model m = SpinModelConfig.createSpinModel(g);
-        QuerySolutionMap map = new QuerySolutionMap();
-        map.add(SPINMAP_SOURCE_NAME, m.asRDFNode(source));
+        BindingMap binding = BindingFactory.create();
+        if (_this != null) {
+            binding.add(THIS_VAR, _this);
+        }
+        binding.add(SPINMAP_SOURCE_VAR, source);
         return Iter.findFirst(g.find(context, SPINMAP_TARGET_NODE, Node.ANY)
-                .mapWith(t -> evalFunction.exec(m.getRDFNode(t.getObject()), map, env.getDataset())))
+                .mapWith(t -> evalFunction.exec(t.getObject(), binding, env)))
                 .orElseThrow(() -> new ExprEvalException(String.format("No spinmap:targetResource is derived " +
                         "for source=%s and context=%s", source, context)));
     }
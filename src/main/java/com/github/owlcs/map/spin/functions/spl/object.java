@@ -18,6 +18,7 @@
 
 package com.github.owlcs.map.spin.functions.spl;
 
+import com.github.owlcs.map.spin.MapARQFactory;
 import com.github.owlcs.map.spin.vocabulary.AVC;
 import com.github.owlcs.ontapi.jena.utils.Iter;
 import org.apache.jena.graph.Node;
@@ -57,11 +58,9 @@ public class object extends AbstractFunction2 {
         } else {
             throw new ExprEvalException("The second argument must be a property (uri node)");
         }
-        // since this function is used by spin API
-        // always use the whole graph which contains everything: all libraries, source and target inside.
-        // todo: it is better to use search (source) graph in case
-        //  the function is called not by SPIN, but from ONT-MAP, but currently don't know how to achieve this
-        return Iter.findFirst(env.getActiveGraph().find(subject, predicate, Node.ANY)
+        // while ONT-MAP inference the search graph contains only the data and schemas,
+        // otherwise (the function is called by spin API) it is the whole graph with all libraries inside:
+        return Iter.findFirst(MapARQFactory.getSearchGraph(env).find(subject, predicate, Node.ANY)
                 .mapWith(x -> NodeValue.makeNode(x.getObject())))
                 .orElseThrow(() -> new ExprEvalException("No object found for ?subject = " +
                         subject + " and ?predicate = " + predicate));
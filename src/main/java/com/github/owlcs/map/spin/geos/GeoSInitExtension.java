@@ -39,7 +39,9 @@ import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Supplier;
 
 /**
@@ -88,6 +90,11 @@ public class GeoSInitExtension implements Extension {
         });
     }
 
+    @Override
+    public Set<String> deterministic() {
+        return Collections.unmodifiableSet(new HashSet<>(functions().keySet()));
+    }
+
     @Override
     public void start() {
         // no SQL, turn off warning:
@@ -0,0 +1,324 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.spin.infer;
+
+import com.github.owlcs.map.MapJenaException;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A base for dictionary-encoded {@link IntermediateStore}s.
+ * Nodes are not kept as java objects: each node is encoded as a type byte followed by the UTF-8 bytes of its label,
+ * the entries are appended to a sequence of fixed-size byte chunks, which is an arena and a queue at the same time.
+ * The head of the queue is just the read position within the arena.
+ * Duplicates are detected by an open-addressing hash table,
+ * that maps an encoded node to the position of its last entry in the arena.
+ * An entry never crosses a chunk boundary, the tail of a chunk is either too short or marked by a zero length.
+ * Once the queue is drained, the arena and the table are reset,
+ * so that the memory taken by the already processed nodes is reused or released (see {@link #truncate()}).
+ * <p>
+ * Subclasses decide where the chunks and the table are located.
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class EncodedIntermediateStore implements IntermediateStore {
+    protected static final byte URI = 1;
+    protected static final byte BLANK = 2;
+    // the entry header is the length of the encoded node:
+    private static final int HEADER = Integer.BYTES;
+    private static final long EMPTY = 0;
+
+    protected final int chunkSize;
+    private final int initialSlots;
+
+    private LongBuffer table;
+    private int mask;
+    private int occupied;
+    private long writePosition;
+    private long readPosition;
+    private long pending;
+
+    /**
+     * @param chunkSize    positive int, the size of each arena chunk in bytes
+     * @param initialSlots int, the initial capacity of the hash table, must be a power of two
+     */
+    protected EncodedIntermediateStore(int chunkSize, int initialSlots) {
+        if (chunkSize <= HEADER || Integer.bitCount(initialSlots) != 1) {
+            throw new MapJenaException.IllegalArgument("Wrong store parameters: " + chunkSize + ", " + initialSlots);
+        }
+        this.chunkSize = chunkSize;
+        this.initialSlots = initialSlots;
+    }
+
+    /**
+     * Returns the arena chunk with the given index, allocating it if necessary.
+     * Chunks are requested in order, starting from zero.
+     *
+     * @param index int, not negative
+     * @return {@link ByteBuffer} with capacity {@link #chunkSize}
+     */
+    protected abstract ByteBuffer chunk(int index);
+
+    /**
+     * Returns the arena chunk with the given index to write data up to the given offset.
+     * By default it is the same as {@link #chunk(int)},
+     * but an implementation may allocate a chunk partially and grow it on demand.
+     *
+     * @param index int, not negative
+     * @param limit int, the end offset of the data to write, not greater than {@link #chunkSize}
+     * @return {@link ByteBuffer}, which can be smaller than {@link #chunkSize}, but not smaller than the limit
+     */
+    protected ByteBuffer chunk(int index, int limit) {
+        return chunk(index);
+    }
+
+    /**
+     * Is called when the queue is drained and the arena is going to be reused from the beginning.
+     * An implementation may release the chunks here.
+     */
+    protected void truncate() {
+    }
+
+    /**
+     * Allocates a new zeroed hash table.
+     *
+     * @param slots int, the number of slots, a power of two
+     * @return {@link LongBuffer}
+     * @throws MapJenaException.IllegalState if the table cannot be allocated
+     */
+    protected abstract LongBuffer createTable(int slots);
+
+    /**
+     * Releases the hash table, that is no longer in use after rehashing.
+     *
+     * @param table {@link LongBuffer}
+     */
+    protected void releaseTable(LongBuffer table) {
+    }
+
+    @Override
+    public boolean add(Node node) {
+        byte[] data = encode(node);
+        if (table == null) {
+            table = createTable(initialSlots);
+            mask = initialSlots - 1;
+        }
+        int i = hash(data) & mask;
+        long slot;
+        while ((slot = table.get(i)) != EMPTY) {
+            long position = slot - 1;
+            if (matches(position, data)) {
+                if (position >= readPosition) { // still in the queue
+                    return false;
+                }
+                table.put(i, append(data) + 1);
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        table.put(i, append(data) + 1);
+        if (++occupied > (mask + 1) >>> 1) {
+            rehash();
+        }
+        return true;
+    }
+
+    @Override
+    public Node poll() {
+        if (pending == 0) {
+            return null;
+        }
+        while (true) {
+            int offset = offset(readPosition);
+            if (chunkSize - offset < HEADER) {
+                readPosition += chunkSize - offset;
+                continue;
+            }
+            ByteBuffer chunk = chunk(index(readPosition));
+            int length = chunk.getInt(offset);
+            if (length == 0) { // end of chunk marker
+                readPosition += chunkSize - offset;
+                continue;
+            }
+            byte[] data = read(chunk, offset, length);
+            readPosition += HEADER + length;
+            if (--pending == 0) {
+                reset();
+            }
+            return decode(data);
+        }
+    }
+
+    @Override
+    public long size() {
+        return pending;
+    }
+
+    /**
+     * Resets the arena and the table.
+     * The table contains only the processed nodes at this moment, which are allowed to be added again.
+     */
+    private void reset() {
+        readPosition = 0;
+        writePosition = 0;
+        occupied = 0;
+        if (table != null) {
+            releaseTable(table);
+            table = null;
+        }
+        truncate();
+    }
+
+    private long append(byte[] data) {
+        int size = HEADER + data.length;
+        if (size > chunkSize) {
+            throw new MapJenaException.IllegalArgument("The node is too long: " + data.length + " bytes");
+        }
+        int offset = offset(writePosition);
+        if (offset + size > chunkSize) {
+            if (chunkSize - offset >= HEADER) {
+                chunk(index(writePosition), offset + HEADER).putInt(offset, 0);
+            }
+            writePosition += chunkSize - offset;
+            offset = 0;
+        }
+        ByteBuffer chunk = chunk(index(writePosition), offset + size).duplicate();
+        chunk.putInt(offset, data.length);
+        chunk.position(offset + HEADER);
+        chunk.put(data);
+        long res = writePosition;
+        writePosition += size;
+        pending++;
+        return res;
+    }
+
+    private boolean matches(long position, byte[] data) {
+        ByteBuffer chunk = chunk(index(position));
+        int offset = offset(position);
+        if (chunk.getInt(offset) != data.length) {
+            return false;
+        }
+        offset += HEADER;
+        for (int i = 0; i < data.length; i++) {
+            if (chunk.get(offset + i) != data[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        int slots = (mask + 1) << 1;
+        if (slots <= 0) {
+            throw new MapJenaException.IllegalState("Too many intermediate individuals");
+        }
+        LongBuffer prev = table;
+        LongBuffer next = createTable(slots);
+        int mask = slots - 1;
+        for (int j = 0; j < prev.capacity(); j++) {
+            long slot = prev.get(j);
+            if (slot == EMPTY) continue;
+            long position = slot - 1;
+            ByteBuffer chunk = chunk(index(position));
+            int offset = offset(position);
+            int i = hash(read(chunk, offset, chunk.getInt(offset))) & mask;
+            while (next.get(i) != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            next.put(i, slot);
+        }
+        this.table = next;
+        this.mask = mask;
+        releaseTable(prev);
+    }
+
+    private int index(long position) {
+        return (int) (position / chunkSize);
+    }
+
+    private int offset(long position) {
+        return (int) (position % chunkSize);
+    }
+
+    private static byte[] read(ByteBuffer chunk, int offset, int length) {
+        byte[] res = new byte[length];
+        ByteBuffer b = chunk.duplicate();
+        b.position(offset + HEADER);
+        b.get(res);
+        return res;
+    }
+
+    private static int hash(byte[] data) {
+        int res = 1;
+        for (byte b : data) {
+            res = 31 * res + b;
+        }
+        // spread bits, since the table index is taken from the lower ones:
+        res *= 0x9E3779B9;
+        return res ^ (res >>> 16);
+    }
+
+    /**
+     * Encodes the node into a byte array.
+     *
+     * @param node {@link Node}, URI or blank
+     * @return byte array
+     * @throws MapJenaException.IllegalArgument if the node is neither URI nor blank
+     */
+    protected static byte[] encode(Node node) {
+        byte type;
+        String label;
+        if (node.isURI()) {
+            type = URI;
+            label = node.getURI();
+        } else if (node.isBlank()) {
+            type = BLANK;
+            label = node.getBlankNodeLabel();
+        } else {
+            throw new MapJenaException.IllegalArgument("Not an individual: " + node);
+        }
+        byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+        byte[] res = new byte[bytes.length + 1];
+        res[0] = type;
+        System.arraycopy(bytes, 0, res, 1, bytes.length);
+        return res;
+    }
+
+    /**
+     * Decodes the node from the given byte array.
+     *
+     * @param data byte array
+     * @return {@link Node}
+     * @see #encode(Node)
+     */
+    protected static Node decode(byte[] data) {
+        String label = new String(data, 1, data.length - 1, StandardCharsets.UTF_8);
+        switch (data[0]) {
+            case URI:
+                return NodeFactory.createURI(label);
+            case BLANK:
+                return NodeFactory.createBlankNode(label);
+            default:
+                throw new MapJenaException.IllegalState("Broken store entry: " + data[0]);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.spin.infer;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * The default in-memory {@link InferenceMetrics} collector.
+ * It is based on {@link LongAdder}s, so it is cheap under contention.
+ * The rule latencies are collected into histograms with power-of-two buckets:
+ * the bucket {@code i} counts the executions that took {@code [2^i, 2^(i+1))} nanoseconds.
+ * <p>
+ * The {@link #toString()} method returns a report with the rules sorted by their total time,
+ * so the rule that dominates a slow mapping run is on the top.
+ */
+@SuppressWarnings("WeakerAccess")
+public class InMemoryInferenceMetrics implements InferenceMetrics {
+    private final Map<String, RuleStats> rules = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> functions = new ConcurrentHashMap<>();
+    private final LongAdder individuals = new LongAdder();
+    private final LongAdder triples = new LongAdder();
+
+    @Override
+    public void ruleExecuted(String id, String name, long nanos) {
+        RuleStats res = rules.get(id);
+        if (res == null) {
+            res = rules.computeIfAbsent(id, k -> new RuleStats(k, name));
+        }
+        res.add(nanos);
+    }
+
+    @Override
+    public void functionCalled(String uri) {
+        functions.computeIfAbsent(uri, x -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void individualsProcessed(long count) {
+        individuals.add(count);
+    }
+
+    @Override
+    public void triplesEmitted(long count) {
+        triples.add(count);
+    }
+
+    /**
+     * Lists the statistics of all executed rules sorted by the total time in descending order.
+     *
+     * @return {@code List} of {@link RuleStats}
+     */
+    public List<RuleStats> rules() {
+        return rules.values().stream()
+                .sorted(Comparator.comparingLong(RuleStats::getTotalNanos).reversed())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the statistics for the specified rule.
+     *
+     * @param id String, the rule identifier
+     * @return {@link RuleStats} or {@code null} if the rule has not been executed
+     */
+    public RuleStats getRuleStats(String id) {
+        return rules.get(id);
+    }
+
+    /**
+     * Returns a snapshot of the function call counts.
+     *
+     * @return {@code Map} with function URIs as keys and the numbers of calls as values
+     */
+    public Map<String, Long> functions() {
+        Map<String, Long> res = new TreeMap<>();
+        functions.forEach((k, v) -> res.put(k, v.sum()));
+        return res;
+    }
+
+    /**
+     * Answers the number of processed individuals.
+     *
+     * @return long
+     */
+    public long getIndividuals() {
+        return individuals.sum();
+    }
+
+    /**
+     * Answers the number of triples produced by rules,
+     * some of them may be duplicates or may be already present in the target.
+     *
+     * @return long
+     */
+    public long getTriples() {
+        return triples.sum();
+    }
+
+    /**
+     * Clears all collected data.
+     */
+    public void reset() {
+        rules.clear();
+        functions.clear();
+        individuals.reset();
+        triples.reset();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder res = new StringBuilder();
+        res.append(String.format("Individuals: %d, triples: %d%n", getIndividuals(), getTriples()));
+        rules().forEach(r -> res.append(r).append(System.lineSeparator()));
+        functions.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, LongAdder> e) -> e.getValue().sum()).reversed())
+                .forEach(e -> res.append(String.format("Function <%s>: %d calls%n", e.getKey(), e.getValue().sum())));
+        return res.toString();
+    }
+
+    /**
+     * The execution statistics of a single rule.
+     */
+    public static class RuleStats {
+        private static final int BUCKETS = Long.SIZE;
+        private final String id;
+        private final String rule;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+        private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+        protected RuleStats(String id, String rule) {
+            this.id = Objects.requireNonNull(id);
+            this.rule = Objects.requireNonNull(rule);
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] = new LongAdder();
+            }
+        }
+
+        protected void add(long nanos) {
+            long n = Math.max(nanos, 1);
+            count.increment();
+            total.add(n);
+            max.accumulate(n);
+            histogram[BUCKETS - 1 - Long.numberOfLeadingZeros(n)].increment();
+        }
+
+        public String getID() {
+            return id;
+        }
+
+        public String getRule() {
+            return rule;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return total.sum();
+        }
+
+        public long getMaxNanos() {
+            return max.get();
+        }
+
+        public long getMeanNanos() {
+            long c = getCount();
+            return c == 0 ? 0 : getTotalNanos() / c;
+        }
+
+        /**
+         * Returns a snapshot of the latency histogram.
+         *
+         * @return array of {@code 64} counts, the index is the binary logarithm of the latency in nanoseconds
+         */
+        public long[] getHistogram() {
+            long[] res = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                res[i] = histogram[i].sum();
+            }
+            return res;
+        }
+
+        /**
+         * Estimates the latency percentile as the upper bound of the histogram bucket it falls into.
+         *
+         * @param p double, from {@code 0} to {@code 1}
+         * @return long, nanoseconds
+         */
+        public long getPercentileNanos(double p) {
+            long[] h = getHistogram();
+            long all = 0;
+            for (long x : h) {
+                all += x;
+            }
+            long rank = (long) Math.ceil(p * all);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += h[i];
+                if (seen >= rank && seen > 0) {
+                    return (1L << (i + 1)) - 1;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Rule '%s': %d executions, total %d ms, mean %d us, p99 %d us, max %d us",
+                    rule, getCount(), getTotalNanos() / 1_000_000, getMeanNanos() / 1_000,
+                    getPercentileNanos(0.99) / 1_000, getMaxNanos() / 1_000);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.spin.infer;
+
+import com.github.owlcs.map.MapJenaException;
+import com.github.owlcs.map.MapModel;
+import com.github.owlcs.map.spin.MapManagerImpl;
+import com.github.owlcs.map.utils.BaseGraphListener;
+import com.github.owlcs.ontapi.jena.model.OntIndividual;
+import com.github.owlcs.ontapi.jena.model.OntModel;
+import com.github.owlcs.ontapi.jena.vocabulary.RDF;
+import org.apache.jena.graph.Factory;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.system.StreamRDF;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * An {@link InferenceEngineImpl inference engine} that supports incremental (delta) inference.
+ * <p>
+ * While inference the engine records which target triples came from which source individual and rule.
+ * After the first (full) {@link #run(Graph, Graph) run}, the {@link #update(Graph, Graph, Graph, Graph)} method
+ * can be used to re-run only those individuals which are affected by the given source changes:
+ * the target triples, previously derived from them, are retracted, and the rules are run again.
+ * A target triple is retracted only if no other source individual derives it,
+ * the triples, that were in the target before inference, are never retracted.
+ * Source changes can be collected by the {@link Changes} listener attached to the source graph.
+ * <p>
+ * An individual is considered as affected if it is a subject or an object of some changed triple,
+ * or if it refers to a subject of some changed triple (i.e. there is a source triple {@code individual ?p subject}),
+ * since a mapping can read the values of the linked individuals
+ * (e.g. through {@code spl:object} or {@code avc:objectWithFilter}).
+ * Longer chains are not followed: if a mapping reads a value two or more links away from the processed individual,
+ * a change of that value does not cause re-inference, and a full {@link #run(Graph, Graph) run} is required.
+ * Please note: the engine is stateful and it is not thread-safe, although the parallel inference mode is supported;
+ * the set-at-a-time mode is always turned off, since it cannot attribute triples to individuals.
+ */
+@SuppressWarnings("WeakerAccess")
+public class IncrementalInferenceEngine extends InferenceEngineImpl {
+
+    // source individual -> rule id -> derived triples:
+    protected final Map<Node, Map<String, Set<Triple>>> provenance = new HashMap<>();
+    // derived triple -> the number of source individuals it is derived from:
+    protected final Map<Triple, Integer> counts = new HashMap<>();
+    // intermediate (target) individual -> source individuals it is derived from:
+    protected final Map<Node, Set<Node>> origins = new HashMap<>();
+    // the individuals to process, null means all:
+    protected Set<Node> scope;
+
+    public IncrementalInferenceEngine(MapModel mapping, MapManagerImpl manager) {
+        super(mapping, manager.getTopSpinGraph(), manager.getFactory(),
+                manager.getMappingConfiguration().setInferenceBatchSize(1));
+    }
+
+    /**
+     * Performs the full inference, the previously recorded derivation history is discarded.
+     *
+     * @param source a graph with data to infer, not {@code null}
+     * @param target a graph to write mapping results, not {@code null}
+     * @throws MapJenaException in case if something goes wrong
+     */
+    @Override
+    public void run(Graph source, Graph target) throws MapJenaException {
+        provenance.clear();
+        counts.clear();
+        origins.clear();
+        super.run(source, target);
+    }
+
+    /**
+     * Streaming is not supported since the target graph is required to retract triples.
+     *
+     * @param source {@link Graph}
+     * @param sink   {@link StreamRDF}
+     * @throws MapJenaException.Unsupported always
+     */
+    @Override
+    public void run(Graph source, StreamRDF sink) throws MapJenaException.Unsupported {
+        throw new MapJenaException.Unsupported("Incremental inference into a stream is not supported");
+    }
+
+    /**
+     * Re-runs the inference for the individuals affected by the given source changes.
+     * The {@code source} graph must already contain the changes,
+     * the {@code target} must be the same graph that has been used for the previous runs.
+     *
+     * @param source  a graph with data to infer (after changes), not {@code null}
+     * @param target  a graph with the results of the previous inference, not {@code null}
+     * @param added   a graph with triples added to the source, not {@code null}
+     * @param removed a graph with triples removed from the source, not {@code null}
+     * @throws MapJenaException in case if something goes wrong
+     */
+    public void update(Graph source, Graph target, Graph added, Graph removed) throws MapJenaException {
+        Set<Node> affected = new HashSet<>();
+        Set<Node> subjects = new HashSet<>();
+        Stream.of(added, removed).forEach(g -> g.find(Triple.ANY).forEachRemaining(t -> {
+            subjects.add(t.getSubject());
+            if (!t.getObject().isLiteral()) {
+                affected.add(t.getObject());
+            }
+        }));
+        if (subjects.isEmpty()) {
+            return;
+        }
+        affected.addAll(subjects);
+        // the individuals, that may read the changed values through a link:
+        subjects.forEach(s -> source.find(Node.ANY, Node.ANY, s).forEachRemaining(t -> affected.add(t.getSubject())));
+        affected.forEach(i -> retract(i, target));
+        origins.values().removeIf(x -> {
+            x.removeAll(affected);
+            return x.isEmpty();
+        });
+        scope = affected;
+        try {
+            super.run(source, target);
+        } finally {
+            scope = null;
+        }
+    }
+
+    /**
+     * Re-runs the inference for the changes collected by the given listener, and then resets the listener.
+     *
+     * @param source  a graph with data to infer (after changes), not {@code null}
+     * @param target  a graph with the results of the previous inference, not {@code null}
+     * @param changes {@link Changes} listener attached to the source graph, not {@code null}
+     * @throws MapJenaException in case if something goes wrong
+     */
+    public void update(Graph source, Graph target, Changes changes) throws MapJenaException {
+        update(source, target, changes.getAdded(), changes.getRemoved());
+        changes.clear();
+    }
+
+    /**
+     * Lists all triples that are derived from the given source individual.
+     *
+     * @param individual {@link Node}, not {@code null}
+     * @return Set of {@link Triple}s
+     */
+    public Set<Triple> derivedTriples(Node individual) {
+        Map<String, Set<Triple>> res = provenance.get(individual);
+        if (res == null) return Collections.emptySet();
+        Set<Triple> all = new HashSet<>();
+        res.values().forEach(all::addAll);
+        return all;
+    }
+
+    /**
+     * Retracts all target triples derived from the given individual,
+     * the triples that are derived from other individuals too are kept.
+     *
+     * @param individual {@link Node}, a source individual
+     * @param target     {@link Graph}
+     */
+    protected void retract(Node individual, Graph target) {
+        Map<String, Set<Triple>> rules = provenance.remove(individual);
+        if (rules == null) {
+            return;
+        }
+        rules.values().forEach(triples -> triples.forEach(t -> {
+            Integer c = counts.get(t);
+            if (c == null) return;
+            if (c > 1) {
+                counts.put(t, c - 1);
+                return;
+            }
+            counts.remove(t);
+            target.delete(t);
+        }));
+    }
+
+    @Override
+    protected Stream<OntIndividual> listIndividuals(OntModel src, Model dst) {
+        Set<Node> scope = this.scope;
+        if (scope == null) {
+            return super.listIndividuals(src, dst);
+        }
+        List<OntIndividual> res = new ArrayList<>();
+        scope.forEach(n -> {
+            RDFNode i = src.getRDFNode(n);
+            if (i.canAs(OntIndividual.class)) {
+                res.add(i.as(OntIndividual.class));
+            }
+        });
+        return res.stream();
+    }
+
+    @Override
+    protected void write(Resource individual,
+                         ProcessedQuery rule,
+                         Model res,
+                         RuleSchedule.Agenda agenda,
+                         Model target) {
+        if (individual == null) {
+            throw new MapJenaException.IllegalState("Can't record a result of a batch: " + rule);
+        }
+        Node i = individual.asNode();
+        Set<Node> owners = origins.getOrDefault(i, Collections.singleton(i));
+        String key = rule.getRuleID();
+        Graph g = target.getGraph();
+        res.listStatements().forEachRemaining(s -> {
+            Triple t = s.asTriple();
+            if (RDF.type.equals(s.getPredicate())) {
+                origins.computeIfAbsent(t.getSubject(), x -> new HashSet<>()).addAll(owners);
+            }
+            if (!counts.containsKey(t) && g.contains(t)) {
+                // the triple has been in the target before, it is not tracked
+                return;
+            }
+            for (Node o : owners) {
+                if (provenance.computeIfAbsent(o, x -> new HashMap<>())
+                        .computeIfAbsent(key, x -> new HashSet<>()).add(t)) {
+                    counts.merge(t, 1, Integer::sum);
+                }
+            }
+        });
+        super.write(individual, rule, res, agenda, target);
+    }
+
+    /**
+     * A {@link BaseGraphListener graph listener} to collect the source changes between inference runs.
+     * A triple that is added and then removed (or vice versa) is not considered as a change.
+     */
+    public static class Changes extends BaseGraphListener {
+        private final Graph added = Factory.createGraphMem();
+        private final Graph removed = Factory.createGraphMem();
+
+        @Override
+        protected void addEvent(Triple t) {
+            if (removed.contains(t)) {
+                removed.delete(t);
+            } else {
+                added.add(t);
+            }
+        }
+
+        @Override
+        protected void deleteEvent(Triple t) {
+            if (added.contains(t)) {
+                added.delete(t);
+            } else {
+                removed.add(t);
+            }
+        }
+
+        public Graph getAdded() {
+            return added;
+        }
+
+        public Graph getRemoved() {
+            return removed;
+        }
+
+        public void clear() {
+            added.clear();
+            removed.clear();
+        }
+    }
+}
@@ -18,14 +18,18 @@
 
 package com.github.owlcs.map.spin.infer;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.github.owlcs.map.MapJenaException;
 import com.github.owlcs.map.MapManager;
 import com.github.owlcs.map.MapModel;
 import com.github.owlcs.map.spin.*;
+import com.github.owlcs.map.spin.functions.spif.MintedURIRegistry;
 import com.github.owlcs.map.spin.vocabulary.AVC;
 import com.github.owlcs.map.utils.GraphLogListener;
 import com.github.owlcs.map.utils.GraphUtils;
+import com.github.owlcs.map.utils.GraphVersionListener;
 import com.github.owlcs.map.utils.ModelUtils;
+import com.github.owlcs.ontapi.NoOpReadWriteLock;
 import com.github.owlcs.ontapi.jena.OntModelFactory;
 import com.github.owlcs.ontapi.jena.UnionGraph;
 import com.github.owlcs.ontapi.jena.impl.UnionModel;
@@ -37,23 +41,33 @@ import com.github.owlcs.ontapi.jena.utils.Iter;
 import com.github.owlcs.ontapi.jena.vocabulary.OWL;
 import com.github.owlcs.ontapi.jena.vocabulary.RDF;
 import org.apache.jena.enhanced.BuiltinPersonalities;
+import org.apache.jena.graph.FrontsNode;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.GraphEventManager;
 import org.apache.jena.graph.Node;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.riot.system.StreamRDF;
 import org.apache.jena.sparql.expr.NodeValue;
 import org.apache.jena.sparql.util.Context;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.topbraid.spin.arq.ARQFactory;
 import org.topbraid.spin.util.QueryWrapper;
-import org.topbraid.spin.vocabulary.SPIN;
+import org.topbraid.spin.vocabulary.SPINMAP;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -78,17 +92,14 @@ public class InferenceEngineImpl implements MapManager.InferenceEngine {
     protected final Graph library;
     protected final MapConfigImpl config;
     protected final MapARQFactory factory;
+    protected volatile InferenceMetrics metrics = InferenceMetrics.NO_OP;
+    // to detect the mapping changes:
+    private final Graph graph;
+    private final Lock runLock = new ReentrantLock();
+    private volatile CompiledMapping compiled;
 
-    // A threshold for internal nodes cache.
-    // Assume there is Hotspot Java 6 VM (x32)
-    // Then java6 (actually java8 much less, java9 even less) approximate String memory size would be: 8 * (int) ((((no chars) * 2) + 45) / 8)
-    // org.apache.jena.graph.Node_Blank contains BlankNodeId which in turn contains a String (id) ~ size: 8 (header) + 8 + (string size)
-    // org.apache.jena.graph.Node_URI contains label as String ~ size: 8 + (string size)
-    // For uri or blank node with length 50 (owl:ObjectProperty = 46, jena blank node id = 36) chars
-    // the average size of node would be ~ 160 bytes.
-    // Let it be ten times more ~ 1024 byte, i.e. 1MB ~= 1000 nodes (Wow! It is very very understated. But whatever)
-    // Then 50MB threshold:
-    protected static final int INTERMEDIATE_NODES_STORE_THRESHOLD = 50_000;
+    // The number of source individuals in a single task for the parallel mode:
+    protected static final int PARALLEL_CHUNK_SIZE = 256;
 
     public InferenceEngineImpl(MapModel mapping, MapManagerImpl manager) {
         this(mapping, manager.getTopSpinGraph(), manager.getFactory(), manager.getMappingConfiguration());
@@ -97,38 +108,106 @@ public class InferenceEngineImpl implements MapManager.InferenceEngine {
     public InferenceEngineImpl(MapModel mapping, Graph library, MapARQFactory factory, MapConfigImpl config) {
         this.mapping = Objects.requireNonNull(mapping);
         this.library = Objects.requireNonNull(library);
-        this.factory = Objects.requireNonNull(factory);
+        // own execution context, so that the runtime functions and caches don't affect other engines:
+        this.factory = Objects.requireNonNull(factory).createChild();
         this.config = Objects.requireNonNull(config);
+        this.graph = mapping.asGraphModel().getGraph();
+    }
+
+    /**
+     * Sets the metrics collector, that is used by the subsequent inference runs.
+     * Function calls are recorded through the {@link MapARQFactory#INFERENCE_METRICS context} of the {@link #factory},
+     * which is private for this engine, so concurrent runs of other engines do not affect the counts.
+     *
+     * @param metrics {@link InferenceMetrics}, not {@code null}
+     * @return this engine
+     * @see InMemoryInferenceMetrics
+     */
+    public InferenceEngineImpl setMetrics(InferenceMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+        return this;
+    }
+
+    /**
+     * Returns the current metrics collector.
+     *
+     * @return {@link InferenceMetrics}, {@link InferenceMetrics#NO_OP} by default
+     */
+    public InferenceMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the hit and miss statistics of the caches, that are used by this engine.
+     *
+     * @return {@code Map} with cache names as keys
+     * @see MapARQFactory#getCacheStats()
+     */
+    public Map<String, CacheStats> getCacheStats() {
+        return factory.getCacheStats();
     }
 
     @Override
     public void run(Graph source, Graph target) throws MapJenaException {
-        UnionModel query = assembleQueryModel();
-        // re-register runtime functions
-        query.getBaseModel().listResourcesWithProperty(AVC.runtime)
-                .mapWith(r -> r.inModel(query))
-                .forEachRemaining(factory::replace);
-        // find rules:
-        Set<ProcessedQuery> rules = selectMapRules(query);
-        if (LOGGER.isDebugEnabled())
-            rules.forEach(c -> LOGGER.debug("Rule for <{}>: '{}'", c.getSubject(), c));
-        if (rules.isEmpty()) {
-            throw Exceptions.INFERENCE_NO_RULES.create()
-                    .add(Exceptions.Key.MAPPING, String.valueOf(mapping))
-                    .build();
-        }
+        CompiledMapping compiled = compile();
         // run rules:
         GraphEventManager events = target.getEventManager();
         GraphLogListener logs = new GraphLogListener(LOGGER::debug);
         if (LOGGER.isDebugEnabled())
             events.register(logs);
         try {
-            run(rules, source, target);
+            run(compiled, source, target);
         } finally {
             events.unregister(logs);
         }
     }
 
+    /**
+     * Performs an inference operation over the {@code source} data graph
+     * pushing the inferred triples into the {@code sink} as they are produced.
+     * Only the triples, that are required for dependent rules, are kept in memory.
+     *
+     * @param source a graph with data to infer, not {@code null}
+     * @param sink   {@link StreamRDF} to write mapping results, not {@code null}
+     * @throws MapJenaException in case if something goes wrong
+     * @see StreamTargetGraph
+     */
+    @Override
+    public void run(Graph source, StreamRDF sink) throws MapJenaException {
+        CompiledMapping compiled = compile();
+        StreamTargetGraph target = new StreamTargetGraph(sink, compiled.getClasses());
+        sink.start();
+        try {
+            run(compiled, source, target);
+        } finally {
+            sink.finish();
+            target.close();
+        }
+    }
+
+    /**
+     * Returns the compiled state of the {@link #mapping}, that is shared between runs.
+     * The state is built lazily, on the first run,
+     * and it is rebuilt if the mapping graph or any of its sub-graphs has been changed since the last compilation.
+     *
+     * @return {@link CompiledMapping}, not {@code null}
+     * @throws MapJenaException if there are no rules in the mapping
+     */
+    protected CompiledMapping compile() throws MapJenaException {
+        CompiledMapping res = compiled;
+        if (res != null && res.version.isCurrent()) {
+            return res;
+        }
+        synchronized (this) {
+            res = compiled;
+            if (res != null && res.version.isCurrent()) {
+                return res;
+            }
+            // take the snapshot before compiling, so that concurrent changes make the result stale:
+            return compiled = new CompiledMapping(GraphVersionListener.snapshot(graph));
+        }
+    }
+
     /**
      * Assemblies a query {@link UnionModel union model} from the given {@link MapModel mapping}.
      * The returned model has a flat graph structure without repetitions,
@@ -155,45 +234,244 @@ public class InferenceEngineImpl implements MapManager.InferenceEngine {
     }
 
     /**
-     * Runs the given query collection on the {@code source} model and stores the result to the {@code target}.
+     * Runs the compiled mapping on the {@code source} model and stores the result to the {@code target}.
+     * The source and target graphs are attached to the shared query model only for the time of the run,
+     * so the runs of the same engine are serialized.
      *
-     * @param queries List of {@link ProcessedQuery}s, must not be empty
-     * @param source  {@link Graph} containing source individuals
-     * @param target  {@link Graph} to write resulting individuals
+     * @param compiled {@link CompiledMapping}, not {@code null}
+     * @param source   {@link Graph} containing source individuals
+     * @param target   {@link Graph} to write resulting individuals
      */
-    protected void run(Collection<ProcessedQuery> queries, Graph source, Graph target) {
-        Context context = factory.getContext();
-        UnionGraph queryGraph = (UnionGraph) (queries.iterator().next().getModel()).getGraph();
-        OntModel src = assembleSourceDataModel(queryGraph, source, target);
-        Model dst = ModelFactory.createModelForGraph(target);
-        // insets the source data into the query model, if it is absent:
-        if (!GraphUtils.containsAll(queryGraph, source)) {
-            queryGraph.addGraph(source);
-        }
-        // don't quite understand why without target it doesn't always work
-        if (!GraphUtils.containsAll(queryGraph, target)) {
-            queryGraph.addGraph(target);
+    protected void run(CompiledMapping compiled, Graph source, Graph target) {
+        runLock.lock();
+        try {
+            UnionGraph queryGraph = compiled.getQueryGraph();
+            OntModel src = compiled.assembleSourceDataModel(source, target);
+            List<Graph> attached = new ArrayList<>(2);
+            // insets the source data into the query model, if it is absent:
+            if (!GraphUtils.containsAll(queryGraph, source)) {
+                queryGraph.addGraph(source);
+                attached.add(source);
+            }
+            // don't quite understand why without target it doesn't always work
+            if (!GraphUtils.containsAll(queryGraph, target)) {
+                queryGraph.addGraph(target);
+                attached.add(target);
+            }
+            try {
+                run(compiled.getSchedule(), src, ModelFactory.createModelForGraph(target));
+            } finally {
+                attached.forEach(queryGraph::removeGraph);
+            }
+        } finally {
+            runLock.unlock();
         }
-        Set<Node> inMemory = new HashSet<>();
+    }
 
+    /**
+     * Runs the scheduled rules on the {@code source} model and stores the result to the {@code target}.
+     *
+     * @param schedule {@link RuleSchedule} of all {@link ProcessedQuery}s found in the {@link #mapping}
+     * @param src      {@link OntModel} containing source individuals
+     * @param dst      {@link Model} to write resulting individuals
+     */
+    protected void run(RuleSchedule<ProcessedQuery> schedule, OntModel src, Model dst) {
+        Context context = factory.getContext();
+        RuleIndex<ProcessedQuery> rules = schedule.rules();
         Map<Node, NodeValue> factoryCache = context.get(MapARQFactory.NODE_TO_VALUE_CACHE);
-        // first process all direct individuals from the source graph:
-        listIndividuals(src, dst).forEach(i -> {
-            Set<OntClass> classes = i.classes(false).collect(Collectors.toSet());
-            Map<String, Set<QueryWrapper>> visited;
-            processOne(queries, classes, visited = new HashMap<>(), inMemory, dst, i);
-            // in case no enough memory to keep temporary objects, flush individuals set-store immediately:
-            if (inMemory.size() > INTERMEDIATE_NODES_STORE_THRESHOLD) {
-                processMany(queries, visited, dst, inMemory);
+        int threads = config.inferenceThreads();
+        int batchSize = config.inferenceBatchSize();
+        RuleSchedule.Agenda agenda = schedule.createAgenda(this::createIntermediateStore);
+        if (metrics != InferenceMetrics.NO_OP) {
+            context.set(MapARQFactory.INFERENCE_METRICS, metrics);
+        }
+        context.set(MapARQFactory.SEARCH_GRAPH, createSearchGraph(src.getGraph(), dst.getGraph()));
+        try {
+            if (threads > 1) {
+                runParallel(rules, src, dst, agenda, threads);
+            } else if (batchSize > 1) {
+                // first process all direct individuals from the source graph by batches:
+                Iterator<OntIndividual> individuals = listIndividuals(src, dst).iterator();
+                Map<Resource, Set<OntClass>> batch = new LinkedHashMap<>();
+                while (individuals.hasNext()) {
+                    OntIndividual i = individuals.next();
+                    batch.put(i, i.classes(false).collect(Collectors.toSet()));
+                    if (batch.size() < batchSize && individuals.hasNext()) {
+                        continue;
+                    }
+                    processBatch(rules, batch, agenda, dst, NoOpReadWriteLock.NO_OP_RW_LOCK);
+                    batch = new LinkedHashMap<>();
+                }
+            } else {
+                // first process all direct individuals from the source graph:
+                listIndividuals(src, dst).forEach(i -> {
+                    Set<OntClass> classes = i.classes(false).collect(Collectors.toSet());
+                    processOne(rules, classes, new HashMap<>(), agenda, dst, i);
+                });
             }
-            if (factoryCache.size() > INTERMEDIATE_NODES_STORE_THRESHOLD) {
+            // next iterations: process individuals that are appeared on first pass,
+            // this time it is for dependent queries:
+            processWaves(schedule, agenda, dst);
+        } finally {
+            agenda.close();
+            if (factoryCache != null) {
                 factoryCache.clear();
             }
-        });
-        // next iteration: flush temporarily stored individuals that are appeared on first pass,
-        // this time it is for dependent queries:
-        processMany(queries, new HashMap<>(), dst, inMemory);
-        factoryCache.clear();
+            MapARQFactory.FunctionResults results = context.get(MapARQFactory.FUNCTION_RESULTS);
+            if (results != null) {
+                results.clear();
+            }
+            MintedURIRegistry minted = context.get(MapARQFactory.MINTED_URIS);
+            if (minted != null) {
+                minted.clear();
+            }
+            context.remove(MapARQFactory.INFERENCE_METRICS);
+            context.remove(MapARQFactory.SEARCH_GRAPH);
+        }
+    }
+
+    /**
+     * Creates a graph for the data lookup functions (e.g. {@code spl:object}) to search in while inference.
+     * Unlike the query graph it does not contain any library, only the source data with schemas and the target,
+     * the latter is necessary for the dependent rules, that process the individuals produced by the previous steps.
+     *
+     * @param source {@link Graph} with source data and schemas, see {@link #assembleSourceDataModel(UnionGraph, Graph, Graph)}
+     * @param target {@link Graph} to write resulting individuals
+     * @return {@link Graph}
+     * @see MapARQFactory#SEARCH_GRAPH
+     */
+    protected Graph createSearchGraph(Graph source, Graph target) {
+        if (GraphUtils.containsAll(source, target)) {
+            return source;
+        }
+        // no distinct, as well as for the source model:
+        UnionGraph res = new UnionGraph(source, null, null, false);
+        res.addGraph(target);
+        return res;
+    }
+
+    /**
+     * Creates a fresh store for the individuals produced by the first inference pass or by a previous wave.
+     * The store is not limited in size, so the dependent rules are always run after all their inputs are produced.
+     *
+     * @return {@link IntermediateStore}
+     * @see MapConfigImpl#spillToDisk()
+     */
+    protected IntermediateStore createIntermediateStore() {
+        return config.spillToDisk() ? new MappedIntermediateStore() : new MemoryIntermediateStore();
+    }
+
+    /**
+     * Runs the first inference pass in parallel mode.
+     * The source individuals are split into chunks of {@link #PARALLEL_CHUNK_SIZE} size
+     * (or of {@link MapConfigImpl#inferenceBatchSize() batch size}, if it is greater),
+     * each chunk is processed by a worker of a fixed thread pool.
+     * Queries are executed under the read lock, while the inferred triples are written under the write lock,
+     * so the result is the same as for the sequential mode.
+     * The workers share the {@link #factory}: its function registries are synchronized
+     * (see {@link MapARQFactory#copyContext(Context)}), while the spin query caches and the function cache
+     * are concurrent maps.
+     * The number of pending chunks is limited to keep memory usage bounded.
+     *
+     * @param rules   {@link RuleIndex} of all {@link ProcessedQuery}s found in the {@link #mapping}
+     * @param source  {@link OntModel} containing source individuals
+     * @param target  {@link Model} to write inference result
+     * @param agenda  {@link RuleSchedule.Agenda} to collect result individuals for the next steps,
+     *                it is accessed under the write lock
+     * @param threads int, the number of workers
+     */
+    protected void runParallel(RuleIndex<ProcessedQuery> rules,
+                               OntModel source,
+                               Model target,
+                               RuleSchedule.Agenda agenda,
+                               int threads) {
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new InferenceThreadFactory());
+        Deque<Future<?>> tasks = new ArrayDeque<>();
+        try {
+            Iterator<Node> individuals = listIndividuals(source, target).map(FrontsNode::asNode).iterator();
+            int size = Math.max(PARALLEL_CHUNK_SIZE, config.inferenceBatchSize());
+            List<Node> chunk;
+            while (!(chunk = nextChunk(individuals, size, lock.readLock())).isEmpty()) {
+                List<Node> task = chunk;
+                tasks.add(executor.submit(() -> processChunk(rules, source.getGraph(), target.getGraph(),
+                        agenda, lock, task)));
+                if (tasks.size() >= threads * 2) {
+                    await(tasks.poll());
+                }
+            }
+            while (!tasks.isEmpty()) {
+                await(tasks.poll());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<Node> nextChunk(Iterator<Node> individuals, int size, Lock lock) {
+        List<Node> res = new ArrayList<>(Math.min(size, PARALLEL_CHUNK_SIZE));
+        lock.lock();
+        try {
+            while (res.size() < size && individuals.hasNext()) {
+                res.add(individuals.next());
+            }
+        } finally {
+            lock.unlock();
+        }
+        return res;
+    }
+
+    private static void await(Future<?> task) {
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MapJenaException("Inference has been interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new MapJenaException(cause);
+        }
+    }
+
+    /**
+     * Processes the chunk of source individuals, this method is called by a worker thread.
+     * A worker uses its own model views over the shared graphs,
+     * since the enhanced nodes cache of a {@link Model} is not thread-safe.
+     *
+     * @param rules       {@link RuleIndex} of all {@link ProcessedQuery}s found in the {@link #mapping}
+     * @param source      {@link Graph} containing source individuals
+     * @param target      {@link Graph} to write inference result
+     * @param agenda      {@link RuleSchedule.Agenda}, it is accessed under the write lock
+     * @param lock        {@link ReadWriteLock} to synchronize access to the graphs
+     * @param individuals List of individual {@link Node}s to process
+     */
+    protected void processChunk(RuleIndex<ProcessedQuery> rules,
+                                Graph source,
+                                Graph target,
+                                RuleSchedule.Agenda agenda,
+                                ReadWriteLock lock,
+                                List<Node> individuals) {
+        OntModel src = OntModelFactory.createModel(source, SpinModelConfig.ONT_PERSONALITY);
+        Model dst = ModelFactory.createModelForGraph(target);
+        boolean batch = config.inferenceBatchSize() > 1;
+        Map<Resource, Set<OntClass>> classes = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            for (Node n : individuals) {
+                OntIndividual i = src.getRDFNode(n).as(OntIndividual.class);
+                classes.put(i, i.classes(false).collect(Collectors.toSet()));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (batch) {
+            processBatch(rules, classes, agenda, dst, lock);
+            return;
+        }
+        classes.forEach((i, types) -> processOne(rules, types, new HashMap<>(), agenda, dst, i, lock));
     }
 
     /**
@@ -244,62 +522,191 @@ public class InferenceEngineImpl implements MapManager.InferenceEngine {
     }
 
     /**
-     * Runs a query collection against a collection of individuals (in the form of regular resources),
+     * Processes the individuals, that are produced by the previous steps, by the dependent rules wave by wave.
+     * Each wave runs only its own rules for the individuals that have been collected for it.
+     * Normally, a wave produces individuals only for the next waves, so a single sweep is enough;
+     * if it is not so (e.g. there is a rule that produces a type declaration outside of its context),
+     * the sweep is repeated until there is nothing to process.
+     * A single map of processed individual-queries is shared by all waves and sweeps of the run,
+     * so a rule is never run twice for the same individual, even if a later wave re-types it:
+     * this prevents recursion and duplicates from non-idempotent rules (e.g. {@code spif:buildUniqueURI}).
+     *
+     * @param schedule {@link RuleSchedule} of all {@link ProcessedQuery}s found in the {@link #mapping}
+     * @param agenda   {@link RuleSchedule.Agenda} with individuals collected for the waves
+     * @param target   {@link Model} to write
+     * @see RuleSchedule
+     */
+    protected void processWaves(RuleSchedule<ProcessedQuery> schedule, RuleSchedule.Agenda agenda, Model target) {
+        Map<String, Set<QueryWrapper>> processed = new HashMap<>();
+        while (!agenda.isEmpty()) {
+            for (int i = 0; i < schedule.size(); i++) {
+                processMany(schedule.wave(i), processed, target, agenda, agenda.store(i));
+            }
+        }
+    }
+
+    /**
+     * Runs a query collection against all individuals from the store (in the form of regular resources),
      * writes the result into the specified {@code target} model.
      *
-     * @param queries     Collection of all {@link ProcessedQuery}s found in the {@link #mapping}
+     * @param rules       {@link RuleIndex} of the {@link ProcessedQuery}s to run
      * @param processed   Map of already processed individual-queries to prevent recursion
      * @param target      {@link Model} to write
-     * @param individuals List of {@link Resource}s
+     * @param agenda      {@link RuleSchedule.Agenda} to collect result individuals for the next steps
+     * @param individuals {@link IntermediateStore}, the queue of individuals, it is drained by this method
      */
-    protected void processMany(Collection<ProcessedQuery> queries,
+    protected void processMany(RuleIndex<ProcessedQuery> rules,
                                Map<String, Set<QueryWrapper>> processed,
                                Model target,
-                               Set<Node> individuals) {
-        Iterator<Node> iterator = individuals.iterator();
-        while (iterator.hasNext()) {
-            Resource i = target.asRDFNode(iterator.next()).asResource();
+                               RuleSchedule.Agenda agenda,
+                               IntermediateStore individuals) {
+        Node n;
+        while ((n = individuals.poll()) != null) {
+            Resource i = target.asRDFNode(n).asResource();
             Set<Resource> classes = ModelUtils.listDirectClasses(i).toSet();
-            processOne(queries, classes, processed, individuals, target, i);
-            iterator.remove();
+            processOne(rules, classes, processed, agenda, target, i);
         }
     }
 
     /**
      * Runs a query collection against the single individual.
      *
-     * @param queries   Collection of all {@link ProcessedQuery}s found in the {@link #mapping}
+     * @param rules     {@link RuleIndex} of all {@link ProcessedQuery}s found in the {@link #mapping}
      * @param classes   Set of class expressions, which the given individual is belonged to
      * @param processed Map of already processed individual-queries to prevent possible recursion,
      *                  it is not expected to be large
-     * @param store     Set of {@link Node}s, the collection of result individuals to process in the next step
+     * @param agenda    {@link RuleSchedule.Agenda} to collect result individuals for the next steps
      * @param target    {@link Model} to write inference result (individuals and property assertions)
      * @param source    {@link Resource} the current individual to process
      */
-    protected void processOne(Collection<ProcessedQuery> queries,
+    protected void processOne(RuleIndex<ProcessedQuery> rules,
                               Set<? extends Resource> classes,
                               Map<String, Set<QueryWrapper>> processed,
-                              Set<Node> store,
+                              RuleSchedule.Agenda agenda,
                               Model target,
                               Resource source) {
-        queries.stream()
-                .filter(q -> classes.contains(q.getSubject()))
-                .forEach(q -> {
-                    if (!processed.computeIfAbsent(ModelUtils.getResourceID(source), i -> new HashSet<>()).add(q)) {
-                        LOGGER.warn("The query '{}' has been already processed for individual {}.", q, source);
-                        return;
-                    }
-                    LOGGER.debug("RUN: {} ::: '{}'", source, q);
-                    // use a fresh model, otherwise there is a danger of java.util.ConcurrentModificationException
-                    // while graph iterating by some unclear reason if there are dependent rules in the mapping
-                    Model res = q.run(source);
-                    res.listStatements().forEachRemaining(s -> {
-                        if (RDF.type.equals(s.getPredicate())) {
-                            store.add(s.getSubject().asNode());
-                        }
-                        target.add(s);
-                    });
-                });
+        processOne(rules, classes, processed, agenda, target, source, NoOpReadWriteLock.NO_OP_RW_LOCK);
+    }
+
+    private void processOne(RuleIndex<ProcessedQuery> rules,
+                            Set<? extends Resource> classes,
+                            Map<String, Set<QueryWrapper>> processed,
+                            RuleSchedule.Agenda agenda,
+                            Model target,
+                            Resource source,
+                            ReadWriteLock lock) {
+        metrics.individualsProcessed(1);
+        rules.select(classes).forEach(q -> {
+            if (!processed.computeIfAbsent(ModelUtils.getResourceID(source), i -> new HashSet<>()).add(q)) {
+                // it is expected for cyclic dependencies, when an individual is produced again:
+                LOGGER.debug("The query '{}' has been already processed for individual {}.", q, source);
+                return;
+            }
+            LOGGER.debug("RUN: {} ::: '{}'", source, q);
+            // use a fresh model, otherwise there is a danger of java.util.ConcurrentModificationException
+            // while graph iterating by some unclear reason if there are dependent rules in the mapping
+            write(source, q, read(q, () -> q.run(source), lock), agenda, target, lock);
+        });
+    }
+
+    /**
+     * Runs a query collection against the batch of individuals in the set-at-a-time mode.
+     * Each rule is run once for all individuals from the batch it is applicable to,
+     * if it cannot be rewritten safely, it is run for each individual separately.
+     * The rules are processed in their natural order, so for any individual the order of rules is preserved.
+     *
+     * @param rules  {@link RuleIndex} of all {@link ProcessedQuery}s found in the {@link #mapping}
+     * @param batch  {@code Map} of individuals with their class expressions, in the order of processing
+     * @param agenda {@link RuleSchedule.Agenda} to collect result individuals for the next steps
+     * @param target {@link Model} to write inference result
+     * @param lock   {@link ReadWriteLock} to synchronize access to the graphs
+     * @see MapConfigImpl#inferenceBatchSize()
+     */
+    protected void processBatch(RuleIndex<ProcessedQuery> rules,
+                                Map<? extends Resource, ? extends Set<? extends Resource>> batch,
+                                RuleSchedule.Agenda agenda,
+                                Model target,
+                                ReadWriteLock lock) {
+        metrics.individualsProcessed(batch.size());
+        Map<ProcessedQuery, List<Resource>> byRule = new TreeMap<>();
+        batch.forEach((i, classes) -> rules.select(classes)
+                .forEach(q -> byRule.computeIfAbsent(q, x -> new ArrayList<>()).add(i)));
+        byRule.forEach((q, individuals) -> {
+            if (individuals.size() > 1 && q.canRunInBatch()) {
+                LOGGER.debug("RUN: {} individuals ::: '{}'", individuals.size(), q);
+                write(null, q, read(q, () -> q.run(individuals), lock), agenda, target, lock);
+                return;
+            }
+            individuals.forEach(i -> {
+                LOGGER.debug("RUN: {} ::: '{}'", i, q);
+                write(i, q, read(q, () -> q.run(i), lock), agenda, target, lock);
+            });
+        });
+    }
+
+    private Model read(ProcessedQuery rule, Supplier<Model> query, ReadWriteLock lock) {
+        InferenceMetrics metrics = this.metrics;
+        lock.readLock().lock();
+        try {
+            if (metrics == InferenceMetrics.NO_OP) {
+                return query.get();
+            }
+            long start = System.nanoTime();
+            try {
+                return query.get();
+            } finally {
+                metrics.ruleExecuted(rule.getRuleID(), rule.getRuleName(), System.nanoTime() - start);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void write(Resource individual,
+                       ProcessedQuery rule,
+                       Model res,
+                       RuleSchedule.Agenda agenda,
+                       Model target,
+                       ReadWriteLock lock) {
+        metrics.triplesEmitted(res.size());
+        lock.writeLock().lock();
+        try {
+            write(individual, rule, res, agenda, target);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the result of a rule execution into the {@code target} model.
+     * In the parallel mode this method is called under the write lock.
+     *
+     * @param individual {@link Resource}, the processed individual,
+     *                   or {@code null} if the rule has been run for a batch of individuals
+     * @param rule       {@link ProcessedQuery}, the rule that produced the result
+     * @param res        {@link Model}, the inferred triples
+     * @param agenda     {@link RuleSchedule.Agenda} to collect result individuals for the next steps
+     * @param target     {@link Model} to write inference result
+     */
+    protected void write(Resource individual,
+                         ProcessedQuery rule,
+                         Model res,
+                         RuleSchedule.Agenda agenda,
+                         Model target) {
+        Node type = rule.getTargetClass();
+        if (type != null && agenda.accepts(type) && target.getGraph() instanceof StreamTargetGraph) {
+            // the rule produces individuals for dependent rules, the streaming target must keep all their triples,
+            // even if the type declaration comes from another rule that has not been run yet:
+            StreamTargetGraph graph = (StreamTargetGraph) target.getGraph();
+            res.listSubjects().forEachRemaining(s -> graph.retain(s.asNode()));
+        }
+        // type declarations go first, so that a streaming target could recognize individuals of dependent classes:
+        res.listStatements(null, RDF.type, (RDFNode) null).forEachRemaining(s -> {
+            // only individuals of the classes that have rules are needed for the next steps:
+            agenda.add(s.getSubject().asNode(), s.getObject().asNode());
+            target.add(s);
+        });
+        res.listStatements().filterDrop(s -> RDF.type.equals(s.getPredicate())).forEachRemaining(target::add);
     }
 
     /**
@@ -338,6 +745,81 @@ public class InferenceEngineImpl implements MapManager.InferenceEngine {
                 .collect(Collectors.toCollection(TreeSet::new));
     }
 
+    /**
+     * The compiled state of the {@link #mapping}:
+     * the query model, the scheduled rules and the runtime functions.
+     * It does not depend on the data, so it is shared between the runs.
+     */
+    protected class CompiledMapping {
+        protected final GraphVersionListener.Snapshot version;
+        protected final UnionModel query;
+        protected final RuleSchedule<ProcessedQuery> schedule;
+        protected final Set<Node> classes;
+        protected final List<Graph> schemas;
+
+        protected CompiledMapping(GraphVersionListener.Snapshot version) throws MapJenaException {
+            this.version = version;
+            this.query = assembleQueryModel();
+            // the parsed expressions of the previous version are no longer valid:
+            Map<Node, CompiledExpression> expressions = factory.getContext().get(MapARQFactory.COMPILED_EXPRESSIONS);
+            if (expressions != null) {
+                expressions.clear();
+            }
+            // re-register runtime functions (within the engine's own registry):
+            query.getBaseModel().listResourcesWithProperty(AVC.runtime)
+                    .mapWith(r -> r.inModel(query))
+                    .forEachRemaining(factory::replace);
+            // find rules:
+            Set<ProcessedQuery> rules = selectMapRules(query);
+            if (LOGGER.isDebugEnabled())
+                rules.forEach(c -> LOGGER.debug("Rule for <{}>: '{}'", c.getSubject(), c));
+            if (rules.isEmpty()) {
+                throw Exceptions.INFERENCE_NO_RULES.create()
+                        .add(Exceptions.Key.MAPPING, String.valueOf(mapping))
+                        .build();
+            }
+            this.schedule = new RuleSchedule<>(new RuleIndex<>(rules));
+            this.classes = rules.stream().map(x -> x.getSubject().asNode())
+                    .collect(Collectors.collectingAndThen(Collectors.toSet(), Collections::unmodifiableSet));
+            Set<Graph> exclude = Graphs.baseGraphs(library).collect(Collectors.toSet());
+            this.schemas = Graphs.baseGraphs(query.getGraph()).filter(x -> !exclude.contains(x))
+                    .collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList));
+        }
+
+        /**
+         * Assembles the source model from the given source graph using the precompiled schemas.
+         *
+         * @param source {@link Graph}, not {@code null}
+         * @param target {@link Graph}, not {@code null}
+         * @return {@link OntModel}, not {@code null}
+         * @see InferenceEngineImpl#assembleSourceDataModel(UnionGraph, Graph, Graph)
+         */
+        protected OntModel assembleSourceDataModel(Graph source, Graph target) {
+            UnionGraph query = getQueryGraph();
+            if (GraphUtils.containsAll(query, source)) { // the source contains schema
+                return OntModelFactory.createModel(source, SpinModelConfig.ONT_PERSONALITY);
+            }
+            Set<Graph> exclude = Graphs.baseGraphs(target).collect(Collectors.toSet());
+            List<Graph> sources = Graphs.baseGraphs(source).collect(Collectors.toList());
+            UnionGraph res = new UnionGraph(sources.remove(0), null, null, false);
+            sources.forEach(res::addGraph);
+            schemas.stream().filter(x -> !exclude.contains(x)).forEach(res::addGraph);
+            return OntModelFactory.createModel(res, SpinModelConfig.ONT_PERSONALITY);
+        }
+
+        public UnionGraph getQueryGraph() {
+            return (UnionGraph) query.getGraph();
+        }
+
+        public RuleSchedule<ProcessedQuery> getSchedule() {
+            return schedule;
+        }
+
+        public Set<Node> getClasses() {
+            return classes;
+        }
+    }
+
     /**
      * An {@link ExtendedQuery Extended SPIN Query} with possibility to process it for the given individual.
      * <p>
@@ -345,8 +827,65 @@ public class InferenceEngineImpl implements MapManager.InferenceEngine {
      */
     public class ProcessedQuery extends ExtendedQuery {
 
+        protected final Map<String, RDFNode> bindings;
+        protected final boolean batchable;
+        protected final Node targetClass;
+        protected final String id;
+        protected final String name;
+
         public ProcessedQuery(QueryWrapper qw) {
             super(qw);
+            this.name = super.toString();
+            this.id = calcRuleID(qw.getStatement(), name);
+            Map<String, RDFNode> template = qw.getTemplateBinding();
+            this.bindings = template == null ? Collections.emptyMap() : new HashMap<>(template);
+            this.batchable = SPINInferenceHelper.canRunOnInstances(qw);
+            Statement rule = qw.getStatement();
+            this.targetClass = rule == null || !rule.getObject().isResource() ? null :
+                    SpinModels.context(rule.getResource())
+                            .map(c -> c.getPropertyResourceValue(SPINMAP.targetClass))
+                            .map(Resource::asNode).orElse(null);
+        }
+
+        private String calcRuleID(Statement st, String name) {
+            if (st == null) return name;
+            RDFNode o = st.getObject();
+            return ModelUtils.getResourceID(st.getSubject()) + " " +
+                    (o.isResource() ? ModelUtils.getResourceID(o.asResource()) : o.toString());
+        }
+
+        /**
+         * Returns the identifier of this rule, which is unique within the mapping
+         * and does not change between runs.
+         * It is built from the context class and the rule node.
+         *
+         * @return String, not {@code null}
+         */
+        public String getRuleID() {
+            return id;
+        }
+
+        /**
+         * Returns the target class of the mapping context, if this query is a context rule.
+         *
+         * @return {@link Node} or {@code null}
+         */
+        public Node getTargetClass() {
+            return targetClass;
+        }
+
+        /**
+         * Returns a human readable name of this rule (its label or text), which is computed only once.
+         *
+         * @return String, not {@code null}
+         */
+        public String getRuleName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
         }
 
         /**
@@ -355,8 +894,9 @@ public class InferenceEngineImpl implements MapManager.InferenceEngine {
          * <p>
          * There is a difference with SPIN-API Inferences implementation:
          * in additional to passing {@code ?this} to top-level query binding (mapping construct)
-         * there is also a ONT-MAP workaround solution to place it deep in all sub-queries,
-         * which are called by specified construct.
+         * it is also passed deep in all sub-queries and expressions, which are called by specified construct
+         * (see {@link com.github.owlcs.map.spin.functions.spin.eval spin:eval} and
+         * {@link MapARQFactory.ARQFunction}).
          * Handling {@code ?this} only by the top-level mappings is definitely leak of SPIN-API functionality,
          * which severely limits the space of usage opportunities.
          * But, it seems, that Topbraid Composer also (checked version 5.5.1)
@@ -365,41 +905,70 @@ public class InferenceEngineImpl implements MapManager.InferenceEngine {
          * may accept {@code ?this} but only in some limited conditions,
          * for example (and at least) for the original {@code spinmap:Mapping-1-1},
          * that has no been cloned with changing namespace to local mapping model.
+         * Since {@code ?this} is a pure runtime binding, the mapping is not modified while inference,
+         * and the compiled queries are shared between all individuals.
          *
          * @param instance {@link Resource}, an individual to process, not {@code null}
          * @return {@link Model}, new triples, not {@code null}
          * @throws MapJenaException in case exception occurred while inference
-         * @see SPINInferenceHelper#runQueryOnInstance(ARQFactory, QueryWrapper, Resource, Model)
+         * @see SPINInferenceHelper#runQueryOnInstance(ARQFactory, org.apache.jena.query.Query, Model, Map, Resource, Model)
          * @see AVC#currentIndividual
          * @see AVC#MagicFunctions
          */
         public Model run(Resource instance) {
-            Model mapping = getModel();
-            Resource _this = AVC.currentIndividual.inModel(mapping);
-            Map<Statement, Statement> vars = getThisVarReplacement(_this, instance);
             try {
-                vars.forEach((a, b) -> mapping.add(b).remove(a));
-                if (!vars.isEmpty()) {
-                    factory.replace(_this);
-                }
-                try {
-                    return SPINInferenceHelper.runQueryOnInstance(factory, this, instance, null);
-                } catch (RuntimeException ex) {
-                    throw Exceptions.INFERENCE_FAIL.create()
-                            .add(Exceptions.Key.QUERY, String.valueOf(this))
-                            .add(Exceptions.Key.INSTANCE, instance.toString())
-                            .build(ex);
-                }
-            } finally {
-                vars.forEach((a, b) -> mapping.add(a).remove(b));
+                return SPINInferenceHelper.runQueryOnInstance(factory, getQuery(), getModel(), bindings, instance, null);
+            } catch (RuntimeException ex) {
+                throw Exceptions.INFERENCE_FAIL.create()
+                        .add(Exceptions.Key.QUERY, String.valueOf(this))
+                        .add(Exceptions.Key.INSTANCE, instance.toString())
+                        .build(ex);
             }
         }
 
-        private Map<Statement, Statement> getThisVarReplacement(Resource function, Resource instance) {
-            Model m = function.getModel();
-            return SpinModels.getLocalFunctionBody(m, function).stream()
-                    .filter(s -> Objects.equals(s.getObject(), SPIN._this))
-                    .collect(Collectors.toMap(x -> x, x -> m.createStatement(x.getSubject(), x.getPredicate(), instance)));
+        /**
+         * Answers {@code true} if this query can be run for many individuals at once.
+         *
+         * @return boolean
+         * @see SPINInferenceHelper#canRunOnInstances(QueryWrapper)
+         */
+        public boolean canRunInBatch() {
+            return batchable;
+        }
+
+        /**
+         * Runs the Jena Query encapsulating in this object for the given individuals at once
+         * and returns the inferred triples as a Model.
+         * The result must be the same as the union of {@link #run(Resource)} results for each individual.
+         *
+         * @param instances Collection of {@link Resource}s, individuals to process, not {@code null}
+         * @return {@link Model}, new triples, not {@code null}
+         * @throws MapJenaException in case exception occurred while inference
+         * @see #canRunInBatch()
+         */
+        public Model run(Collection<? extends Resource> instances) {
+            try {
+                return SPINInferenceHelper.runQueryOnInstances(factory, getQuery(), getModel(), bindings, instances, null);
+            } catch (RuntimeException ex) {
+                throw Exceptions.INFERENCE_FAIL.create()
+                        .add(Exceptions.Key.QUERY, String.valueOf(this))
+                        .add(Exceptions.Key.INSTANCE, instances.size() + " individuals")
+                        .build(ex);
+            }
+        }
+    }
+
+    /**
+     * A {@link ThreadFactory} to produce daemon inference workers.
+     */
+    protected static class InferenceThreadFactory implements ThreadFactory {
+        private static final AtomicInteger COUNTER = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread res = new Thread(r, "ont-map-inference-" + COUNTER.incrementAndGet());
+            res.setDaemon(true);
+            return res;
         }
     }
 
@@ -419,7 +988,29 @@ public class InferenceEngineImpl implements MapManager.InferenceEngine {
 
         @Override
         public Model run(Resource individual) {
-            return individual.inModel(emptyModel()).addProperty(RDF.type, type).getModel();
+            return run(Collections.singleton(individual));
+        }
+
+        @Override
+        public boolean canRunInBatch() {
+            return true;
+        }
+
+        @Override
+        public Model run(Collection<? extends Resource> individuals) {
+            Model res = emptyModel();
+            individuals.stream().filter(this::test).forEach(i -> res.add(i, RDF.type, type));
+            return res;
+        }
+
+        /**
+         * Answers {@code true} if the type declaration must be generated for the given individual.
+         *
+         * @param individual {@link Resource}
+         * @return boolean
+         */
+        protected boolean test(Resource individual) {
+            return true;
         }
 
         protected Model emptyModel() {
@@ -439,9 +1030,8 @@ public class InferenceEngineImpl implements MapManager.InferenceEngine {
         }
 
         @Override
-        public Model run(Resource individual) {
-            if (individual.isAnon()) return emptyModel();
-            return super.run(individual);
+        protected boolean test(Resource individual) {
+            return !individual.isAnon();
         }
     }
 }
@@ -0,0 +1,73 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.spin.infer;
+
+/**
+ * A metrics SPI for the inference engine.
+ * All methods are called in hot paths, and possibly from several worker threads at once,
+ * so implementations must be thread-safe and cheap.
+ * The default implementation does nothing.
+ *
+ * @see InMemoryInferenceMetrics
+ * @see InferenceEngineImpl#setMetrics(InferenceMetrics)
+ */
+public interface InferenceMetrics {
+
+    /**
+     * A collector that ignores everything.
+     */
+    InferenceMetrics NO_OP = new InferenceMetrics() {
+    };
+
+    /**
+     * Records a single execution of a mapping rule,
+     * which is either for one individual or for a batch of individuals.
+     * The engine does not call this method (and does not measure time at all) if the collector is {@link #NO_OP}.
+     *
+     * @param id    String, the stable rule identifier, unique within the mapping
+     * @param name  String, a human readable rule name (its label or text), may be not unique
+     * @param nanos long, the execution time in nanoseconds
+     */
+    default void ruleExecuted(String id, String name, long nanos) {
+    }
+
+    /**
+     * Records a single function call, both for SPARQL-based and java functions.
+     *
+     * @param uri String, the function URI
+     */
+    default void functionCalled(String uri) {
+    }
+
+    /**
+     * Records the processed individuals.
+     *
+     * @param count long
+     */
+    default void individualsProcessed(long count) {
+    }
+
+    /**
+     * Records the triples produced by rules.
+     *
+     * @param count long
+     */
+    default void triplesEmitted(long count) {
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.spin.infer;
+
+import org.apache.jena.graph.Node;
+
+/**
+ * A store for intermediate individuals, that are produced by the first inference pass
+ * and must be processed by the dependent rules on the next pass.
+ * It is a FIFO queue without duplicates:
+ * a node, that is already waiting for processing, is not added twice,
+ * but it can be added again once it has been {@link #poll() polled}.
+ * An individual can be either URI or blank node, literals are not allowed.
+ * <p>
+ * Implementations are not required to be thread-safe,
+ * the inference engine accesses the store either in a single thread or under the write lock.
+ *
+ * @see MemoryIntermediateStore
+ * @see MappedIntermediateStore
+ */
+public interface IntermediateStore extends AutoCloseable {
+
+    /**
+     * Adds the individual to the end of the queue, if it is not already there.
+     *
+     * @param node {@link Node}, URI or blank, not {@code null}
+     * @return {@code true} if the queue has been changed
+     * @throws com.github.owlcs.map.MapJenaException.IllegalArgument if the node is not an individual
+     */
+    boolean add(Node node);
+
+    /**
+     * Retrieves and removes the head of the queue.
+     *
+     * @return {@link Node} or {@code null} if the store is empty
+     */
+    Node poll();
+
+    /**
+     * Answers the number of individuals, that are waiting for processing.
+     *
+     * @return long
+     */
+    long size();
+
+    /**
+     * Answers {@code true} if there are no individuals waiting for processing.
+     *
+     * @return boolean
+     */
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Releases all resources held by this store.
+     */
+    @Override
+    void close();
+}
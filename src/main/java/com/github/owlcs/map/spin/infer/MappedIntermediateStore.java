@@ -0,0 +1,148 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.spin.infer;
+
+import com.github.owlcs.map.MapJenaException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A spill {@link IntermediateStore}, that keeps both the encoded nodes and the hash table
+ * in memory-mapped temporary files, so the java heap usage does not depend on the number of individuals.
+ * The mapped data chunks are reused after the queue is drained, so the data file does not grow beyond the peak.
+ * The files are deleted on {@link #close()}.
+ *
+ * @see EncodedIntermediateStore
+ */
+@SuppressWarnings("WeakerAccess")
+public class MappedIntermediateStore extends EncodedIntermediateStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedIntermediateStore.class);
+
+    public static final int CHUNK_SIZE = 1 << 26;
+    // a table is mapped as a single region, which can not be larger than Integer.MAX_VALUE bytes:
+    private static final int MAX_SLOTS = 1 << 28;
+
+    private final Path dir;
+    private final FileChannel data;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private final Deque<Path> tables = new ArrayDeque<>();
+    // a table of the same size can be created again after the queue is drained:
+    private int tableCount;
+
+    /**
+     * Creates a store within the default temporary-file directory.
+     */
+    public MappedIntermediateStore() {
+        this(null);
+    }
+
+    /**
+     * Creates a store within the given directory.
+     *
+     * @param parent {@link Path}, the directory for temporary files, or {@code null} for the system default
+     * @throws MapJenaException if the files cannot be created
+     */
+    public MappedIntermediateStore(Path parent) {
+        this(parent, CHUNK_SIZE);
+    }
+
+    protected MappedIntermediateStore(Path parent, int chunkSize) {
+        super(chunkSize, 1 << 16);
+        try {
+            this.dir = parent == null ?
+                    Files.createTempDirectory("ont-map-") : Files.createTempDirectory(parent, "ont-map-");
+            this.data = FileChannel.open(dir.resolve("nodes"),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new MapJenaException("Can't create a temporary store", e);
+        }
+    }
+
+    @Override
+    protected ByteBuffer chunk(int index) {
+        try {
+            while (chunks.size() <= index) {
+                chunks.add(data.map(FileChannel.MapMode.READ_WRITE, (long) chunks.size() * chunkSize, chunkSize));
+            }
+        } catch (IOException e) {
+            throw new MapJenaException("Can't map the store chunk #" + index, e);
+        }
+        return chunks.get(index);
+    }
+
+    @Override
+    protected LongBuffer createTable(int slots) {
+        if (slots > MAX_SLOTS) {
+            throw new MapJenaException.IllegalState("Too many intermediate individuals");
+        }
+        Path file = dir.resolve("table-" + (tableCount++) + "-" + slots);
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // a mapping remains valid after the channel is closed; a new file region is filled with zeros:
+            LongBuffer res = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) slots * Long.BYTES).asLongBuffer();
+            tables.add(file);
+            return res;
+        } catch (IOException e) {
+            throw new MapJenaException("Can't create the store table", e);
+        }
+    }
+
+    @Override
+    protected void releaseTable(LongBuffer table) {
+        // tables are released in the order of their creation:
+        delete(tables.poll());
+    }
+
+    @Override
+    public void close() {
+        chunks.clear();
+        try {
+            data.close();
+        } catch (IOException e) {
+            LOGGER.warn("Can't close the store file", e);
+        }
+        delete(dir.resolve("nodes"));
+        while (!tables.isEmpty()) {
+            delete(tables.poll());
+        }
+        delete(dir);
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // e.g. on Windows a file cannot be deleted while it is mapped
+            LOGGER.debug("Can't delete {}: '{}', will try on exit", file, e.getMessage());
+            file.toFile().deleteOnExit();
+        }
+    }
+}
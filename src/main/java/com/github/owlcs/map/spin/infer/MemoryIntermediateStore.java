@@ -0,0 +1,98 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.spin.infer;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact heap {@link IntermediateStore}.
+ * The average footprint of a node is the length of its UTF-8 label plus about twenty bytes,
+ * which is several times less than a {@link org.apache.jena.graph.Node} object within a {@code HashSet}.
+ * A chunk is allocated small and grows on demand up to the {@link #CHUNK_SIZE},
+ * so an empty or almost empty store takes almost nothing.
+ * All chunks are released when the queue is drained.
+ *
+ * @see EncodedIntermediateStore
+ */
+@SuppressWarnings("WeakerAccess")
+public class MemoryIntermediateStore extends EncodedIntermediateStore {
+    public static final int CHUNK_SIZE = 1 << 20;
+    private static final int INITIAL_CHUNK_SIZE = 1 << 12;
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+
+    public MemoryIntermediateStore() {
+        this(CHUNK_SIZE);
+    }
+
+    protected MemoryIntermediateStore(int chunkSize) {
+        super(chunkSize, 1 << 10);
+    }
+
+    @Override
+    protected ByteBuffer chunk(int index) {
+        return chunk(index, 0);
+    }
+
+    @Override
+    protected ByteBuffer chunk(int index, int limit) {
+        while (chunks.size() <= index) {
+            chunks.add(ByteBuffer.allocate(Math.min(INITIAL_CHUNK_SIZE, chunkSize)));
+        }
+        ByteBuffer res = chunks.get(index);
+        if (res.capacity() >= limit) {
+            return res;
+        }
+        int size = res.capacity();
+        while (size < limit) {
+            size <<= 1;
+        }
+        ByteBuffer next = ByteBuffer.allocate(Math.min(size, chunkSize));
+        next.put(res.duplicate()).clear();
+        chunks.set(index, next);
+        return next;
+    }
+
+    @Override
+    protected void truncate() {
+        chunks.clear();
+    }
+
+    /**
+     * Answers the number of bytes, that are currently allocated for the arena.
+     *
+     * @return long
+     */
+    public long allocated() {
+        return chunks.stream().mapToLong(ByteBuffer::capacity).sum();
+    }
+
+    @Override
+    protected LongBuffer createTable(int slots) {
+        return LongBuffer.allocate(slots);
+    }
+
+    @Override
+    public void close() {
+        chunks.clear();
+    }
+}
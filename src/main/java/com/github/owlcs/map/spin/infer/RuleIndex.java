@@ -0,0 +1,131 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.spin.infer;
+
+import org.apache.jena.graph.FrontsNode;
+import org.apache.jena.graph.Node;
+
+import java.util.*;
+
+/**
+ * An index of mapping rules by their subjects (i.e. context source classes),
+ * which is built once per inference run to dispatch individuals to the rules they belong to.
+ * The order of rules is the natural order of {@link ExtendedQuery}s
+ * (see {@link SPINInferenceHelper#createMapComparator()}),
+ * and it is preserved also for individuals that belong to several classes.
+ *
+ * @param <Q> subtype of {@link ExtendedQuery}
+ */
+@SuppressWarnings("WeakerAccess")
+public class RuleIndex<Q extends ExtendedQuery> {
+    private final List<Q> rules;
+    private final Map<Node, int[]> byClass;
+
+    /**
+     * Creates an index for the given rules.
+     *
+     * @param rules Collection of rules, not {@code null}
+     */
+    public RuleIndex(Collection<? extends Q> rules) {
+        List<Q> list = new ArrayList<>(rules);
+        Collections.sort(list);
+        Map<Node, List<Integer>> map = new HashMap<>();
+        for (int i = 0; i < list.size(); i++) {
+            map.computeIfAbsent(list.get(i).getSubject().asNode(), x -> new ArrayList<>()).add(i);
+        }
+        Map<Node, int[]> index = new HashMap<>();
+        map.forEach((k, v) -> index.put(k, v.stream().mapToInt(Integer::intValue).toArray()));
+        this.rules = Collections.unmodifiableList(list);
+        this.byClass = index;
+    }
+
+    /**
+     * Lists all rules in their natural order.
+     *
+     * @return unmodifiable {@code List} of rules
+     */
+    public List<Q> rules() {
+        return rules;
+    }
+
+    /**
+     * Answers {@code true} if there are no rules in the index.
+     *
+     * @return boolean
+     */
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Answers {@code true} if there is at least one rule for the given class.
+     *
+     * @param clazz {@link Node}
+     * @return boolean
+     */
+    public boolean hasRules(Node clazz) {
+        return byClass.containsKey(clazz);
+    }
+
+    /**
+     * Selects all rules for the given class collection (the types of some individual).
+     *
+     * @param classes Collection of class {@link FrontsNode}s, not {@code null}
+     * @return {@code List} of rules in their natural order, without duplicates
+     */
+    public List<Q> select(Collection<? extends FrontsNode> classes) {
+        int[] first = null;
+        BitSet many = null;
+        for (FrontsNode c : classes) {
+            int[] indexes = byClass.get(c.asNode());
+            if (indexes == null) {
+                continue;
+            }
+            if (first == null) {
+                first = indexes;
+                continue;
+            }
+            if (many == null) {
+                many = new BitSet(rules.size());
+                set(many, first);
+            }
+            set(many, indexes);
+        }
+        if (first == null) {
+            return Collections.emptyList();
+        }
+        List<Q> res = new ArrayList<>(many == null ? first.length : many.cardinality());
+        if (many == null) {
+            for (int i : first) {
+                res.add(rules.get(i));
+            }
+            return res;
+        }
+        for (int i = many.nextSetBit(0); i >= 0; i = many.nextSetBit(i + 1)) {
+            res.add(rules.get(i));
+        }
+        return res;
+    }
+
+    private static void set(BitSet bits, int[] indexes) {
+        for (int i : indexes) {
+            bits.set(i);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.spin.infer;
+
+import com.github.owlcs.map.spin.SpinModels;
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Resource;
+import org.topbraid.spin.vocabulary.SPINMAP;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * A schedule of dependent mapping rules.
+ * A context, which target class is a source class of another context, produces input for the latter,
+ * e.g. it is so for {@link com.github.owlcs.map.spin.MapContextImpl#listChainedContexts() chained}
+ * and {@link com.github.owlcs.map.spin.MapContextImpl#listDependentContexts() dependent} contexts.
+ * These relations make up a dependency graph between the source classes of rules,
+ * which is split into waves by the topological order:
+ * a class gets the wave number that is the length of the longest path to it from a class without inputs.
+ * Classes that belong to cycles or depend on cycles are placed into the last, generic, wave,
+ * which is processed until there is nothing to do.
+ * <p>
+ * After the first inference pass (when all rules are run for the source individuals),
+ * the produced individuals are processed wave by wave, each wave runs only its own rules
+ * and only for individuals that are typed with its classes.
+ *
+ * @param <Q> subtype of {@link ExtendedQuery}
+ * @see Agenda
+ */
+@SuppressWarnings("WeakerAccess")
+public class RuleSchedule<Q extends ExtendedQuery> {
+    private final RuleIndex<Q> rules;
+    private final List<RuleIndex<Q>> waves;
+    private final Map<Node, Integer> byClass;
+    private final boolean cyclic;
+
+    /**
+     * Creates a schedule for the given rules.
+     *
+     * @param rules {@link RuleIndex}, not {@code null}
+     */
+    public RuleSchedule(RuleIndex<Q> rules) {
+        this.rules = Objects.requireNonNull(rules);
+        // the dependency graph between source classes:
+        Map<Node, Set<Node>> edges = new LinkedHashMap<>();
+        Map<Node, Integer> inputs = new HashMap<>();
+        rules.rules().forEach(q -> {
+            Node s = q.getSubject().asNode();
+            edges.computeIfAbsent(s, x -> new LinkedHashSet<>());
+            inputs.putIfAbsent(s, 0);
+        });
+        rules.rules().forEach(q -> {
+            Node t = targetClass(q);
+            if (t == null || !rules.hasRules(t)) {
+                return;
+            }
+            if (edges.get(q.getSubject().asNode()).add(t)) {
+                inputs.merge(t, 1, Integer::sum);
+            }
+        });
+        // Kahn's algorithm, a class gets its wave when all its inputs are processed:
+        Map<Node, Integer> levels = new HashMap<>();
+        Deque<Node> queue = new ArrayDeque<>();
+        inputs.forEach((c, n) -> {
+            if (n == 0) {
+                queue.add(c);
+                levels.put(c, 0);
+            }
+        });
+        Map<Node, Integer> done = new HashMap<>();
+        int max = 0;
+        while (!queue.isEmpty()) {
+            Node c = queue.poll();
+            int level = levels.get(c);
+            max = Math.max(max, level);
+            for (Node t : edges.get(c)) {
+                levels.merge(t, level + 1, Math::max);
+                if (done.merge(t, 1, Integer::sum).equals(inputs.get(t))) {
+                    queue.add(t);
+                }
+            }
+        }
+        boolean cyclic = false;
+        for (Node c : edges.keySet()) {
+            if (done.getOrDefault(c, 0).equals(inputs.get(c))) continue;
+            levels.put(c, max + 1);
+            cyclic = true;
+        }
+        int size = cyclic ? max + 2 : max + 1;
+        List<List<Q>> res = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            res.add(new ArrayList<>());
+        }
+        rules.rules().forEach(q -> res.get(levels.get(q.getSubject().asNode())).add(q));
+        List<RuleIndex<Q>> waves = new ArrayList<>(size);
+        res.forEach(x -> waves.add(new RuleIndex<>(x)));
+        this.waves = Collections.unmodifiableList(waves);
+        this.byClass = levels;
+        this.cyclic = cyclic;
+    }
+
+    /**
+     * Answers the target class of the context the given rule belongs to.
+     *
+     * @param rule {@link ExtendedQuery}
+     * @return {@link Node} or {@code null} if it cannot be found
+     */
+    protected static Node targetClass(ExtendedQuery rule) {
+        return SPINInferenceHelper.rule(rule)
+                .flatMap(SpinModels::context)
+                .map(c -> c.getPropertyResourceValue(SPINMAP.targetClass))
+                .map(Resource::asNode)
+                .orElse(null);
+    }
+
+    /**
+     * Answers the index of all rules.
+     *
+     * @return {@link RuleIndex}
+     */
+    public RuleIndex<Q> rules() {
+        return rules;
+    }
+
+    /**
+     * Answers the number of waves.
+     *
+     * @return positive int
+     */
+    public int size() {
+        return waves.size();
+    }
+
+    /**
+     * Answers the rules of the specified wave.
+     *
+     * @param index int, the wave number
+     * @return {@link RuleIndex}
+     */
+    public RuleIndex<Q> wave(int index) {
+        return waves.get(index);
+    }
+
+    /**
+     * Answers {@code true} if the specified wave is the last one and contains cycles,
+     * so its individuals can be produced by its own rules.
+     *
+     * @param index int, the wave number
+     * @return boolean
+     */
+    public boolean isCyclic(int index) {
+        return cyclic && index == waves.size() - 1;
+    }
+
+    /**
+     * Creates a fresh agenda to collect individuals for the waves of this schedule.
+     *
+     * @param factory {@link Supplier} to create {@link IntermediateStore}s
+     * @return {@link Agenda}
+     */
+    public Agenda createAgenda(Supplier<? extends IntermediateStore> factory) {
+        return new Agenda(byClass, waves.size(), factory);
+    }
+
+    /**
+     * A per-run collection of {@link IntermediateStore}s, one for each wave.
+     * A store is created on demand, at the first individual.
+     * Like a store, an agenda is not thread-safe.
+     */
+    public static class Agenda implements AutoCloseable {
+        private final Map<Node, Integer> byClass;
+        private final IntermediateStore[] stores;
+        private final Supplier<? extends IntermediateStore> factory;
+
+        protected Agenda(Map<Node, Integer> byClass, int size, Supplier<? extends IntermediateStore> factory) {
+            this.byClass = byClass;
+            this.stores = new IntermediateStore[size];
+            this.factory = Objects.requireNonNull(factory);
+        }
+
+        /**
+         * Puts the individual into the wave of the given class, if there are rules for that class.
+         *
+         * @param individual {@link Node}, URI or blank
+         * @param clazz      {@link Node}, the type of the individual
+         * @return {@code true} if the individual is needed for some wave
+         */
+        public boolean add(Node individual, Node clazz) {
+            Integer wave = byClass.get(clazz);
+            if (wave == null) {
+                return false;
+            }
+            store(wave).add(individual);
+            return true;
+        }
+
+        /**
+         * Answers {@code true} if there are rules for the individuals of the given class.
+         *
+         * @param clazz {@link Node}
+         * @return boolean
+         */
+        public boolean accepts(Node clazz) {
+            return byClass.containsKey(clazz);
+        }
+
+        /**
+         * Returns the store of the specified wave.
+         *
+         * @param wave int, the wave number
+         * @return {@link IntermediateStore}
+         */
+        public IntermediateStore store(int wave) {
+            IntermediateStore res = stores[wave];
+            if (res == null) {
+                stores[wave] = res = factory.get();
+            }
+            return res;
+        }
+
+        /**
+         * Answers {@code true} if there are no individuals to process.
+         *
+         * @return boolean
+         */
+        public boolean isEmpty() {
+            for (IntermediateStore s : stores) {
+                if (s != null && !s.isEmpty()) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+            for (int i = 0; i < stores.length; i++) {
+                if (stores[i] == null) continue;
+                stores[i].close();
+                stores[i] = null;
+            }
+        }
+    }
+}
@@ -28,6 +28,11 @@ import com.github.owlcs.ontapi.jena.vocabulary.RDF;
 import org.apache.jena.graph.Node;
 import org.apache.jena.query.QuerySolutionMap;
 import org.apache.jena.rdf.model.*;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.syntax.Element;
+import org.apache.jena.sparql.syntax.ElementData;
+import org.apache.jena.sparql.syntax.ElementGroup;
 import org.apache.jena.util.iterator.ExtendedIterator;
 import org.apache.jena.util.iterator.NullIterator;
 import org.topbraid.spin.arq.ARQFactory;
@@ -38,10 +43,12 @@ import org.topbraid.spin.util.*;
 import org.topbraid.spin.vocabulary.SPIN;
 import org.topbraid.spin.vocabulary.SPINMAP;
 
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * An ONT-MAP replacement for several Topbraid-SPIN common classes to conduct inference.
@@ -62,6 +69,7 @@ public class SPINInferenceHelper {
             "    BIND(<http://spinrdf.org/spinmap#targetResource>(?this, ?context) AS ?target)\n" +
             "  }\n";
     private static final ExtendedIterator<CommandWrapper> EMPTY_ITERATOR = NullIterator.instance();
+    private static final Var THIS_VAR = Var.alloc(SPIN.THIS_VAR_NAME);
 
     /**
      * Answers a {@code rdf:type} if the given query is simplest declaration generator,
@@ -290,17 +298,122 @@ public class SPINInferenceHelper {
      * @see org.topbraid.spin.inference.SPINInferences#runQueryOnInstance(QueryWrapper, Model, Model, Resource, boolean)
      */
     public static Model runQueryOnInstance(ARQFactory factory, QueryWrapper query, Resource instance, Model res) {
+        Model model = MapJenaException.notNull(query.getSPINQuery().getModel(), "Unattached query: " + query);
+        return runQueryOnInstance(factory, query.getQuery(), model, query.getTemplateBinding(), instance, res);
+    }
+
+    /**
+     * Runs a given Jena Query on a given individual (as a {@link Resource})
+     * using the specified template bindings and query model,
+     * and puts the inferred triples to the specified {@link Model} ({@code res}).
+     *
+     * @param factory  {@link ARQFactory}, not {@code null}
+     * @param query    {@link org.apache.jena.query.Query} to run, not {@code null}
+     * @param model    {@link Model} the query model, not {@code null}
+     * @param bindings {@code Map} of template bindings, can be {@code null}
+     * @param instance {@link Resource} individual to infer, not {@code null}
+     * @param res      {@link Model} a storage to put new triples or {@code null} to create a fresh model
+     * @return {@link Model} the same model as {@code res} or fresh one, if the {@code res} is {@code null}
+     */
+    public static Model runQueryOnInstance(ARQFactory factory,
+                                           org.apache.jena.query.Query query,
+                                           Model model,
+                                           Map<String, RDFNode> bindings,
+                                           Resource instance,
+                                           Model res) {
         if (res == null) {
             res = ModelFactory.createDefaultModel();
         }
-        Model model = MapJenaException.notNull(query.getSPINQuery().getModel(), "Unattached query: " + query);
-        Map<String, RDFNode> initialBindings = query.getTemplateBinding();
-        QuerySolutionMap bindings = new QuerySolutionMap();
-        if (initialBindings != null) {
-            initialBindings.forEach(bindings::add);
+        QuerySolutionMap initialBindings = new QuerySolutionMap();
+        if (bindings != null) {
+            bindings.forEach(initialBindings::add);
         }
-        bindings.add(SPIN.THIS_VAR_NAME, instance);
-        return factory.createQueryExecution(query.getQuery(), model, bindings).execConstruct(res);
+        initialBindings.add(SPIN.THIS_VAR_NAME, instance);
+        return factory.createQueryExecution(query, model, initialBindings).execConstruct(res);
+    }
+
+    /**
+     * Runs a given Jena Query on the collection of individuals at once
+     * and puts the inferred triples to the specified {@link Model} ({@code res}).
+     * The query is rewritten so that {@code ?this} variable is driven by a {@code VALUES} block
+     * placed in the beginning of the query pattern.
+     * The caller is responsible to ensure the query can be rewritten safely,
+     * i.e. the result must be the same as for separate calls of
+     * {@link #runQueryOnInstance(ARQFactory, org.apache.jena.query.Query, Model, Map, Resource, Model)}.
+     *
+     * @param factory   {@link ARQFactory}, not {@code null}
+     * @param query     {@link org.apache.jena.query.Query} to run, not {@code null}
+     * @param model     {@link Model} the query model, not {@code null}
+     * @param bindings  {@code Map} of template bindings, can be {@code null}
+     * @param instances Collection of individual {@link Resource}s to infer, not {@code null}
+     * @param res       {@link Model} a storage to put new triples or {@code null} to create a fresh model
+     * @return {@link Model} the same model as {@code res} or fresh one, if the {@code res} is {@code null}
+     * @see #createBatchQuery(org.apache.jena.query.Query, Collection)
+     */
+    public static Model runQueryOnInstances(ARQFactory factory,
+                                            org.apache.jena.query.Query query,
+                                            Model model,
+                                            Map<String, RDFNode> bindings,
+                                            Collection<? extends Resource> instances,
+                                            Model res) {
+        if (res == null) {
+            res = ModelFactory.createDefaultModel();
+        }
+        QuerySolutionMap initialBindings = new QuerySolutionMap();
+        if (bindings != null) {
+            bindings.forEach(initialBindings::add);
+        }
+        org.apache.jena.query.Query batch = createBatchQuery(query,
+                instances.stream().map(RDFNode::asNode).collect(Collectors.toList()));
+        return factory.createQueryExecution(batch, model, initialBindings).execConstruct(res);
+    }
+
+    /**
+     * Creates a copy of the given query with the {@code VALUES ?this {...}} block
+     * inserted as the first element of the query pattern.
+     *
+     * @param query     {@link org.apache.jena.query.Query}, not {@code null}
+     * @param instances Collection of {@link Node}s to bind {@code ?this}
+     * @return new {@link org.apache.jena.query.Query}
+     */
+    public static org.apache.jena.query.Query createBatchQuery(org.apache.jena.query.Query query,
+                                                               Collection<Node> instances) {
+        org.apache.jena.query.Query res = query.cloneQuery();
+        ElementData data = new ElementData();
+        data.add(THIS_VAR);
+        instances.forEach(i -> data.add(BindingFactory.binding(THIS_VAR, i)));
+        ElementGroup group = new ElementGroup();
+        group.addElement(data);
+        Element pattern = res.getQueryPattern();
+        if (pattern instanceof ElementGroup) {
+            ((ElementGroup) pattern).getElements().forEach(group::addElement);
+        } else if (pattern != null) {
+            group.addElement(pattern);
+        }
+        res.setQueryPattern(group);
+        return res;
+    }
+
+    /**
+     * Answers {@code true} if the given query can be run for many individuals at once
+     * using {@link #runQueryOnInstances(ARQFactory, org.apache.jena.query.Query, Model, Map, Collection, Model)}.
+     * This is true for simple construct queries, which do not refer {@code ?this} in nested blocks,
+     * and have no solution modifiers that depend on the whole result set.
+     *
+     * @param qw {@link QueryWrapper}, not {@code null}
+     * @return boolean
+     */
+    public static boolean canRunOnInstances(QueryWrapper qw) {
+        org.apache.jena.query.Query q = qw.getQuery();
+        return q != null && q.isConstructType()
+                && !qw.isThisDeep()
+                && !qw.isThisUnbound()
+                && !q.hasLimit()
+                && !q.hasOffset()
+                && !q.hasGroupBy()
+                && !q.hasHaving()
+                && !q.hasAggregators()
+                && !q.hasValues();
     }
 
 }
@@ -0,0 +1,141 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.spin.infer;
+
+import com.github.owlcs.ontapi.jena.vocabulary.RDF;
+import org.apache.jena.graph.Factory;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.shared.DeleteDeniedException;
+import org.apache.jena.util.iterator.ExtendedIterator;
+
+import java.util.*;
+
+/**
+ * A write-through {@link Graph} that is used as an inference target
+ * to push the inferred triples into a {@link StreamRDF} sink as they are produced.
+ * <p>
+ * The graph itself keeps (and therefore allows to find) only those triples,
+ * which are required by dependent mapping contexts,
+ * i.e. triples whose subject is an individual of some class that is the source of some mapping rule.
+ * Such a subject is recognized either by its type declaration or explicitly, through {@link #retain(Node)}:
+ * the inference engine marks all subjects of a rule, whose context target class has rules,
+ * before writing the rule result, so it does not matter which rule produces the type declaration.
+ * All other triples are only passed to the sink, so the whole inference result never has to fit in memory.
+ * <p>
+ * Duplicates are suppressed for retained triples and within a bounded window of the last written triples.
+ * The sink may still receive a repeated triple, if it is produced again after more than
+ * {@link #DEDUPLICATION_WINDOW_SIZE} other triples, so a sink that requires a set semantic must deduplicate itself.
+ */
+@SuppressWarnings("WeakerAccess")
+public class StreamTargetGraph extends GraphBase {
+    protected static final int DEDUPLICATION_WINDOW_SIZE = 10_000;
+    private static final Node RDF_TYPE = RDF.type.asNode();
+
+    protected final StreamRDF sink;
+    protected final Set<Node> classes;
+    protected final Graph retained;
+    protected final Set<Node> subjects;
+    protected final Set<Triple> recent;
+
+    /**
+     * Creates a target graph.
+     *
+     * @param sink    {@link StreamRDF} to write all inferred triples, not {@code null}
+     * @param classes Set of class {@link Node}s, which individuals must be available for dependent rules
+     */
+    public StreamTargetGraph(StreamRDF sink, Set<Node> classes) {
+        this(sink, classes, DEDUPLICATION_WINDOW_SIZE);
+    }
+
+    /**
+     * Creates a target graph with the given deduplication window.
+     *
+     * @param sink    {@link StreamRDF} to write all inferred triples, not {@code null}
+     * @param classes Set of class {@link Node}s, which individuals must be available for dependent rules
+     * @param window  int, the number of the last not retained triples to check for duplicates, positive
+     */
+    public StreamTargetGraph(StreamRDF sink, Set<Node> classes, int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Wrong window size: " + window);
+        }
+        this.sink = Objects.requireNonNull(sink);
+        this.classes = Objects.requireNonNull(classes);
+        this.retained = Factory.createGraphMem();
+        this.subjects = new HashSet<>();
+        this.recent = Collections.newSetFromMap(new LinkedHashMap<Triple, Boolean>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Triple, Boolean> eldest) {
+                return size() > window;
+            }
+        });
+    }
+
+    /**
+     * Marks the given subject as required by dependent rules,
+     * all the subsequent triples with this subject will be kept by the graph.
+     *
+     * @param subject {@link Node}, not {@code null}
+     */
+    public void retain(Node subject) {
+        subjects.add(Objects.requireNonNull(subject));
+    }
+
+    @Override
+    public void performAdd(Triple t) {
+        if (retained.contains(t)) {
+            return;
+        }
+        if (RDF_TYPE.equals(t.getPredicate()) && classes.contains(t.getObject())) {
+            subjects.add(t.getSubject());
+        }
+        if (subjects.contains(t.getSubject())) {
+            retained.add(t);
+        } else if (!recent.add(t)) {
+            return;
+        }
+        sink.triple(t);
+    }
+
+    @Override
+    public void performDelete(Triple t) {
+        throw new DeleteDeniedException("Stream graph: can't delete triple " + t);
+    }
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(Triple m) {
+        return retained.find(m);
+    }
+
+    @Override
+    protected int graphBaseSize() {
+        return retained.size();
+    }
+
+    @Override
+    public void close() {
+        retained.close();
+        subjects.clear();
+        recent.clear();
+        super.close();
+    }
+}
@@ -27,6 +27,7 @@ import org.apache.jena.sys.JenaSubsystemLifecycle;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Supplier;
 
 /**
@@ -79,6 +80,18 @@ public interface Extension extends JenaSubsystemLifecycle {
         return Collections.emptyMap();
     }
 
+    /**
+     * Returns URIs of the functions, provided by this module, that are deterministic,
+     * i.e. their results depend on the arguments only, and therefore can be memoized while inference.
+     * This is an alternative to the {@link com.github.owlcs.map.spin.vocabulary.AVC#deterministic avc:deterministic}
+     * annotation in a library graph.
+     *
+     * @return {@code Set} of function URIs
+     */
+    default Set<String> deterministic() {
+        return Collections.emptySet();
+    }
+
     /**
      * Starts the module.
      */
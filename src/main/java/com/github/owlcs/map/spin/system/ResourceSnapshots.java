@@ -0,0 +1,126 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.owlcs.map.spin.system;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.mem.GraphMem;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.CRC32;
+
+/**
+ * A helper to work with binary snapshots of the system library graphs.
+ * A snapshot is a small header followed by the graph in the {@link Lang#RDFTHRIFT RDF Thrift} format,
+ * which is loaded much faster than Turtle.
+ * The header contains the length and the checksum of the Turtle source the snapshot was made from,
+ * so a snapshot that does not match its source is considered stale and is ignored.
+ * <p>
+ * The snapshots are produced by the build with the {@code library-snapshots} profile (see {@link #main(String[])}),
+ * if they are absent in the classpath (e.g. a plain build or running from an IDE),
+ * the Turtle files are parsed as before.
+ *
+ * @see Resources
+ */
+@SuppressWarnings("WeakerAccess")
+public class ResourceSnapshots {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceSnapshots.class);
+    private static final int MAGIC = 0x4F4D4150; // "OMAP"
+    private static final int VERSION = 1;
+
+    /**
+     * Writes snapshots for all {@link Resources system resources} into the specified classes directory.
+     *
+     * @param args array with the only element - the directory where the {@code etc} folder is located,
+     *             usually {@code target/classes}
+     * @throws IOException if any i/o error occurs
+     */
+    public static void main(String... args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: ResourceSnapshots <classes-dir>");
+        }
+        Path dir = Paths.get(args[0]);
+        for (Resources r : Resources.values()) {
+            Path src = dir.resolve(r.path.replaceFirst("^/", ""));
+            Path dst = dir.resolve(r.snapshotPath().replaceFirst("^/", ""));
+            byte[] turtle = Files.readAllBytes(src);
+            Graph g = new GraphMem();
+            RDFDataMgr.read(g, new ByteArrayInputStream(turtle), null, Lang.TURTLE);
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(dst))) {
+                write(g, turtle, out);
+            }
+            LOGGER.info("Snapshot {} is written, size: {} -> {}", dst, turtle.length, Files.size(dst));
+        }
+    }
+
+    /**
+     * Writes a snapshot of the graph into the given output stream.
+     *
+     * @param graph  {@link Graph}, the content of the {@code turtle}
+     * @param turtle byte array, the Turtle source of the graph
+     * @param out    {@link OutputStream}
+     * @throws IOException if any i/o error occurs
+     */
+    public static void write(Graph graph, byte[] turtle, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeLong(turtle.length);
+        data.writeLong(checksum(turtle));
+        data.flush();
+        RDFDataMgr.write(out, graph, Lang.RDFTHRIFT);
+        out.flush();
+    }
+
+    /**
+     * Reads a snapshot into the graph, if it matches the given Turtle source.
+     *
+     * @param in     {@link InputStream} with the snapshot
+     * @param turtle byte array, the Turtle source
+     * @param graph  {@link Graph} to fill, is not changed if the snapshot is stale
+     * @return {@code true} if the snapshot has been read, {@code false} if it is stale or broken
+     * @throws IOException if any i/o error occurs
+     */
+    public static boolean read(InputStream in, byte[] turtle, Graph graph) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        try {
+            if (data.readInt() != MAGIC || data.readInt() != VERSION
+                    || data.readLong() != turtle.length || data.readLong() != checksum(turtle)) {
+                return false;
+            }
+        } catch (EOFException e) {
+            return false;
+        }
+        RDFDataMgr.read(graph, in, Lang.RDFTHRIFT);
+        return true;
+    }
+
+    private static long checksum(byte[] bytes) {
+        CRC32 res = new CRC32();
+        res.update(bytes, 0, bytes.length);
+        return res.getValue();
+    }
+}
@@ -19,17 +19,23 @@
 package com.github.owlcs.map.spin.system;
 
 import com.github.owlcs.map.utils.ReadOnlyGraph;
+import org.apache.jena.atlas.io.IO;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.mem.GraphMem;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RiotException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.UncheckedIOException;
-import java.util.*;
+import java.io.*;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 /**
@@ -80,34 +86,117 @@ public enum Resources {
         return uri;
     }
 
+    /**
+     * Gets the classpath location of the binary snapshot of this library.
+     *
+     * @return String, not {@code null}
+     * @see ResourceSnapshots
+     */
+    String snapshotPath() {
+        return path.replaceFirst("\\.ttl$", ".trdf");
+    }
+
     /**
      * Gets a system in-memory graph for this library.
      *
      * @return {@link Graph}, not {@code null}
      */
     public Graph getGraph() {
-        return Loader.GRAPHS.get(getURI());
+        return Loader.get(this);
     }
 
     /**
      * A helper to load system resources.
+     * Each resource is loaded only once, as a separate task,
+     * so that all of them can be loaded in parallel (see {@link SystemLibraries#start()}).
      */
     static class Loader {
         private static final Logger LOGGER = LoggerFactory.getLogger(Loader.class);
-        final static Map<String, Graph> GRAPHS = load();
-
-        private static Map<String, Graph> load() throws UncheckedIOException {
-            Map<String, Graph> res = new HashMap<>();
-            for (Resources f : values()) {
-                Graph g = new GraphMem();
-                try (InputStream in = Loader.class.getResourceAsStream(f.path)) {
-                    RDFDataMgr.read(g, in, null, Lang.TURTLE);
-                } catch (IOException e) {
-                    throw new UncheckedIOException("Can't load " + f.path, e);
+        private static final Map<Resources, CompletableFuture<Graph>> GRAPHS = new ConcurrentHashMap<>();
+
+        /**
+         * Starts loading of the given resource, if it is not started yet.
+         * Only the thread that has put the future into the map loads the graph,
+         * the parsing is never performed inside the map operation.
+         *
+         * @param f        {@link Resources}
+         * @param executor {@link Executor} to run the task
+         * @return {@link CompletableFuture} with the {@link ReadOnlyGraph unmodifiable graph}
+         */
+        static CompletableFuture<Graph> submit(Resources f, Executor executor) {
+            CompletableFuture<Graph> res = new CompletableFuture<>();
+            CompletableFuture<Graph> prev = GRAPHS.putIfAbsent(f, res);
+            if (prev != null) {
+                return prev;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        res.complete(loadGraph(f));
+                    } catch (Throwable t) {
+                        res.completeExceptionally(t);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                res.completeExceptionally(e);
+            }
+            return res;
+        }
+
+        /**
+         * Gets the graph for the given resource, waiting for it to be loaded if necessary.
+         *
+         * @param f {@link Resources}
+         * @return {@link Graph}
+         * @throws UncheckedIOException if the resource cannot be loaded
+         */
+        static Graph get(Resources f) throws UncheckedIOException {
+            CompletableFuture<Graph> res = GRAPHS.get(f);
+            if (res == null) { // no SystemLibraries#start() yet
+                res = submit(f, Runnable::run);
+            }
+            return SystemLibraries.join(f.uri, res);
+        }
+
+        private static Graph loadGraph(Resources f) throws UncheckedIOException {
+            Graph res;
+            try {
+                res = load(f);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't load " + f.path, e);
+            }
+            LOGGER.debug("Graph {} is loaded, size: {}", f.uri, res.size());
+            return ReadOnlyGraph.wrap(res);
+        }
+
+        /**
+         * Loads the graph from the binary snapshot, if it is present and up to date, otherwise parses the Turtle.
+         *
+         * @param f {@link Resources}
+         * @return {@link Graph}
+         * @throws IOException if any i/o error occurs
+         */
+        private static Graph load(Resources f) throws IOException {
+            byte[] turtle;
+            try (InputStream in = Loader.class.getResourceAsStream(f.path)) {
+                if (in == null) {
+                    throw new FileNotFoundException(f.path);
+                }
+                turtle = IO.readWholeFile(in);
+            }
+            try (InputStream in = Loader.class.getResourceAsStream(f.snapshotPath())) {
+                if (in != null) {
+                    Graph res = new GraphMem();
+                    if (ResourceSnapshots.read(new BufferedInputStream(in), turtle, res)) {
+                        return res;
+                    }
+                    LOGGER.warn("The snapshot {} is stale, use {}", f.snapshotPath(), f.path);
                 }
-                LOGGER.debug("Graph {} is loaded, size: {}", f.uri, g.size());
-                res.put(f.uri, ReadOnlyGraph.wrap(g));
+            } catch (RiotException e) {
+                LOGGER.warn("Can't read the snapshot {}: '{}', use {}", f.snapshotPath(), e.getMessage(), f.path);
             }
-            return Collections.unmodifiableMap(res);
+            Graph res = new GraphMem();
+            RDFDataMgr.read(res, new ByteArrayInputStream(turtle), null, Lang.TURTLE);
+            return res;
         }
     }}
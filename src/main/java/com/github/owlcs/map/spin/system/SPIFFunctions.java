@@ -30,7 +30,9 @@ import org.topbraid.spin.arq.functions.WalkObjectsFunction;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A helper to register builtin {@code SPIF} functions,
@@ -112,6 +114,33 @@ class SPIFFunctions {
                 }
             });
 
+    /**
+     * URIs of the functions from the {@link #FUNCTIONS} map, whose results depend on the arguments only,
+     * and therefore can be memoized while inference.
+     * The template functions ({@code spif:buildURI}, {@code spif:buildString}) may refer to the binding variables,
+     * they are taken into account by the functions themselves.
+     * {@code spif:buildURI} also uses the prefixes of the active graph,
+     * which do not change while inference, and the results are kept no longer than an inference run.
+     */
+    static final Set<String> DETERMINISTIC =
+            Collections.unmodifiableSet(new HashSet<String>() {
+                {
+                    // date:
+                    add("dateFormat");
+                    add("parseDate");
+                    add("timeMillis");
+                    // string:
+                    add("buildString");
+                    add("buildURI");
+                    add("decimalFormat");
+                }
+
+                @Override
+                public boolean add(String name) {
+                    return super.add(SPIF.NS + name) | super.add(SPIF.SMF_NS + name);
+                }
+            });
+
     /**
      * Property Functions are supplied just in case, there are no usage of them in the API.
      */
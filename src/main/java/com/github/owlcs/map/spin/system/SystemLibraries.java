@@ -29,10 +29,9 @@ import org.apache.jena.sys.JenaSystem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
@@ -48,10 +47,13 @@ import java.util.stream.Stream;
  */
 public class SystemLibraries implements JenaSubsystemLifecycle {
     private static final Logger LOGGER = LoggerFactory.getLogger(SystemLibraries.class);
+    // the maximum number of threads to load graphs:
+    private static final int LOAD_THREADS = 4;
 
     private static volatile Map<String, Class<? extends Function>> functions;
     private static volatile Map<String, Class<? extends PropertyFunction>> properties;
-    private static volatile Map<String, Supplier<Graph>> loaders;
+    private static volatile Set<String> deterministic;
+    private static volatile Map<String, CompletableFuture<Graph>> loaders;
     private static volatile Map<String, Graph> graphs;
 
     /**
@@ -79,6 +81,23 @@ public class SystemLibraries implements JenaSubsystemLifecycle {
         return functions;
     }
 
+    /**
+     * Returns URIs of all the java functions, that are known as deterministic:
+     * the builtin SPIF ones and those declared by the {@link Extension}s.
+     * Singleton.
+     *
+     * @return Unmodifiable Set of function URIs
+     * @see Extension#deterministic()
+     */
+    public static Set<String> deterministic() {
+        if (deterministic != null) return deterministic;
+        init();
+        if (deterministic == null) {
+            throw new IllegalStateException("Initialization problem: can't get deterministic functions.");
+        }
+        return deterministic;
+    }
+
     /**
      * Returns all ARQ property functions to be registered in a manager.
      * A {@link PropertyFunction} has no direct usage in the API, but it can be used to construct real functions.
@@ -98,6 +117,7 @@ public class SystemLibraries implements JenaSubsystemLifecycle {
     /**
      * Returns all library models from the system resources.
      * Singleton (by class instance).
+     * The graphs are loaded in background since the {@link #start() start}, this method waits for all of them.
      *
      * @return Unmodifiable Map with {@link ReadOnlyGraph unmodifiable graph}s as values and ontology IRIs as keys
      */
@@ -112,12 +132,46 @@ public class SystemLibraries implements JenaSubsystemLifecycle {
         synchronized (SystemLibraries.class) {
             if (graphs != null) return graphs;
             Map<String, Graph> res = new HashMap<>();
-            LOGGER.debug("Load all system graphs (libraries).");
-            loaders.forEach((k, v) -> res.put(k, v.get()));
+            LOGGER.debug("Wait for all system graphs (libraries).");
+            loaders.forEach((k, v) -> res.put(k, join(k, v)));
             return graphs = Collections.unmodifiableMap(res);
         }
     }
 
+    /**
+     * Waits for the graph loading task to complete.
+     *
+     * @param uri    String, the graph name, to use in error message
+     * @param loader {@link CompletableFuture} to wait
+     * @return {@link Graph}
+     * @throws RuntimeException the same exception that has been thrown by the loader
+     */
+    static Graph join(String uri, CompletableFuture<Graph> loader) {
+        try {
+            return loader.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Can't load graph " + uri, e.getCause());
+        }
+    }
+
+    /**
+     * Creates a small executor to load graphs, its threads are daemons, so they do not prevent JVM from exiting.
+     *
+     * @return {@link ExecutorService}
+     */
+    private static ExecutorService createLoadExecutor() {
+        int threads = Math.max(1, Math.min(LOAD_THREADS, Runtime.getRuntime().availableProcessors()));
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread res = new Thread(r, "ont-map-loader-" + count.incrementAndGet());
+            res.setDaemon(true);
+            return res;
+        });
+    }
+
     /**
      * Selects all graphs which belong or not to the spin-family, depending on input parameter {@code spin}.
      *
@@ -149,10 +203,11 @@ public class SystemLibraries implements JenaSubsystemLifecycle {
         }
 
         // The main initialization.
-        // graphs:
-        Map<String, Supplier<Graph>> graphMap = new HashMap<>();
+        // graphs are loaded in background, in parallel with each other and with the assembling of function maps:
+        ExecutorService executor = createLoadExecutor();
+        Map<String, CompletableFuture<Graph>> graphMap = new HashMap<>();
         Arrays.stream(Resources.values())
-                .forEach(v -> graphMap.put(v.getURI(), () -> Resources.Loader.GRAPHS.get(v.getURI())));
+                .forEach(v -> graphMap.put(v.getURI(), Resources.Loader.submit(v, executor)));
 
         // functions:
         Map<String, Class<? extends Function>> functionMap = new HashMap<>();
@@ -163,6 +218,7 @@ public class SystemLibraries implements JenaSubsystemLifecycle {
         Map<String, Class<? extends PropertyFunction>> propertyMap = new HashMap<>();
         propertyMap.putAll(StandardFunctions.PROPERTY_FUNCTIONS);
         propertyMap.putAll(SPIFFunctions.PROPERTY_FUNCTIONS);
+        Set<String> deterministicSet = new HashSet<>(SPIFFunctions.DETERMINISTIC);
         // process all extensions:
         JenaSystem.get().snapshot().stream()
                 .filter(Extension.class::isInstance).map(Extension.class::cast)
@@ -172,16 +228,23 @@ public class SystemLibraries implements JenaSubsystemLifecycle {
                     Map<String, Class<? extends Function>> ef = ext.functions();
                     Map<String, Class<? extends PropertyFunction>> epf = ext.properties();
                     if (eg != null) {
-                        eg.forEach((k, v) -> graphMap.put(k, () -> ReadOnlyGraph.wrap(v.get())));
+                        eg.forEach((k, v) -> graphMap.put(k,
+                                CompletableFuture.supplyAsync(() -> ReadOnlyGraph.wrap(v.get()), executor)));
                     }
                     if (ef != null) functionMap.putAll(ef);
                     if (epf != null) propertyMap.putAll(epf);
+                    Set<String> ed = ext.deterministic();
+                    if (ed != null) deterministicSet.addAll(ed);
                 });
         LOGGER.debug("[INIT]Graphs: {}, Functions: {}, PropertyFunctions: {}",
                 graphMap.size(), functionMap.size(), propertyMap.size());
         functions = Collections.unmodifiableMap(functionMap);
         properties = Collections.unmodifiableMap(propertyMap);
+        deterministic = Collections.unmodifiableSet(deterministicSet);
         loaders = Collections.unmodifiableMap(graphMap);
+        // no more tasks, release the threads once everything is loaded:
+        CompletableFuture.allOf(graphMap.values().toArray(new CompletableFuture[0]))
+                .whenComplete((x, e) -> executor.shutdown());
     }
 
     @Override
@@ -192,6 +255,7 @@ public class SystemLibraries implements JenaSubsystemLifecycle {
         loaders = null;
         functions = null;
         properties = null;
+        deterministic = null;
     }
 
 }
@@ -146,6 +146,7 @@ public class AVC {
      * A magic map-property function to get a current individual while inference.
      * This is an analogue of {@code ?this} variable,
      * but which is intended to work for any link from a function-chain and in all circumstances.
+     * The individual is passed as a runtime binding of {@code ?this}, the mapping itself is not modified while inference.
      *
      * @see InferenceEngineImpl.ProcessedQuery#run(Resource) explanation.
      * @see #MagicFunctions
@@ -188,6 +189,14 @@ public class AVC {
      */
     public static final Property optimize = property("optimize");
 
+    /**
+     * A property-indicator to tell that a function is deterministic:
+     * its result depends only on the values of its arguments (and not on the graph or the current individual),
+     * so the results of its calls can be reused while inference.
+     * The right part of a statement with this predicate must be a boolean literal.
+     */
+    public static final Property deterministic = property("deterministic");
+
     /**
      * Expression predicate to use in conditional templates as a filter.
      */
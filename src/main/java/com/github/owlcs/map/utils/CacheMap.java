@@ -0,0 +1,126 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.owlcs.map.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * A size-bounded {@link Map} view over a caffeine {@link Cache}, that records hit and miss statistics.
+ * It is intended to replace unbounded maps used as caches by third-party code,
+ * which accesses them through the {@code get}/{@code put} methods only.
+ * Unlike {@link Cache#asMap()} the {@link #get(Object)} and {@link #computeIfAbsent(Object, Function)} methods
+ * are recorded in the {@link #stats() statistics}.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+@SuppressWarnings("WeakerAccess")
+public class CacheMap<K, V> extends AbstractMap<K, V> {
+    private final Cache<K, V> cache;
+    private final long maxSize;
+
+    protected CacheMap(Cache<K, V> cache, long maxSize) {
+        this.cache = Objects.requireNonNull(cache);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Creates a map that keeps at most the specified number of entries, evicting the least recently used ones.
+     *
+     * @param maxSize long, not negative, {@code 0} means the map retains nothing
+     * @param <K>     key type
+     * @param <V>     value type
+     * @return {@link CacheMap}
+     */
+    public static <K, V> CacheMap<K, V> create(long maxSize) {
+        return new CacheMap<>(Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                // evict in the calling thread, the caches are small and the common pool may be busy:
+                .executor(Runnable::run)
+                .recordStats()
+                .build(), maxSize);
+    }
+
+    /**
+     * Answers the maximum number of entries in this cache.
+     *
+     * @return long
+     */
+    public long maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the statistics of this cache.
+     *
+     * @return {@link CacheStats}
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    @Override
+    public V get(Object key) {
+        return cache.getIfPresent(key);
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        return cache.get(key, mappingFunction);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return cache.asMap().put(key, value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return cache.asMap().remove(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return cache.asMap().containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return cache.asMap().size();
+    }
+
+    @Override
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return cache.asMap().entrySet();
+    }
+}
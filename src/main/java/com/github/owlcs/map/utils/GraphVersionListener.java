@@ -0,0 +1,180 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.utils;
+
+import com.github.owlcs.ontapi.jena.UnionGraph;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphListener;
+import org.apache.jena.graph.Triple;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An implementation of {@link GraphListener} that counts changes in a graph.
+ * It is used to check whether some state, that is derived from the graph, is still up to date:
+ * the state remembers the {@link #version() version} it was built for.
+ * Note that a listener sees only the changes made through the graph it is attached to,
+ * so for a {@link UnionGraph} use {@link #snapshot(Graph)}, which covers the whole hierarchy.
+ */
+@SuppressWarnings("WeakerAccess")
+public class GraphVersionListener extends BaseGraphListener {
+    private static final Map<Graph, GraphVersionListener> PLAIN_GRAPHS = new WeakHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Answers the current version, that is the number of changes since this listener has been attached.
+     *
+     * @return long
+     */
+    public long version() {
+        return version.get();
+    }
+
+    @Override
+    protected void addEvent(Triple triple) {
+        version.incrementAndGet();
+    }
+
+    @Override
+    protected void deleteEvent(Triple triple) {
+        version.incrementAndGet();
+    }
+
+    @Override
+    public void notifyAddGraph(Graph g, Graph other) {
+        version.incrementAndGet();
+    }
+
+    @Override
+    public void notifyDeleteGraph(Graph g, Graph other) {
+        version.incrementAndGet();
+    }
+
+    /**
+     * Finds the version listener attached to the specified graph or attaches a new one.
+     *
+     * @param graph {@link UnionGraph} a graph to attache listener
+     * @return {@link GraphVersionListener}, not {@code null}
+     */
+    public static GraphVersionListener get(UnionGraph graph) {
+        return attach(graph);
+    }
+
+    /**
+     * Takes a snapshot of versions of the specified graph and all its sub-graphs, including the base ones.
+     *
+     * @param graph {@link Graph}, not {@code null}
+     * @return {@link Snapshot}
+     */
+    public static Snapshot snapshot(Graph graph) {
+        List<Graph> graphs = hierarchy(graph);
+        GraphVersionListener[] listeners = new GraphVersionListener[graphs.size()];
+        long[] versions = new long[listeners.length];
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i] = listener(graphs.get(i));
+            versions[i] = listeners[i].version();
+        }
+        return new Snapshot(graph, graphs, listeners, versions);
+    }
+
+    private static List<Graph> hierarchy(Graph graph) {
+        Set<Graph> res = new LinkedHashSet<>();
+        collect(graph, res);
+        return new ArrayList<>(res);
+    }
+
+    private static void collect(Graph graph, Set<Graph> res) {
+        if (!res.add(graph) || !(graph instanceof UnionGraph)) {
+            return;
+        }
+        UnionGraph u = (UnionGraph) graph;
+        collect(u.getBaseGraph(), res);
+        u.getUnderlying().graphs().forEach(g -> collect(g, res));
+    }
+
+    private static GraphVersionListener listener(Graph graph) {
+        if (graph instanceof UnionGraph) {
+            return attach((UnionGraph) graph);
+        }
+        synchronized (PLAIN_GRAPHS) {
+            return PLAIN_GRAPHS.computeIfAbsent(graph, g -> {
+                GraphVersionListener res = new GraphVersionListener();
+                g.getEventManager().register(res);
+                return res;
+            });
+        }
+    }
+
+    private static GraphVersionListener attach(UnionGraph graph) {
+        UnionGraph.OntEventManager events = graph.getEventManager();
+        synchronized (events) {
+            return events.listeners()
+                    .filter(l -> GraphVersionListener.class.equals(l.getClass()))
+                    .map(GraphVersionListener.class::cast)
+                    .findFirst()
+                    .orElseGet(() -> {
+                        GraphVersionListener res = new GraphVersionListener();
+                        events.register(res);
+                        return res;
+                    });
+        }
+    }
+
+    /**
+     * A version vector of a graph hierarchy: the versions of the root graph and all its sub-graphs.
+     * A change in any of the graphs, as well as a change of the hierarchy structure, makes the snapshot stale.
+     */
+    public static class Snapshot {
+        private final Graph root;
+        private final List<Graph> graphs;
+        private final GraphVersionListener[] listeners;
+        private final long[] versions;
+
+        protected Snapshot(Graph root, List<Graph> graphs, GraphVersionListener[] listeners, long[] versions) {
+            this.root = root;
+            this.graphs = graphs;
+            this.listeners = listeners;
+            this.versions = versions;
+        }
+
+        /**
+         * Answers {@code true} if no graph in the hierarchy has been changed since this snapshot was taken.
+         *
+         * @return boolean
+         */
+        public boolean isCurrent() {
+            for (int i = 0; i < listeners.length; i++) {
+                if (listeners[i].version() != versions[i]) {
+                    return false;
+                }
+            }
+            List<Graph> current = hierarchy(root);
+            if (current.size() != graphs.size()) {
+                return false;
+            }
+            for (int i = 0; i < graphs.size(); i++) {
+                if (current.get(i) != graphs.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.owlcs.map.tests;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.owlcs.map.Managers;
+import com.github.owlcs.map.MapManager;
+import com.github.owlcs.map.MapModel;
+import com.github.owlcs.map.spin.MapARQFactory;
+import com.github.owlcs.map.spin.MapConfigImpl;
+import com.github.owlcs.map.spin.MapManagerImpl;
+import com.github.owlcs.map.spin.SpinModelConfig;
+import com.github.owlcs.map.spin.functions.spif.buildURI;
+import com.github.owlcs.map.spin.infer.InferenceEngineImpl;
+import com.github.owlcs.map.spin.vocabulary.AVC;
+import com.github.owlcs.map.spin.vocabulary.SPIF;
+import com.github.owlcs.map.spin.vocabulary.SPINMAPL;
+import com.github.owlcs.map.tests.maps.SelfMapTest;
+import com.github.owlcs.map.utils.CacheMap;
+import com.github.owlcs.map.utils.TestUtils;
+import com.github.owlcs.ontapi.jena.model.OntClass;
+import com.github.owlcs.ontapi.jena.model.OntModel;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.expr.ExprVar;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.function.FunctionEnvBase;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.spin.vocabulary.SPIN;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * To test the bounded caches of the ARQ factory and the memoization of deterministic functions.
+ */
+public class ARQCachesTest {
+
+    @Test
+    public void testCacheMapEviction() {
+        CacheMap<String, String> map = CacheMap.create(10);
+        for (int i = 0; i < 1000; i++) {
+            map.put("k" + i, "v" + i);
+        }
+        map.get("k999");
+        map.get("k0");
+        Assert.assertTrue(map.size() <= 10);
+        CacheStats stats = map.stats();
+        Assert.assertEquals(2, stats.requestCount());
+        map.clear();
+        Assert.assertEquals(0, map.size());
+    }
+
+    @Test
+    public void testInferenceWithSmallCaches() {
+        MapConfigImpl conf = MapConfigImpl.INSTANCE.setQueryCacheSize(1).setFunctionCacheSize(2)
+                .setUUIDCacheSize(2);
+        MapManager manager = TestUtils.withConfig(conf);
+        OntModel s = SelfMapTest.createSourceModel(12);
+        OntModel t = SelfMapTest.createTargetModel();
+        OntClass src = s.classes().findFirst().orElseThrow(AssertionError::new);
+        OntClass dst = t.classes().findFirst().orElseThrow(AssertionError::new);
+        MapModel m = manager.createMapModel();
+        m.createContext(src, dst).addClassBridge(manager.getFunction(AVC.UUID).create().build());
+
+        InferenceEngineImpl engine = (InferenceEngineImpl) manager.getInferenceEngine(m);
+        for (int i = 0; i < 2; i++) {
+            OntModel res = TestUtils.forSchema(t);
+            engine.run(s.getGraph(), res.getGraph());
+            Assert.assertEquals(12, res.individuals().count());
+        }
+        Map<String, CacheStats> stats = engine.getCacheStats();
+        Assert.assertEquals(6, stats.size());
+        Assert.assertTrue(stats.get("nodeToValue").requestCount() > 0);
+        Assert.assertTrue(stats.get("expressions").requestCount() > 0);
+        Assert.assertTrue(stats.get("string2Query").requestCount() > 0);
+    }
+
+    @Test
+    public void testCompiledExpressions() {
+        MapManager manager = Managers.createMapManager();
+        OntModel s = SelfMapTest.createSourceModel(5);
+        OntModel t = SelfMapTest.createTargetModel();
+        OntClass src = s.classes().findFirst().orElseThrow(AssertionError::new);
+        OntClass dst = t.classes().findFirst().orElseThrow(AssertionError::new);
+        MapModel m = manager.createMapModel();
+        m.createContext(src, dst).addClassBridge(manager.getFunction(AVC.UUID).create().build());
+
+        InferenceEngineImpl engine = (InferenceEngineImpl) manager.getInferenceEngine(m);
+        OntModel res = TestUtils.forSchema(t);
+        engine.run(s.getGraph(), res.getGraph());
+        Assert.assertEquals(5, res.individuals().count());
+        // the target expressions are parsed once and then taken from the cache:
+        CacheStats stats = engine.getCacheStats().get("expressions");
+        Assert.assertTrue(stats.hitCount() > 0);
+        Assert.assertTrue(stats.missCount() < stats.hitCount());
+    }
+
+    @Test
+    public void testDeterministicFunctionResults() {
+        MapARQFactory factory = ((MapManagerImpl) Managers.createMapManager()).getFactory();
+        Assert.assertTrue(factory.isDeterministic(SPINMAPL.concatWithSeparator.getURI()));
+        Assert.assertTrue(factory.isDeterministic(SPINMAPL.changeNamespace.getURI()));
+        Assert.assertFalse(factory.isDeterministic(AVC.UUID.getURI()));
+
+        factory.markDeterministic("urn:f");
+        AtomicInteger calls = new AtomicInteger();
+        MapARQFactory.FunctionResults.Call call = (b, a, u, e) -> {
+            calls.incrementAndGet();
+            return a.get(0).eval(b, e);
+        };
+        ExprList args = new ExprList(NodeValue.makeString("a"));
+        // no memoization outside inference:
+        FunctionEnvBase env = new FunctionEnvBase(factory.getContext());
+        MapARQFactory.FunctionResults.exec(call, BindingFactory.binding(), args, "urn:f", env);
+        Assert.assertEquals(1, calls.get());
+
+        MapARQFactory child = factory.createChild();
+        env = new FunctionEnvBase(child.getContext());
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(NodeValue.makeString("a"),
+                    MapARQFactory.FunctionResults.exec(call, BindingFactory.binding(), args, "urn:f", env));
+            MapARQFactory.FunctionResults.exec(call, BindingFactory.binding(), args, "urn:g", env);
+        }
+        Assert.assertEquals(7, calls.get());
+        Assert.assertEquals(4, child.getCacheStats().get("functionResults").hitCount());
+    }
+
+    @Test
+    public void testDeterministicFunctionDependsOnThis() {
+        MapARQFactory factory = ((MapManagerImpl) Managers.createMapManager()).getFactory();
+        Assert.assertTrue(factory.isDeterministic(SPIF.buildURI.getURI()));
+        Assert.assertTrue(factory.isDeterministic(SPIF.parseDate.getURI()));
+        Assert.assertFalse(factory.isDeterministic(SPIF.buildUniqueURI.getURI()));
+
+        factory.markDeterministic("urn:f");
+        MapARQFactory child = factory.createChild();
+        FunctionEnvBase env = new FunctionEnvBase(child.getContext());
+        MapARQFactory.FunctionResults.Call call = (b, a, u, e) ->
+                NodeValue.makeNode(b.get(Var.alloc(SPIN.THIS_VAR_NAME)));
+        MapARQFactory.FunctionResults.BindingDependent vars = a -> Collections.singleton(SPIN.THIS_VAR_NAME);
+        ExprList args = new ExprList(NodeValue.makeString("a"));
+        for (String i : Arrays.asList("urn:i1", "urn:i2", "urn:i1")) {
+            Node x = NodeFactory.createURI(i);
+            Binding b = BindingFactory.binding(Var.alloc(SPIN.THIS_VAR_NAME), x);
+            Assert.assertEquals(x, MapARQFactory.FunctionResults.exec(call, b, args, "urn:f", env, vars).asNode());
+        }
+        Assert.assertEquals(1, child.getCacheStats().get("functionResults").hitCount());
+
+        // the template variables, that are not arguments, are taken from the binding:
+        Assert.assertEquals(Collections.singletonList(SPIN.THIS_VAR_NAME),
+                new buildURI().bindingVariables(new ExprList(NodeValue.makeString("urn:x-{?this}-{?1}"))));
+        Assert.assertNull(new buildURI().bindingVariables(new ExprList(new ExprVar("t"))));
+    }
+
+    @Test
+    public void testDeterministicFunctionDependsOnThisThroughNestedCall() {
+        String body = "[ a <http://spinrdf.org/sp#Select> ; <http://spinrdf.org/sp#text> \"SELECT ?r WHERE { %s }\" ]";
+        String ttl = String.join("\n",
+                "<urn:inner> a <http://spinrdf.org/spin#Function> ; <http://spinrdf.org/spin#body> "
+                        + String.format(body, "BIND(?this AS ?r)") + " .",
+                "<urn:outer> a <http://spinrdf.org/spin#Function> ; <http://spinrdf.org/spin#body> "
+                        + String.format(body, "BIND(<urn:inner>() AS ?r)") + " .",
+                "<urn:current> a <http://spinrdf.org/spin#Function> ; <http://spinrdf.org/spin#body> "
+                        + String.format(body, "BIND(<" + AVC.currentIndividual.getURI() + ">() AS ?r)") + " .",
+                "<urn:pure> a <http://spinrdf.org/spin#Function> ; <http://spinrdf.org/spin#body> "
+                        + String.format(body, "BIND(<http://www.w3.org/2005/xpath-functions#upper-case>" +
+                        "(STR(<urn:x>)) AS ?r)") + " .");
+        Model m = SpinModelConfig.createSpinModel(ModelFactory.createDefaultModel()
+                .read(new StringReader(ttl), null, "ttl").getGraph());
+        MapARQFactory factory = ((MapManagerImpl) Managers.createMapManager()).getFactory();
+        for (String uri : Arrays.asList("urn:inner", "urn:outer", "urn:current", "urn:pure")) {
+            factory.replace(m.getResource(uri));
+            factory.markDeterministic(uri);
+        }
+        ExprList none = new ExprList();
+        Assert.assertEquals(Collections.singleton(SPIN.THIS_VAR_NAME), getARQFunction(factory, "urn:outer")
+                .bindingVariables(none));
+        Assert.assertEquals(Collections.singleton(SPIN.THIS_VAR_NAME), getARQFunction(factory, "urn:current")
+                .bindingVariables(none));
+        Assert.assertEquals(Collections.emptySet(), getARQFunction(factory, "urn:pure").bindingVariables(none));
+
+        MapARQFactory child = factory.createChild();
+        FunctionEnvBase env = new FunctionEnvBase(child.getContext());
+        MapARQFactory.ARQFunction outer = getARQFunction(child, "urn:outer");
+        for (String i : Arrays.asList("urn:i1", "urn:i2", "urn:i1")) {
+            Node x = NodeFactory.createURI(i);
+            Binding b = BindingFactory.binding(Var.alloc(SPIN.THIS_VAR_NAME), x);
+            Assert.assertEquals(x, outer.exec(b, none, "urn:outer", env).asNode());
+        }
+    }
+
+    private static MapARQFactory.ARQFunction getARQFunction(MapARQFactory factory, String uri) {
+        return (MapARQFactory.ARQFunction) factory.getFunctionRegistry().get(uri);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.tests;
+
+import com.github.owlcs.map.MapJenaException;
+import com.github.owlcs.map.MapModel;
+import com.github.owlcs.map.spin.MapConfigImpl;
+import com.github.owlcs.map.tests.maps.SelfMapTest;
+import com.github.owlcs.map.utils.TestUtils;
+import com.github.owlcs.ontapi.jena.model.OntModel;
+import org.apache.jena.graph.Graph;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * To test the set-at-a-time inference mode.
+ *
+ * @see MapConfigImpl#inferenceBatchSize()
+ */
+public class BatchInferenceTest {
+    private static final int NUMBER_OF_INDIVIDUALS = 1_000;
+
+    @Test
+    public void testBatchInferenceGivesSameResult() {
+        Graph schema = DiffInferenceTest.assembleSrcSchema();
+        Graph data = ParallelInferenceTest.assembleSrcData(schema, NUMBER_OF_INDIVIDUALS);
+
+        Graph expected = ParallelInferenceTest.runInference(MapConfigImpl.INSTANCE, schema, data);
+        Graph actual = ParallelInferenceTest.runInference(MapConfigImpl.INSTANCE.setInferenceBatchSize(100),
+                schema, data);
+
+        Assert.assertEquals(NUMBER_OF_INDIVIDUALS * 2, expected.size());
+        Assert.assertTrue(expected.isIsomorphicWith(actual));
+    }
+
+    @Test
+    public void testParallelBatchInferenceGivesSameResult() {
+        Graph schema = DiffInferenceTest.assembleSrcSchema();
+        Graph data = ParallelInferenceTest.assembleSrcData(schema, NUMBER_OF_INDIVIDUALS);
+
+        Graph expected = ParallelInferenceTest.runInference(MapConfigImpl.INSTANCE, schema, data);
+        Graph actual = ParallelInferenceTest.runInference(MapConfigImpl.INSTANCE
+                .setInferenceBatchSize(300).setInferenceThreads(3), schema, data);
+
+        Assert.assertTrue(expected.isIsomorphicWith(actual));
+    }
+
+    @Test
+    public void testBatchInferenceWithCurrentIndividual() {
+        OntModel s = SelfMapTest.createSourceModel(12);
+        OntModel t = SelfMapTest.createTargetModel();
+        MapModel m = SelfMapTest.composeIfMapping(TestUtils.withConfig(MapConfigImpl.INSTANCE
+                .setInferenceBatchSize(5)), s, t);
+        m.runInference(s.getGraph(), t.getGraph());
+        Assert.assertEquals(4, t.individuals().count());
+    }
+
+    @Test(expected = MapJenaException.IllegalArgument.class)
+    public void testWrongBatchSize() {
+        MapConfigImpl.INSTANCE.setInferenceBatchSize(-1);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.owlcs.map.tests;
+
+import com.github.owlcs.map.spin.functions.spif.buildString;
+import com.github.owlcs.map.spin.functions.spif.buildURI;
+import com.github.owlcs.map.spin.vocabulary.SPIF;
+import org.apache.jena.graph.Factory;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.function.FunctionEnv;
+import org.apache.jena.sparql.function.FunctionEnvBase;
+import org.apache.jena.sparql.util.Context;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.function.Function;
+
+/**
+ * To test the templates of the {@code spif:buildString} and {@code spif:buildURI} functions.
+ */
+public class BuildTemplateTest {
+    private static final PrefixMapping PREFIXES = PrefixMapping.Factory.create()
+            .setNsPrefix("ex", "http://ex.com#")
+            .setNsPrefix("", "http://default.com/")
+            .lock();
+
+    private static Function<String, RDFNode> literals(String... pairs) {
+        return var -> {
+            for (int i = 0; i < pairs.length; i += 2) {
+                if (pairs[i].equals(var)) return ResourceFactory.createPlainLiteral(pairs[i + 1]);
+            }
+            return null;
+        };
+    }
+
+    private static FunctionEnv createEnv() {
+        Graph g = Factory.createGraphMem();
+        g.getPrefixMapping().setNsPrefixes(PREFIXES);
+        return new FunctionEnvBase(new Context(), g, DatasetGraphFactory.wrap(g));
+    }
+
+    @Test
+    public void testFormatPlaceholders() {
+        Assert.assertEquals("a-x-b-y", buildString.format("a-{?v1}-b-{?v2}", v -> v.equals("v1") ? "x" : "y"));
+        Assert.assertEquals("no placeholders", buildString.format("no placeholders", v -> "x"));
+        // the same variable twice:
+        Assert.assertEquals("x+x", buildString.format("{?v}+{?v}", v -> "x"));
+        // unknown variables are replaced with the empty string:
+        Assert.assertEquals("a--b", buildString.format("a-{?v}-b", literals(), v -> v.toString()));
+    }
+
+    @Test
+    public void testFormatMalformedPlaceholders() {
+        // not a variable name - kept as is:
+        Assert.assertEquals("a-{?}-b", buildString.format("a-{?}-b", v -> "x"));
+        Assert.assertEquals("a-{?x-y}-b", buildString.format("a-{?x-y}-b", v -> "z"));
+        Assert.assertEquals("a-{? v}-b", buildString.format("a-{? v}-b", v -> "z"));
+        // no closing brace:
+        Assert.assertEquals("a-{?v", buildString.format("a-{?v", v -> "x"));
+        Assert.assertEquals("a-x-{?v", buildString.format("a-{?v}-{?v", v -> "x"));
+        Assert.assertEquals("x{?v", buildString.format("{?v}{?v", v -> "x"));
+    }
+
+    @Test
+    public void testFormatNestedPlaceholders() {
+        // the outer segment is not a placeholder, the inner one is:
+        Assert.assertEquals("a-{?x}", buildString.format("a-{?{?v}}", v -> "x"));
+        Assert.assertEquals("{?{?x}}", buildString.format("{?{?{?v}}}", v -> "x"));
+    }
+
+    @Test
+    public void testFormatNumericPlaceholders() {
+        Assert.assertEquals("a-1-2", buildString.format("a-{?1}-{?2}", v -> v));
+        // numeric placeholders may have any suffix (e.g. "1x") - they are taken as is:
+        Assert.assertEquals("a-[1x]", buildString.format("a-{?1x}", v -> "[" + v + "]"));
+    }
+
+    @Test
+    public void testExpandURI() {
+        // <...>-template:
+        Assert.assertEquals("http://x.com/v", buildURI.buildURI("<http://x.com/{?a}>", PREFIXES, literals("a", "v")));
+        // :-template, the default prefix:
+        Assert.assertEquals("http://default.com/v", buildURI.buildURI(":{?a}", PREFIXES, literals("a", "v")));
+        Assert.assertEquals("v", buildURI.buildURI(":{?a}", PrefixMapping.Factory.create(), literals("a", "v")));
+        // the prefix is a fixed part of the template:
+        Assert.assertEquals("http://ex.com#x-v", buildURI.buildURI("ex:x-{?a}", PREFIXES, literals("a", "v")));
+        // the prefix is taken from a variable:
+        Assert.assertEquals("http://ex.com#x", buildURI.buildURI("{?p}:x", PREFIXES, literals("p", "ex")));
+        // unknown prefix, the result is left as is:
+        Assert.assertEquals("unknown:x-v", buildURI.buildURI("unknown:x-{?a}", PREFIXES, literals("a", "v")));
+        // full URI:
+        Assert.assertEquals("http://x.com/v", buildURI.buildURI("http://x.com/{?a}", PREFIXES, literals("a", "v")));
+    }
+
+    @Test
+    public void testExecWithNumericArguments() {
+        FunctionEnv env = createEnv();
+        String uri = SPIF.buildString.getURI();
+        ExprList args = new ExprList();
+        args.add(NodeValue.makeString("{?1}-{?2}-{?3}{?1x}"));
+        args.add(NodeValue.makeString("a"));
+        args.add(NodeValue.makeInteger(42));
+        // {?3} and {?1x} do not refer to any argument:
+        Assert.assertEquals(NodeValue.makeString("a-42-"),
+                new buildString().exec(BindingFactory.binding(), args, uri, env));
+
+        ExprList uriArgs = new ExprList();
+        uriArgs.add(NodeValue.makeString("ex:i-{?1}"));
+        uriArgs.add(NodeValue.makeString("a b"));
+        Assert.assertEquals("http://ex.com#i-a_b",
+                new buildURI().exec(BindingFactory.binding(), uriArgs, SPIF.buildURI.getURI(), env)
+                        .asNode().getURI());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.owlcs.map.tests;
+
+import com.github.owlcs.map.*;
+import com.github.owlcs.map.spin.vocabulary.AVC;
+import com.github.owlcs.map.spin.vocabulary.SPINMAPL;
+import com.github.owlcs.map.tests.maps.GroupConcatTest;
+import com.github.owlcs.map.utils.TestUtils;
+import com.github.owlcs.ontapi.jena.model.*;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.spin.vocabulary.SP;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * To test that different mappings can be run at the same time on the same manager
+ * without affecting each other, even if they have conflicting runtime functions.
+ */
+public class ConcurrentInferenceTest {
+
+    @Test
+    public void testRunMappingsWithDifferentRuntimeFunctionsInParallel() throws Exception {
+        MapManager manager = Managers.createMapManager();
+        GroupConcatTest data = new GroupConcatTest();
+        OntModel s = data.assembleSource();
+        // avc:groupConcat is an avc:runtime function, its body depends on the separator:
+        MapModel m1 = createGroupConcatMapping(manager, s, data.assembleTarget(), ",");
+        MapModel m2 = createGroupConcatMapping(manager, s, data.assembleTarget(), ";");
+        MapManager.InferenceEngine e1 = manager.getInferenceEngine(m1);
+        MapManager.InferenceEngine e2 = manager.getInferenceEngine(m2);
+
+        ExecutorService service = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> res = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                res.add(service.submit(() -> check(e1, s, data.assembleTarget(), ",")));
+                res.add(service.submit(() -> check(e2, s, data.assembleTarget(), ";")));
+            }
+            for (Future<?> f : res) {
+                f.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            service.shutdownNow();
+        }
+    }
+
+    private static void check(MapManager.InferenceEngine engine, OntModel s, OntModel t, String separator) {
+        engine.run(s.getGraph(), t.getGraph());
+        Assert.assertEquals(3, t.individuals().count());
+        OntDataProperty p = TestUtils.findOntEntity(t, OntDataProperty.class, "targetDataProperty1");
+        t.statements(null, p, null).forEach(x -> {
+            String v = x.getString();
+            Assert.assertTrue("Wrong value: " + v, v.contains(separator));
+        });
+    }
+
+    private static MapModel createGroupConcatMapping(MapManager manager,
+                                                     OntModel src,
+                                                     OntModel dst,
+                                                     String separator) {
+        MapModel res = manager.createMapModel();
+        OntClass srcClass = TestUtils.findOntEntity(src, OntClass.Named.class, "SourceClass1");
+        OntClass dstClass = TestUtils.findOntEntity(dst, OntClass.Named.class, "TargetClass1");
+        OntDataProperty srcProp = TestUtils.findOntEntity(src, OntDataProperty.class, "sourceDataProperty1");
+        OntDataProperty dstProp = TestUtils.findOntEntity(dst, OntDataProperty.class, "targetDataProperty1");
+        MapContext context = res.createContext(srcClass, dstClass,
+                manager.getFunction(SPINMAPL.composeURI.getURI()).create()
+                        .addLiteral(SPINMAPL.template, "http://{?1}").build());
+        context.addPropertyBridge(manager.getFunction(AVC.groupConcat).create()
+                .addLiteral(SPINMAPL.separator, separator)
+                .addFunction(SP.arg2, manager.getFunction(AVC.currentIndividual).create())
+                .add(SP.arg1.getURI(), manager.getFunction(AVC.asIRI).create()
+                        .addProperty(SP.arg1, srcProp))
+                .build(), dstProp);
+        return res;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.owlcs.map.tests;
+
+import com.github.owlcs.map.Managers;
+import com.github.owlcs.map.MapJenaException;
+import com.github.owlcs.map.spin.ExpressionFunctionBody;
+import com.github.owlcs.map.spin.MapARQFactory;
+import com.github.owlcs.map.spin.MapManagerImpl;
+import com.github.owlcs.map.spin.SpinModelConfig;
+import com.github.owlcs.map.spin.vocabulary.SPINMAPL;
+import org.apache.jena.graph.Factory;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.apache.jena.sparql.expr.ExprEvalException;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.function.FunctionEnvBase;
+import org.apache.jena.sparql.function.FunctionFactory;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.spin.vocabulary.SPIN;
+
+/**
+ * To test {@link ExpressionFunctionBody}.
+ */
+public class ExpressionFunctionBodyTest {
+
+    private static ExpressionFunctionBody compile(String query) {
+        return ExpressionFunctionBody.compile(QueryFactory.create(query)).orElseThrow(AssertionError::new);
+    }
+
+    private static NodeValue exec(ExpressionFunctionBody body, int a) {
+        BindingMap b = BindingFactory.create();
+        b.add(Var.alloc("a"), NodeValue.makeInteger(a).asNode());
+        return body.exec(b, new FunctionEnvBase());
+    }
+
+    @Test
+    public void testCompileAndEvaluate() {
+        ExpressionFunctionBody body = compile("SELECT ?r { BIND(?a + 1 AS ?x) BIND(?x * 2 AS ?r) FILTER(?a > 0) }");
+        Assert.assertEquals(NodeValue.makeInteger(6), exec(body, 2));
+        try {
+            exec(body, -2);
+            Assert.fail("Filter has no effect");
+        } catch (ExprEvalException e) {
+            // expected
+        }
+        Assert.assertEquals(NodeValue.makeInteger(4),
+                exec(compile("SELECT (?a * 2 AS ?r) WHERE { FILTER(?a != 0) }"), 2));
+        // the error in BIND leaves the variable unbound:
+        Assert.assertEquals(NodeValue.makeString("x"),
+                exec(compile("SELECT ?r { BIND(?a / 0 AS ?x) BIND(COALESCE(?x, \"x\") AS ?r) }"), 2));
+    }
+
+    @Test
+    public void testNotCompiled() {
+        for (String q : new String[]{"SELECT ?r { ?s ?p ?r }",
+                "SELECT ?r { BIND(EXISTS { ?s ?p ?o } AS ?r) }",
+                "SELECT ?r { BIND(1 + IF(NOT EXISTS { ?s ?p ?o }, 1, 2) AS ?r) }",
+                "SELECT ?r { BIND(1 AS ?r) FILTER(?a > 0 && EXISTS { ?s ?p ?o }) }",
+                "SELECT (COALESCE(?a, IF(EXISTS { ?s ?p ?o }, 1, 2)) AS ?r) { }",
+                "SELECT (COUNT(?a) AS ?r) { BIND(1 AS ?a) }",
+                "SELECT ?r { BIND(1 AS ?r) } ORDER BY ?r",
+                "ASK { FILTER(true) }"}) {
+            Assert.assertFalse(q, ExpressionFunctionBody.compile(QueryFactory.create(q)).isPresent());
+        }
+    }
+
+    @Test
+    public void testLibraryFunctionIsCompiled() {
+        MapARQFactory factory = ((MapManagerImpl) Managers.createMapManager()).getFactory();
+        FunctionFactory f = factory.getFunctionRegistry().get(SPINMAPL.composeURI.getURI());
+        Assert.assertTrue(f instanceof MapARQFactory.ARQFunction);
+        Assert.assertNotNull(((MapARQFactory.ARQFunction) f).getInlineBody());
+        // the body is compiled lazily (a new instance, since the registered one is shared by all managers):
+        MapARQFactory.ARQFunction g = (MapARQFactory.ARQFunction)
+                factory.asARQFunction(((MapARQFactory.ARQFunction) f).getSPINFunction());
+        Assert.assertFalse(g.isCompiled());
+        Assert.assertNotNull(g.getInlineBody());
+        Assert.assertTrue(g.isCompiled());
+    }
+
+    @Test
+    public void testBrokenLibraryFunction() {
+        MapARQFactory factory = ((MapManagerImpl) Managers.createMapManager()).getFactory();
+        Model m = SpinModelConfig.createSpinModel(Factory.createGraphMem());
+        String uri = "http://test.com#broken";
+        Resource r = m.createResource(uri)
+                .addProperty(RDF.type, SPIN.Function)
+                .addProperty(SPIN.body, "not a query");
+        MapARQFactory.ARQFunction f = (MapARQFactory.ARQFunction)
+                factory.asARQFunction(r.as(org.topbraid.spin.model.Function.class));
+        // the lazy compilation fails the call, not the whole inference:
+        for (int i = 0; i < 2; i++) {
+            try {
+                f.exec(BindingFactory.binding(), new ExprList(), uri, new FunctionEnvBase(factory.getContext()));
+                Assert.fail("The broken body is executed");
+            } catch (ExprEvalException e) {
+                Assert.assertTrue(e.getCause() instanceof MapJenaException);
+            }
+        }
+        Assert.assertFalse(f.isCompiled());
+
+        // within a query the broken call is an expression error, the rest of the solution is kept:
+        factory.replace(r);
+        String q = "SELECT ?x ?y WHERE { BIND(<" + uri + ">() AS ?x) BIND(\"ok\" AS ?y) }";
+        try (QueryExecution exec = factory.createQueryExecution(factory.createQuery(q), m)) {
+            QuerySolution s = exec.execSelect().next();
+            Assert.assertFalse(s.contains("x"));
+            Assert.assertEquals("ok", s.getLiteral("y").getString());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.tests;
+
+import com.github.owlcs.map.MapFunction;
+import com.github.owlcs.map.MapJenaException;
+import com.github.owlcs.map.MapManager;
+import com.github.owlcs.map.Managers;
+import com.github.owlcs.map.spin.MapManagerImpl;
+import com.github.owlcs.map.spin.vocabulary.SPINMAPL;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * To test the cached function index and states of {@link MapManagerImpl}:
+ * they must be the same until the set of functions is changed.
+ */
+public class FunctionIndexTest {
+
+    @Test
+    public void testIndexIsRebuiltOnRegistration() {
+        MapManagerImpl m = (MapManagerImpl) Managers.createMapManager();
+        List<MapFunction> f1 = m.functions().collect(Collectors.toList());
+        List<MapFunction> f2 = m.functions().collect(Collectors.toList());
+        Assert.assertEquals(f1, f2);
+        String name = SPINMAPL.concatWithSeparator.getURI();
+        MapFunction concat = m.findFunction(name).orElseThrow(AssertionError::new);
+        Assert.assertSame(m.getFunction(name), concat);
+        Assert.assertTrue(m.getFunction(name).isExecutable());
+        Assert.assertFalse(concat.isUserDefined());
+        Assert.assertFalse(m.getFunction(name).isCustom());
+        Assert.assertEquals(0, f1.stream().filter(MapFunction::isUserDefined).count());
+
+        m.asMapModel(LoadFunctionsTest.makeSingleFunctionModel());
+        List<MapFunction> f3 = m.functions().collect(Collectors.toList());
+        Assert.assertEquals(f1.size() + 1, f3.size());
+        MapFunction user = f3.stream().filter(MapFunction::isUserDefined).findFirst().orElseThrow(AssertionError::new);
+        Assert.assertTrue(m.getFunction(user.name()).isCustom());
+        Assert.assertTrue(m.getFunction(user.name()).isExecutable());
+        Assert.assertSame(user, m.findFunction(user.name()).orElseThrow(AssertionError::new));
+        Assert.assertSame(concat, m.findFunction(name).orElseThrow(AssertionError::new));
+    }
+
+    @Test
+    public void testGetFunctionInOWLManager() {
+        MapManagerImpl m = (MapManagerImpl) Managers.createMapManager();
+        String hidden = m.getFunctionsMap().keySet().stream()
+                .filter(x -> !m.findFunction(x).isPresent())
+                .findFirst().orElseThrow(AssertionError::new);
+        MapManager owl = Managers.createOWLMapManager();
+        Assert.assertEquals(SPINMAPL.concatWithSeparator.getURI(),
+                owl.getFunction(SPINMAPL.concatWithSeparator.getURI()).name());
+        try {
+            owl.getFunction(hidden);
+            Assert.fail("Possible to get the hidden function " + hidden);
+        } catch (MapJenaException e) {
+            // expected
+        }
+    }
+}
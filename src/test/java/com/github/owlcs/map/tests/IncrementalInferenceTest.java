@@ -0,0 +1,114 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.tests;
+
+import com.github.owlcs.map.MapModel;
+import com.github.owlcs.map.spin.MapConfigImpl;
+import com.github.owlcs.map.spin.MapManagerImpl;
+import com.github.owlcs.map.spin.infer.IncrementalInferenceEngine;
+import com.github.owlcs.map.tests.maps.PropertyChainMapTest;
+import com.github.owlcs.map.utils.TestUtils;
+import com.github.owlcs.ontapi.jena.OntModelFactory;
+import com.github.owlcs.ontapi.jena.model.OntClass;
+import com.github.owlcs.ontapi.jena.model.OntDataProperty;
+import com.github.owlcs.ontapi.jena.model.OntModel;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.compose.Union;
+import org.apache.jena.mem.GraphMem;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * To test {@link IncrementalInferenceEngine}.
+ */
+public class IncrementalInferenceTest {
+
+    @Test
+    public void testUpdateGivesSameResultAsFullRun() {
+        Graph schema = DiffInferenceTest.assembleSrcSchema();
+        Graph data = ParallelInferenceTest.assembleSrcData(schema, 50);
+        OntModel target = DiffInferenceTest.assembleTargetModel();
+        MapManagerImpl manager = (MapManagerImpl) TestUtils.withConfig(MapConfigImpl.INSTANCE);
+        MapModel mapping = DiffInferenceTest.assembleMapping(manager, schema, target.getGraph());
+
+        IncrementalInferenceEngine engine = manager.getIncrementalInferenceEngine(mapping);
+        Graph actual = new GraphMem();
+        engine.run(data, actual);
+        Assert.assertEquals(100, actual.size());
+
+        IncrementalInferenceEngine.Changes changes = new IncrementalInferenceEngine.Changes();
+        data.getEventManager().register(changes);
+        OntModel m = OntModelFactory.createModel(new Union(data, schema));
+        String ns = m.getNsPrefixURI("x");
+        OntClass c = TestUtils.findOntEntity(m, OntClass.Named.class, "Class");
+        OntDataProperty p1 = TestUtils.findOntEntity(m, OntDataProperty.class, "Property-1");
+        OntDataProperty p2 = TestUtils.findOntEntity(m, OntDataProperty.class, "Property-2");
+        // change:
+        Resource i1 = m.getResource(ns + "i1");
+        i1.removeAll(p1).addProperty(p1, "changed");
+        // delete:
+        m.removeAll(m.getResource(ns + "i2"), null, null);
+        // add:
+        c.createIndividual(ns + "new").addProperty(p1, "x").addProperty(p2, "y");
+        data.getEventManager().unregister(changes);
+        Assert.assertFalse(changes.getAdded().isEmpty());
+        Assert.assertFalse(changes.getRemoved().isEmpty());
+
+        engine.update(data, actual, changes);
+        Assert.assertTrue(changes.getAdded().isEmpty());
+
+        Graph expected = new GraphMem();
+        mapping.runInference(data, expected);
+        Assert.assertEquals(100, expected.size());
+        Assert.assertTrue(expected.isIsomorphicWith(actual));
+    }
+
+    @Test
+    public void testUpdateLinkedIndividual() {
+        PropertyChainMapTest data = new PropertyChainMapTest();
+        OntModel src = data.assembleSource();
+        OntModel dst = data.assembleTarget();
+        MapManagerImpl manager = (MapManagerImpl) TestUtils.withConfig(MapConfigImpl.INSTANCE);
+        MapModel mapping = data.assembleMapping(manager, src, dst);
+
+        IncrementalInferenceEngine engine = manager.getIncrementalInferenceEngine(mapping);
+        Graph actual = new GraphMem();
+        engine.run(src.getGraph(), actual);
+
+        IncrementalInferenceEngine.Changes changes = new IncrementalInferenceEngine.Changes();
+        src.getBaseGraph().getEventManager().register(changes);
+        // the name is a value of an anonymous individual, that is linked to the ship, which is the mapped one:
+        OntDataProperty name = TestUtils.findOntEntity(src, OntDataProperty.class, "DEUUU");
+        Statement s = src.listStatements(null, name, "Bismarck").toList().get(0);
+        s.getSubject().removeAll(name).addProperty(name, "Tirpitz");
+        src.getBaseGraph().getEventManager().unregister(changes);
+
+        engine.update(src.getGraph(), actual, changes);
+
+        Graph expected = new GraphMem();
+        mapping.runInference(src.getGraph(), expected);
+        Assert.assertTrue(expected.contains(Node.ANY, Node.ANY, NodeFactory.createLiteral("Tirpitz")));
+        Assert.assertFalse(expected.contains(Node.ANY, Node.ANY, NodeFactory.createLiteral("Bismarck")));
+        Assert.assertTrue(expected.isIsomorphicWith(actual));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.tests;
+
+import com.github.owlcs.map.Managers;
+import com.github.owlcs.map.MapManager;
+import com.github.owlcs.map.MapModel;
+import com.github.owlcs.map.spin.infer.InMemoryInferenceMetrics;
+import com.github.owlcs.map.spin.infer.InferenceEngineImpl;
+import com.github.owlcs.map.spin.vocabulary.AVC;
+import com.github.owlcs.map.tests.maps.SelfMapTest;
+import com.github.owlcs.ontapi.jena.model.OntModel;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * To test {@link InMemoryInferenceMetrics}.
+ */
+public class InferenceMetricsTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(InferenceMetricsTest.class);
+
+    @Test
+    public void testCollectMetrics() {
+        OntModel s = SelfMapTest.createSourceModel(12);
+        OntModel t = SelfMapTest.createTargetModel();
+        MapManager manager = Managers.createMapManager();
+        MapModel m = SelfMapTest.composeIfMapping(manager, s, t);
+        InMemoryInferenceMetrics metrics = new InMemoryInferenceMetrics();
+        ((InferenceEngineImpl) manager.getInferenceEngine(m)).setMetrics(metrics).run(s.getGraph(), t.getGraph());
+        LOGGER.debug("Metrics:\n{}", metrics);
+        Assert.assertEquals(4, t.individuals().count());
+
+        Assert.assertTrue(metrics.getIndividuals() >= 12);
+        Assert.assertTrue(metrics.getTriples() >= 4);
+        Assert.assertFalse(metrics.rules().isEmpty());
+        metrics.rules().forEach(r -> {
+            Assert.assertTrue(r.getCount() > 0);
+            Assert.assertSame(r, metrics.getRuleStats(r.getID()));
+            Assert.assertEquals(r.getCount(), Arrays.stream(r.getHistogram()).sum());
+            Assert.assertTrue(r.getMaxNanos() <= r.getTotalNanos());
+            Assert.assertTrue(r.getPercentileNanos(1) >= r.getMaxNanos());
+        });
+        Map<String, Long> functions = metrics.functions();
+        Assert.assertTrue(functions.getOrDefault(AVC.currentIndividual.getURI(), 0L) >= 12);
+
+        metrics.reset();
+        Assert.assertEquals(0, metrics.getIndividuals());
+        Assert.assertTrue(metrics.functions().isEmpty());
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.tests;
+
+import com.github.owlcs.map.MapJenaException;
+import com.github.owlcs.map.MapModel;
+import com.github.owlcs.map.spin.MapConfigImpl;
+import com.github.owlcs.map.spin.infer.IntermediateStore;
+import com.github.owlcs.map.spin.infer.MappedIntermediateStore;
+import com.github.owlcs.map.spin.infer.MemoryIntermediateStore;
+import com.github.owlcs.map.tests.maps.RelatedContextMapTest;
+import com.github.owlcs.map.utils.TestUtils;
+import com.github.owlcs.ontapi.jena.model.OntModel;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * To test {@link IntermediateStore} implementations.
+ */
+@RunWith(Parameterized.class)
+public class IntermediateStoreTest {
+    private final StoreType type;
+
+    public IntermediateStoreTest(StoreType type) {
+        this.type = type;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static StoreType[] getData() {
+        return StoreType.values();
+    }
+
+    @Test
+    public void testQueueWithoutDuplicates() {
+        IntermediateStore s = type.create();
+        try {
+            Node a = NodeFactory.createURI("http://a");
+            Node b = NodeFactory.createBlankNode();
+            Assert.assertTrue(s.isEmpty());
+            Assert.assertNull(s.poll());
+            Assert.assertTrue(s.add(a));
+            Assert.assertTrue(s.add(b));
+            Assert.assertFalse(s.add(a));
+            Assert.assertEquals(2, s.size());
+            Assert.assertEquals(a, s.poll());
+            // can be added again, once it has been processed:
+            Assert.assertTrue(s.add(a));
+            Assert.assertFalse(s.add(b));
+            Assert.assertEquals(b, s.poll());
+            Assert.assertEquals(a, s.poll());
+            Assert.assertNull(s.poll());
+            Assert.assertTrue(s.isEmpty());
+        } finally {
+            s.close();
+        }
+    }
+
+    @Test
+    public void testManyNodes() {
+        int num = 100_000;
+        IntermediateStore s = type.create();
+        try {
+            List<Node> expected = new ArrayList<>();
+            for (int i = 0; i < num; i++) {
+                Node n = i % 3 == 0 ? NodeFactory.createBlankNode() : NodeFactory.createURI("http://ex.com/ind#" + i);
+                expected.add(n);
+                Assert.assertTrue(s.add(n));
+                Assert.assertFalse(s.add(n));
+            }
+            Assert.assertEquals(num, s.size());
+            List<Node> actual = new ArrayList<>();
+            Node n;
+            while ((n = s.poll()) != null) {
+                actual.add(n);
+            }
+            Assert.assertEquals(expected, actual);
+        } finally {
+            s.close();
+        }
+    }
+
+    @Test
+    public void testReuseAfterDrain() {
+        IntermediateStore s = type.create();
+        try {
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < 10_000; i++) {
+                    Assert.assertTrue(s.add(NodeFactory.createURI("http://ex.com/ind#" + round + "-" + i)));
+                }
+                Assert.assertEquals(10_000, s.size());
+                for (int i = 0; i < 10_000; i++) {
+                    Assert.assertEquals(NodeFactory.createURI("http://ex.com/ind#" + round + "-" + i), s.poll());
+                }
+                Assert.assertTrue(s.isEmpty());
+                // a processed node can be added again after the reset:
+                Node a = NodeFactory.createURI("http://ex.com/ind#" + round + "-0");
+                Assert.assertTrue(s.add(a));
+                Assert.assertFalse(s.add(a));
+                Assert.assertEquals(a, s.poll());
+                Assert.assertNull(s.poll());
+            }
+        } finally {
+            s.close();
+        }
+    }
+
+    @Test
+    public void testMemoryIsAllocatedOnDemand() {
+        MemoryIntermediateStore s = new MemoryIntermediateStore();
+        try {
+            Assert.assertEquals(0, s.allocated());
+            Assert.assertTrue(s.add(NodeFactory.createURI("http://a")));
+            Assert.assertTrue(s.allocated() > 0);
+            Assert.assertTrue(s.allocated() < MemoryIntermediateStore.CHUNK_SIZE);
+            for (int i = 0; i < 100_000; i++) {
+                s.add(NodeFactory.createURI("http://ex.com/ind#" + i));
+            }
+            Assert.assertTrue(s.allocated() > MemoryIntermediateStore.CHUNK_SIZE);
+            while (s.poll() != null) {
+                // drain
+            }
+            Assert.assertEquals(0, s.allocated());
+        } finally {
+            s.close();
+        }
+    }
+
+    @Test(expected = MapJenaException.IllegalArgument.class)
+    public void testLiteralIsNotAllowed() {
+        IntermediateStore s = type.create();
+        try {
+            s.add(NodeFactory.createLiteral("x"));
+        } finally {
+            s.close();
+        }
+    }
+
+    @Test
+    public void testInferenceWithDependentContexts() {
+        MapConfigImpl conf = MapConfigImpl.INSTANCE.setSpillToDisk(type == StoreType.MAPPED);
+        RelatedContextMapTest data = new RelatedContextMapTest();
+        List<Graph> res = new ArrayList<>();
+        for (MapConfigImpl c : Arrays.asList(MapConfigImpl.INSTANCE, conf)) {
+            OntModel s = data.assembleSource();
+            OntModel t = data.assembleTarget();
+            long size = t.getBaseGraph().size();
+            MapModel m = data.assembleMapping(TestUtils.withConfig(c), s, t);
+            m.runInference(s.getGraph(), t.getGraph());
+            Assert.assertTrue(t.getBaseGraph().size() > size);
+            res.add(t.getBaseGraph());
+        }
+        Assert.assertTrue(res.get(0).isIsomorphicWith(res.get(1)));
+    }
+
+    enum StoreType {
+        MEMORY(MemoryIntermediateStore::new),
+        MAPPED(MappedIntermediateStore::new),
+        ;
+        private final Supplier<IntermediateStore> factory;
+
+        StoreType(Supplier<IntermediateStore> factory) {
+            this.factory = factory;
+        }
+
+        IntermediateStore create() {
+            return factory.get();
+        }
+    }
+}
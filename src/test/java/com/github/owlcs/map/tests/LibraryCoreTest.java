@@ -0,0 +1,101 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.tests;
+
+import com.github.owlcs.map.MapFunction;
+import com.github.owlcs.map.MapManager;
+import com.github.owlcs.map.spin.LibraryCore;
+import com.github.owlcs.map.spin.MapARQFactory;
+import com.github.owlcs.map.spin.MapConfigImpl;
+import com.github.owlcs.map.spin.MapManagerImpl;
+import com.github.owlcs.map.spin.vocabulary.AVC;
+import com.github.owlcs.map.spin.vocabulary.SPINMAPL;
+import com.github.owlcs.map.utils.TestUtils;
+import org.apache.jena.sparql.function.FunctionFactory;
+import org.apache.jena.sparql.function.FunctionRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * To test the {@link LibraryCore}: the system library part is shared by the managers,
+ * while the user-defined functions are visible only within the manager that owns them.
+ */
+public class LibraryCoreTest {
+
+    private static FunctionRegistry registry(MapManager m) {
+        return ((MapManagerImpl) m).getFactory().getFunctionRegistry();
+    }
+
+    @Test
+    public void testSystemFunctionsAreShared() {
+        MapManager a = TestUtils.withConfig(MapConfigImpl.INSTANCE);
+        MapManager b = TestUtils.withConfig(MapConfigImpl.INSTANCE.setQueryCacheSize(10));
+        Assert.assertNotSame(((MapManagerImpl) a).getFactory(), ((MapManagerImpl) b).getFactory());
+        Assert.assertSame(a.prefixes(), b.prefixes());
+
+        String uri = SPINMAPL.composeURI.getURI();
+        FunctionFactory f = registry(a).get(uri);
+        Assert.assertTrue(f instanceof MapARQFactory.ARQFunction);
+        Assert.assertSame(f, registry(b).get(uri));
+        Assert.assertSame(f, LibraryCore.get(MapConfigImpl.INSTANCE).getFactory().getFunctionRegistry().get(uri));
+        // as well as the map-functions:
+        Assert.assertSame(a.getFunction(uri), b.getFunction(uri));
+        Assert.assertEquals(a.functions().count(), b.functions().count());
+    }
+
+    @Test
+    public void testUserFunctionsAreNotShared() {
+        MapManagerImpl a = (MapManagerImpl) TestUtils.withConfig(MapConfigImpl.INSTANCE);
+        MapManagerImpl b = (MapManagerImpl) TestUtils.withConfig(MapConfigImpl.INSTANCE);
+        a.asMapModel(LoadFunctionsTest.makeSingleFunctionModel());
+        MapFunction user = a.functions().filter(MapFunction::isUserDefined).findFirst()
+                .orElseThrow(AssertionError::new);
+        Assert.assertTrue(a.containsFunction(user.name()));
+        Assert.assertFalse(b.containsFunction(user.name()));
+        Assert.assertFalse(b.findFunction(user.name()).isPresent());
+        Assert.assertEquals(a.functions().count(), b.functions().count() + 1);
+        Assert.assertEquals(a.getFunctionsMap().size(), b.getFunctionsMap().size() + 1);
+    }
+
+    @Test
+    public void testOptimizationsUseDifferentCores() {
+        MapConfigImpl plain = MapConfigImpl.INSTANCE.setAllOptimizations(false);
+        Assert.assertSame(LibraryCore.get(MapConfigImpl.INSTANCE), LibraryCore.get(MapConfigImpl.INSTANCE));
+        Assert.assertNotSame(LibraryCore.get(MapConfigImpl.INSTANCE), LibraryCore.get(plain));
+        String uri = AVC.UUID.getURI();
+        Assert.assertFalse(registry(TestUtils.withConfig(MapConfigImpl.INSTANCE)).get(uri)
+                instanceof MapARQFactory.ARQFunction);
+        Assert.assertTrue(registry(TestUtils.withConfig(plain)).get(uri) instanceof MapARQFactory.ARQFunction);
+    }
+
+    @Test
+    public void testManagerFunctionsAreIsolated() {
+        MapManager a = TestUtils.withConfig(MapConfigImpl.INSTANCE);
+        MapManager b = TestUtils.withConfig(MapConfigImpl.INSTANCE);
+        String uri = "urn:x-test:library-core";
+        FunctionFactory f = registry(a).get(SPINMAPL.composeURI.getURI());
+        registry(a).put(uri, f);
+        Assert.assertSame(f, registry(a).get(uri));
+        Assert.assertNull(registry(b).get(uri));
+        Assert.assertNull(LibraryCore.get(MapConfigImpl.INSTANCE).getFactory().getFunctionRegistry().get(uri));
+        // a manager cannot unregister a shared function:
+        registry(a).remove(SPINMAPL.composeURI.getURI());
+        Assert.assertSame(f, registry(b).get(SPINMAPL.composeURI.getURI()));
+    }
+}
@@ -20,6 +20,7 @@ package com.github.owlcs.map.tests;
 
 import com.github.owlcs.map.Managers;
 import com.github.owlcs.map.MapFunction;
+import com.github.owlcs.map.MapJenaException;
 import com.github.owlcs.map.MapManager;
 import com.github.owlcs.map.MapModel;
 import com.github.owlcs.map.spin.QueryHelper;
@@ -137,7 +138,22 @@ public class LoadFunctionsTest {
         data.validateResult(res);
     }
 
-    private static OntModel makeSingleFunctionModel() {
+    @Test
+    public void testLoadBrokenFunction() {
+        OntModel m = makeSingleFunctionModel();
+        String uri = "http://test.func.com#concatWithSeparator_3";
+        m.getResource(uri).removeAll(SPIN.body).addProperty(SPIN.body, "not a query");
+        MapManager manager = Managers.createMapManager();
+        try {
+            manager.asMapModel(m);
+            Assert.fail("The function with broken body is loaded");
+        } catch (MapJenaException e) {
+            LOGGER.debug("Expected: '{}'", e.getMessage());
+        }
+        Assert.assertFalse(manager.functions().map(MapFunction::name).anyMatch(uri::equals));
+    }
+
+    static OntModel makeSingleFunctionModel() {
         String q = "SELECT (xsd:string(?untyped) AS ?result)\n" +
                 "WHERE {\n" +
                 "    BIND (CONCAT(xsd:string(?arg1), ?separator, xsd:string(?arg2), ?separator, xsd:string(?arg3)) AS ?untyped) .\n" +
@@ -0,0 +1,77 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.owlcs.map.tests;
+
+import com.github.owlcs.map.spin.functions.spif.MintedURIRegistry;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * To test {@link MintedURIRegistry}, that is used by {@code spif:buildUniqueURI}.
+ */
+public class MintedURIRegistryTest {
+    private static final String NS = "http://ex.com#";
+
+    private static void addResource(Graph g, String uri) {
+        g.add(Triple.create(NodeFactory.createURI(uri), RDF.Nodes.type, RDF.Nodes.Property));
+    }
+
+    @Test
+    public void testMintWithExistingResources() {
+        Graph g = GraphFactory.createGraphMem();
+        addResource(g, NS + "a");
+        addResource(g, NS + "a0");
+        MintedURIRegistry r = new MintedURIRegistry();
+
+        Assert.assertEquals(NS + "a1", r.mint(NS + "a", g).getURI());
+        Assert.assertEquals(NS + "a2", r.mint(NS + "a", g).getURI());
+        Assert.assertEquals(NS + "b", r.mint(NS + "b", g).getURI());
+        // the graph is changed outside the registry:
+        addResource(g, NS + "a3");
+        Assert.assertEquals(NS + "a4", r.mint(NS + "a", g).getURI());
+        // the URI is already minted for another stem:
+        Assert.assertEquals(NS + "a20", r.mint(NS + "a2", g).getURI());
+        Assert.assertEquals(5, r.size());
+
+        r.clear();
+        Assert.assertEquals(0, r.size());
+        Assert.assertEquals(NS + "a1", r.mint(NS + "a", g).getURI());
+    }
+
+    @Test
+    public void testMintManyWithSameStem() {
+        Graph g = GraphFactory.createGraphMem();
+        MintedURIRegistry r = new MintedURIRegistry();
+        int count = 10_000;
+        for (int i = 0; i < count; i++) {
+            Node n = r.mint(NS + "x", g);
+            Assert.assertFalse(g.contains(n, Node.ANY, Node.ANY));
+            addResource(g, n.getURI());
+        }
+        Assert.assertEquals(count, r.size());
+        Assert.assertEquals(count, g.size());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.owlcs.map.tests;
+
+import com.github.owlcs.map.MapManager;
+import com.github.owlcs.map.spin.MapARQFactory;
+import com.github.owlcs.map.spin.MapConfigImpl;
+import com.github.owlcs.map.spin.MapManagerImpl;
+import com.github.owlcs.map.spin.system.Resources;
+import com.github.owlcs.map.utils.TestUtils;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.function.FunctionEnvBase;
+import org.apache.jena.sparql.function.FunctionFactory;
+import org.apache.jena.sparql.util.ExprUtils;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.Assert;
+import org.junit.Test;
+import org.topbraid.spin.vocabulary.SPIN;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * To test that the functions from the {@code avc.math}, {@code avc.fn} and {@code avc.xsd} libraries
+ * are declarations of the native ARQ (java) functions and do not require any SPARQL query to be executed.
+ */
+public class NativeLibraryFunctionsTest {
+    private static final PrefixMapping PREFIXES = PrefixMapping.Factory.create()
+            .setNsPrefixes(PrefixMapping.Standard)
+            .setNsPrefix("math", "http://www.w3.org/2005/xpath-functions/math#")
+            .setNsPrefix("fn", "http://www.w3.org/2005/xpath-functions#")
+            .lock();
+
+    private static List<String> listFunctions(Resources library) {
+        return library.getGraph().find(Node.ANY, RDF.Nodes.type, SPIN.Function.asNode())
+                .mapWith(Triple::getSubject).mapWith(Node::getURI).toList();
+    }
+
+    private static void assertNative(MapManager manager) {
+        MapARQFactory factory = ((MapManagerImpl) manager).getFactory();
+        List<String> functions = Stream.of(Resources.AVC_MATH, Resources.AVC_FN, Resources.AVC_XSD)
+                .flatMap(r -> listFunctions(r).stream()).collect(Collectors.toList());
+        Assert.assertEquals(20, functions.size());
+        for (String uri : functions) {
+            FunctionFactory f = factory.getFunctionRegistry().get(uri);
+            Assert.assertNotNull("No function <" + uri + ">", f);
+            Assert.assertFalse("<" + uri + "> is SPARQL-based", f instanceof MapARQFactory.ARQFunction);
+        }
+    }
+
+    private static NodeValue eval(MapManager manager, String expr) {
+        MapARQFactory factory = ((MapManagerImpl) manager).getFactory();
+        return ExprUtils.parse(expr, PREFIXES)
+                .eval(BindingFactory.binding(), new FunctionEnvBase(factory.getContext()));
+    }
+
+    @Test
+    public void testNativeFunctions() {
+        Stream.of(Resources.AVC_MATH, Resources.AVC_FN, Resources.AVC_XSD).forEach(r ->
+                Assert.assertFalse(r + " has spin:body", r.getGraph().contains(Node.ANY, SPIN.body.asNode(), Node.ANY)));
+        assertNative(TestUtils.withConfig(MapConfigImpl.INSTANCE));
+        assertNative(TestUtils.withConfig(MapConfigImpl.INSTANCE.setAllOptimizations(false)));
+    }
+
+    @Test
+    public void testEvaluation() {
+        MapManager m = TestUtils.withConfig(MapConfigImpl.INSTANCE);
+        Assert.assertEquals(Math.PI, eval(m, "math:pi()").getDouble(), 0);
+        Assert.assertEquals(Math.sin(0.5), eval(m, "math:sin(0.5e0)").getDouble(), 1e-12);
+        Assert.assertEquals(Math.acos(0.5), eval(m, "math:acos(0.5e0)").getDouble(), 1e-12);
+        Assert.assertEquals(Math.atan2(1, 2), eval(m, "math:atan2(1e0, 2e0)").getDouble(), 1e-12);
+        Assert.assertEquals(8, eval(m, "math:pow(2, 3)").getDouble(), 0);
+        Assert.assertEquals(3, eval(m, "math:log10(1000e0)").getDouble(), 1e-12);
+        Assert.assertEquals("12.50", eval(m, "fn:format-number(12.5, '#.00')").getString());
+        Assert.assertEquals(42, eval(m, "xsd:int('42')").getInteger().intValue());
+        Assert.assertEquals(-7, eval(m, "xsd:byte('-7')").getInteger().intValue());
+        Assert.assertEquals(2.5, eval(m, "xsd:double('2.5')").getDouble(), 0);
+    }
+}
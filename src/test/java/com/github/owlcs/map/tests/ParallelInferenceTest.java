@@ -0,0 +1,81 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.tests;
+
+import com.github.owlcs.map.MapJenaException;
+import com.github.owlcs.map.MapManager;
+import com.github.owlcs.map.MapModel;
+import com.github.owlcs.map.spin.MapConfigImpl;
+import com.github.owlcs.map.utils.TestUtils;
+import com.github.owlcs.ontapi.jena.OntModelFactory;
+import com.github.owlcs.ontapi.jena.model.OntClass;
+import com.github.owlcs.ontapi.jena.model.OntDataProperty;
+import com.github.owlcs.ontapi.jena.model.OntModel;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.compose.Union;
+import org.apache.jena.mem.GraphMem;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * To test that the parallel inference gives the same result as the sequential one.
+ */
+public class ParallelInferenceTest {
+    private static final int NUMBER_OF_INDIVIDUALS = 2_000;
+
+    @Test
+    public void testParallelInferenceGivesSameResult() {
+        Graph schema = DiffInferenceTest.assembleSrcSchema();
+        Graph data = assembleSrcData(schema, NUMBER_OF_INDIVIDUALS);
+
+        Graph expected = runInference(MapConfigImpl.INSTANCE, schema, data);
+        Graph actual = runInference(MapConfigImpl.INSTANCE.setInferenceThreads(4), schema, data);
+
+        Assert.assertEquals(NUMBER_OF_INDIVIDUALS * 2, expected.size());
+        Assert.assertEquals(expected.size(), actual.size());
+        Assert.assertTrue(expected.isIsomorphicWith(actual));
+    }
+
+    @Test(expected = MapJenaException.IllegalArgument.class)
+    public void testWrongNumberOfThreads() {
+        MapConfigImpl.INSTANCE.setInferenceThreads(0);
+    }
+
+    static Graph runInference(MapConfigImpl config, Graph schema, Graph data) {
+        OntModel target = DiffInferenceTest.assembleTargetModel();
+        MapManager manager = TestUtils.withConfig(config);
+        MapModel mapping = DiffInferenceTest.assembleMapping(manager, schema, target.getGraph());
+        Graph res = new GraphMem();
+        mapping.runInference(data, res);
+        return res;
+    }
+
+    static Graph assembleSrcData(Graph schema, int num) {
+        Union u = new Union(new GraphMem(), schema);
+        OntModel m = OntModelFactory.createModel(u);
+        String ns = m.getNsPrefixURI("x");
+        OntClass c = TestUtils.findOntEntity(m, OntClass.Named.class, "Class");
+        OntDataProperty p1 = TestUtils.findOntEntity(m, OntDataProperty.class, "Property-1");
+        OntDataProperty p2 = TestUtils.findOntEntity(m, OntDataProperty.class, "Property-2");
+        for (int i = 1; i <= num; i++) {
+            c.createIndividual(ns + "i" + i).addProperty(p1, "a#" + i).addProperty(p2, "b#" + i);
+        }
+        return u.getL();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.owlcs.map.tests;
+
+import com.github.owlcs.map.spin.system.ResourceSnapshots;
+import com.github.owlcs.map.spin.system.Resources;
+import org.apache.jena.atlas.io.IO;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.mem.GraphMem;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * To test {@link ResourceSnapshots}: the binary snapshots of the system libraries.
+ */
+public class ResourceSnapshotsTest {
+
+    private static byte[] readTurtle(String path) throws IOException {
+        try (InputStream in = ResourceSnapshotsTest.class.getResourceAsStream(path)) {
+            return IO.readWholeFile(in);
+        }
+    }
+
+    private static Graph parseTurtle(byte[] turtle) {
+        Graph res = new GraphMem();
+        RDFDataMgr.read(res, new ByteArrayInputStream(turtle), null, Lang.TURTLE);
+        return res;
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        for (String path : Arrays.asList("/etc/spl.spin.ttl", "/etc/avc.spin.ttl", "/etc/spinmapl.spin.ttl")) {
+            byte[] turtle = readTurtle(path);
+            Graph expected = parseTurtle(turtle);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ResourceSnapshots.write(expected, turtle, out);
+
+            Graph actual = new GraphMem();
+            Assert.assertTrue(ResourceSnapshots.read(new ByteArrayInputStream(out.toByteArray()), turtle, actual));
+            Assert.assertTrue(path, expected.isIsomorphicWith(actual));
+            Assert.assertEquals(path, expected.getPrefixMapping().getNsPrefixMap(),
+                    actual.getPrefixMapping().getNsPrefixMap());
+        }
+    }
+
+    @Test
+    public void testStaleSnapshot() throws IOException {
+        byte[] turtle = readTurtle("/etc/avc.math.ttl");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResourceSnapshots.write(parseTurtle(turtle), turtle, out);
+        byte[] changed = (new String(turtle, StandardCharsets.UTF_8) + "\n").getBytes(StandardCharsets.UTF_8);
+
+        Graph g = new GraphMem();
+        Assert.assertFalse(ResourceSnapshots.read(new ByteArrayInputStream(out.toByteArray()), changed, g));
+        Assert.assertTrue(g.isEmpty());
+        Assert.assertFalse(ResourceSnapshots.read(new ByteArrayInputStream(new byte[3]), turtle, g));
+    }
+
+    @Test
+    public void testLoadedLibraries() throws IOException {
+        // the libraries are loaded either from snapshots or from turtle, the content must be the same:
+        Assert.assertTrue(parseTurtle(readTurtle("/etc/spif.ttl")).isIsomorphicWith(Resources.SPIF.getGraph()));
+        Assert.assertTrue(parseTurtle(readTurtle("/etc/avc.lib.ttl")).isIsomorphicWith(Resources.AVC_LIB.getGraph()));
+    }
+}
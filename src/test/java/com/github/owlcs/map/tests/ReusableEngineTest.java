@@ -0,0 +1,118 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.tests;
+
+import com.github.owlcs.map.Managers;
+import com.github.owlcs.map.MapFunction;
+import com.github.owlcs.map.MapManager;
+import com.github.owlcs.map.MapJenaException;
+import com.github.owlcs.map.MapModel;
+import com.github.owlcs.map.spin.vocabulary.ARQ;
+import com.github.owlcs.map.spin.vocabulary.AVC;
+import com.github.owlcs.map.spin.vocabulary.SPINMAPL;
+import com.github.owlcs.map.tests.maps.SelfMapTest;
+import com.github.owlcs.ontapi.jena.UnionGraph;
+import com.github.owlcs.ontapi.jena.model.OntClass;
+import com.github.owlcs.ontapi.jena.model.OntModel;
+import com.github.owlcs.ontapi.jena.vocabulary.RDF;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.topbraid.spin.vocabulary.SP;
+import org.topbraid.spin.vocabulary.SPINMAP;
+
+/**
+ * To test that an {@link MapManager.InferenceEngine} can be reused for many runs,
+ * and that it sees the changes of the mapping made between the runs.
+ */
+public class ReusableEngineTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReusableEngineTest.class);
+
+    @Test
+    public void testRunEngineManyTimes() {
+        MapManager manager = Managers.createMapManager();
+        OntModel t = SelfMapTest.createTargetModel();
+        MapModel m = SelfMapTest.composeSimplestMapping(manager, SelfMapTest.createSourceModel(1), t);
+        MapManager.InferenceEngine engine = manager.getInferenceEngine(m);
+        for (int i = 1; i < 5; i++) {
+            OntModel s = SelfMapTest.createSourceModel(i * 3);
+            Graph res = SelfMapTest.createTargetModel().getBaseGraph();
+            engine.run(s.getGraph(), res);
+            Assert.assertEquals("Run #" + i, i * 3, count(res, t));
+        }
+    }
+
+    @Test
+    public void testRunEngineAfterMappingChange() {
+        MapManager manager = Managers.createMapManager();
+        OntModel s = SelfMapTest.createSourceModel(12);
+        OntModel t = SelfMapTest.createTargetModel();
+        MapModel m = SelfMapTest.composeSimplestMapping(manager, s, t);
+        MapManager.InferenceEngine engine = manager.getInferenceEngine(m);
+
+        Graph res1 = SelfMapTest.createTargetModel().getBaseGraph();
+        engine.run(s.getGraph(), res1);
+        Assert.assertEquals(12, count(res1, t));
+
+        // replace the context with a filtering one:
+        m.deleteContext(m.contexts().findFirst().orElseThrow(AssertionError::new));
+        OntClass src = s.classes().findFirst().orElseThrow(AssertionError::new);
+        OntClass dst = t.classes().findFirst().orElseThrow(AssertionError::new);
+        MapFunction.Builder filter = manager.getFunction(SP.resource("contains")).create()
+                .addFunction(SP.arg1, manager.getFunction(ARQ.resource("localname")).create()
+                        .addFunction(SP.arg1, manager.getFunction(AVC.currentIndividual).create().build()))
+                .addLiteral(SP.arg2, "-1");
+        m.createContext(src, dst).addClassBridge(filter.build(), manager.getFunction(SPINMAPL.self).create().build());
+
+        Graph res2 = SelfMapTest.createTargetModel().getBaseGraph();
+        engine.run(s.getGraph(), res2);
+        Assert.assertEquals(4, count(res2, t));
+    }
+
+    @Test
+    public void testRunEngineAfterBaseGraphChange() {
+        MapManager manager = Managers.createMapManager();
+        OntModel s = SelfMapTest.createSourceModel(3);
+        OntModel t = SelfMapTest.createTargetModel();
+        MapModel m = SelfMapTest.composeSimplestMapping(manager, s, t);
+        MapManager.InferenceEngine engine = manager.getInferenceEngine(m);
+
+        Graph res = SelfMapTest.createTargetModel().getBaseGraph();
+        engine.run(s.getGraph(), res);
+        Assert.assertEquals(3, count(res, t));
+
+        // remove all rules bypassing the union graph, its listeners know nothing about that:
+        Graph base = ((UnionGraph) m.asGraphModel().getGraph()).getBaseGraph();
+        base.remove(Node.ANY, SPINMAP.rule.asNode(), Node.ANY);
+        try {
+            engine.run(s.getGraph(), SelfMapTest.createTargetModel().getBaseGraph());
+            Assert.fail("The engine uses the stale rules");
+        } catch (MapJenaException e) {
+            LOGGER.debug("Expected: '{}'", e.getMessage());
+        }
+    }
+
+    private static long count(Graph res, OntModel schema) {
+        OntClass c = schema.classes().findFirst().orElseThrow(AssertionError::new);
+        return res.find(null, RDF.type.asNode(), c.asNode()).toList().size();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.tests;
+
+import com.github.owlcs.map.Managers;
+import com.github.owlcs.map.MapFunction;
+import com.github.owlcs.map.MapManager;
+import com.github.owlcs.map.MapModel;
+import com.github.owlcs.map.spin.infer.InferenceEngineImpl;
+import com.github.owlcs.map.spin.infer.RuleIndex;
+import com.github.owlcs.map.spin.infer.RuleSchedule;
+import com.github.owlcs.map.spin.vocabulary.SPINMAPL;
+import com.github.owlcs.map.tests.maps.MultiContextMapTest;
+import com.github.owlcs.map.utils.TestUtils;
+import com.github.owlcs.ontapi.jena.OntModelFactory;
+import com.github.owlcs.ontapi.jena.model.OntClass;
+import com.github.owlcs.ontapi.jena.model.OntModel;
+import com.github.owlcs.ontapi.jena.vocabulary.RDF;
+import org.apache.jena.graph.Node;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * To test {@link RuleSchedule}: the dependency waves of mapping rules.
+ */
+public class RuleScheduleTest {
+
+    private static RuleSchedule<?> createSchedule(MapManager manager, MapModel mapping) {
+        InferenceEngineImpl engine = (InferenceEngineImpl) manager.getInferenceEngine(mapping);
+        return new RuleSchedule<>(new RuleIndex<>(engine.selectMapRules(engine.assembleQueryModel())));
+    }
+
+    private static Set<Node> subjects(RuleIndex<?> rules) {
+        return rules.rules().stream().map(x -> x.getSubject().asNode()).collect(Collectors.toSet());
+    }
+
+    @Test
+    public void testChainedContexts() {
+        int num = 5;
+        String ns = "http://chain#";
+        OntModel s = OntModelFactory.createModel().setNsPrefixes(OntModelFactory.STANDARD);
+        s.setID("http://chain");
+        OntClass a = s.createOntClass(ns + "A");
+        OntClass b = s.createOntClass(ns + "B");
+        OntClass c = s.createOntClass(ns + "C");
+        for (int i = 0; i < num; i++) {
+            a.createIndividual(ns + "i" + i);
+        }
+        MapManager manager = Managers.createMapManager();
+        MapModel m = manager.createMapModel();
+        MapFunction.Builder self = manager.getFunction(SPINMAPL.self).create();
+        m.createContext(b, c).addClassBridge(self.build());
+        m.createContext(a, b).addClassBridge(self.build());
+
+        RuleSchedule<?> schedule = createSchedule(manager, m);
+        Assert.assertEquals(2, schedule.size());
+        Assert.assertFalse(schedule.isCyclic(1));
+        Assert.assertEquals(Collections.singleton(a.asNode()), subjects(schedule.wave(0)));
+        Assert.assertEquals(Collections.singleton(b.asNode()), subjects(schedule.wave(1)));
+
+        OntModel t = OntModelFactory.createModel();
+        m.runInference(s.getGraph(), t.getGraph());
+        Assert.assertEquals(num, t.listResourcesWithProperty(RDF.type, b).toList().size());
+        Assert.assertEquals(num, t.listResourcesWithProperty(RDF.type, c).toList().size());
+    }
+
+    @Test
+    public void testCyclicContexts() {
+        MultiContextMapTest data = new MultiContextMapTest();
+        OntModel s = data.assembleSource();
+        OntModel t = data.assembleTarget();
+        MapManager manager = Managers.createMapManager();
+        MapModel m = data.assembleMapping(manager, s, t);
+        OntClass res = TestUtils.findOntEntity(t, OntClass.Named.class, "Res");
+
+        RuleSchedule<?> schedule = createSchedule(manager, m);
+        int last = schedule.size() - 1;
+        Assert.assertTrue(schedule.isCyclic(last));
+        Assert.assertTrue(subjects(schedule.wave(last)).contains(res.asNode()));
+        for (int i = 0; i < last; i++) {
+            Assert.assertFalse(schedule.isCyclic(i));
+            Assert.assertFalse(subjects(schedule.wave(i)).contains(res.asNode()));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.owlcs.map.tests;
+
+import com.github.owlcs.map.spin.MapARQFactory;
+import com.github.owlcs.map.spin.functions.spl.object;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.function.FunctionEnvBase;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.sparql.util.Context;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * To test the {@link MapARQFactory#SEARCH_GRAPH search graph} of the data lookup functions.
+ */
+public class SearchGraphTest {
+
+    @Test
+    public void testObjectUsesSearchGraph() {
+        Node s = NodeFactory.createURI("urn:s");
+        Node p = NodeFactory.createURI("urn:p");
+        Graph active = GraphFactory.createGraphMem();
+        active.add(Triple.create(s, p, NodeFactory.createLiteral("active")));
+        Graph search = GraphFactory.createGraphMem();
+        search.add(Triple.create(s, p, NodeFactory.createLiteral("search")));
+
+        Context context = new Context();
+        FunctionEnvBase env = new FunctionEnvBase(context, active, DatasetGraphFactory.wrap(active));
+        ExprList args = new ExprList();
+        args.add(NodeValue.makeNode(s));
+        args.add(NodeValue.makeNode(p));
+        object func = new object();
+        func.build(null, args);
+
+        Assert.assertEquals(active, MapARQFactory.getSearchGraph(env));
+        Assert.assertEquals("active", func.exec(BindingFactory.binding(), args, null, env).getString());
+        context.set(MapARQFactory.SEARCH_GRAPH, search);
+        Assert.assertEquals(search, MapARQFactory.getSearchGraph(env));
+        Assert.assertEquals("search", func.exec(BindingFactory.binding(), args, null, env).getString());
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.tests;
+
+import com.github.owlcs.map.Managers;
+import com.github.owlcs.map.spin.system.Resources;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A tester (not a test) for checking the startup time:
+ * the system library graphs are loaded in parallel, so a cold manager creation
+ * should take about the time of the largest graph, rather than the sum of all of them.
+ * Must be run in a fresh JVM, alone: any previous ONT-MAP usage makes the start warm.
+ */
+@Ignore // not a test - ignore
+public class StartupPerfTester {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupPerfTester.class);
+
+    @Test
+    public void testColdStart() {
+        long start = System.nanoTime();
+        Managers.createOWLMapManager();
+        long cold = System.nanoTime() - start;
+        LOGGER.info("Cold OWLMapManager creation: {} ms", TimeUnit.NANOSECONDS.toMillis(cold));
+
+        // the sequential parsing of the same resources (the jena location mapper points to the classpath):
+        long total = 0;
+        long max = 0;
+        for (Resources r : Resources.values()) {
+            start = System.nanoTime();
+            RDFDataMgr.loadGraph(r.getURI());
+            long time = System.nanoTime() - start;
+            LOGGER.info("{}: {} ms", r, TimeUnit.NANOSECONDS.toMillis(time));
+            total += time;
+            max = Math.max(max, time);
+        }
+        LOGGER.info("Sequential loading: {} ms (the largest graph: {} ms)",
+                TimeUnit.NANOSECONDS.toMillis(total), TimeUnit.NANOSECONDS.toMillis(max));
+
+        start = System.nanoTime();
+        Managers.createOWLMapManager();
+        LOGGER.info("Warm OWLMapManager creation: {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+}
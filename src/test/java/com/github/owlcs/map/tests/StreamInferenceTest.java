@@ -0,0 +1,80 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.tests;
+
+import com.github.owlcs.map.Managers;
+import com.github.owlcs.map.MapModel;
+import com.github.owlcs.map.tests.maps.*;
+import com.github.owlcs.ontapi.jena.model.OntModel;
+import org.apache.jena.graph.Factory;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphUtil;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * To test that the inference into a {@link org.apache.jena.riot.system.StreamRDF} sink
+ * gives the same result as the inference into a graph, including mappings with dependent contexts.
+ */
+@RunWith(Parameterized.class)
+public class StreamInferenceTest {
+    private final Class<? extends AbstractMapTest> type;
+
+    public StreamInferenceTest(Class<? extends AbstractMapTest> type) {
+        this.type = type;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static List<Class<? extends AbstractMapTest>> getData() {
+        return Arrays.asList(RelatedContextMapTest.class,
+                MultiContextMapTest.class,
+                SplitMapTest.class,
+                PropertyChainMapTest.class,
+                UUIDMapTest.class);
+    }
+
+    @Test
+    public void testStreamInferenceGivesSameResult() throws Exception {
+        AbstractMapTest data = type.newInstance();
+        OntModel s = data.assembleSource();
+        OntModel t = data.assembleTarget();
+        MapModel m = data.assembleMapping(Managers.createMapManager(), s, t);
+
+        Graph expected = copy(t.getBaseGraph());
+        m.runInference(s.getGraph(), expected);
+
+        Graph actual = copy(t.getBaseGraph());
+        m.runInference(s.getGraph(), StreamRDFLib.graph(actual));
+
+        Assert.assertTrue(expected.size() > t.getBaseGraph().size());
+        Assert.assertTrue(expected.isIsomorphicWith(actual));
+    }
+
+    private static Graph copy(Graph g) {
+        Graph res = Factory.createGraphMem();
+        GraphUtil.addInto(res, g);
+        return res;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.owlcs.map.tests;
+
+import com.github.owlcs.map.spin.infer.StreamTargetGraph;
+import com.github.owlcs.ontapi.jena.vocabulary.RDF;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * To test {@link StreamTargetGraph}: which triples are kept for dependent rules and how duplicates are handled.
+ */
+public class StreamTargetGraphTest {
+    private static final Node CLASS = NodeFactory.createURI("urn:x-test:C");
+    private static final Node PROPERTY = NodeFactory.createURI("urn:x-test:p");
+
+    private static Triple triple(String subject, String value) {
+        return Triple.create(NodeFactory.createURI(subject), PROPERTY, NodeFactory.createLiteral(value));
+    }
+
+    @Test
+    public void testRetainByType() {
+        List<Triple> sink = new ArrayList<>();
+        StreamTargetGraph g = new StreamTargetGraph(collect(sink), Collections.singleton(CLASS));
+        Node i = NodeFactory.createURI("urn:x-test:i");
+        g.add(Triple.create(i, RDF.type.asNode(), CLASS));
+        g.add(triple("urn:x-test:i", "a"));
+        g.add(triple("urn:x-test:j", "b"));
+        Assert.assertEquals(2, g.size());
+        Assert.assertEquals(3, sink.size());
+        Assert.assertTrue(g.contains(triple("urn:x-test:i", "a")));
+        Assert.assertFalse(g.contains(triple("urn:x-test:j", "b")));
+    }
+
+    @Test
+    public void testRetainBeforeType() {
+        List<Triple> sink = new ArrayList<>();
+        StreamTargetGraph g = new StreamTargetGraph(collect(sink), Collections.singleton(CLASS));
+        Node i = NodeFactory.createURI("urn:x-test:i");
+        // the value comes from a rule, that is run before the rule with the type declaration:
+        g.retain(i);
+        g.add(triple("urn:x-test:i", "a"));
+        g.add(Triple.create(i, RDF.type.asNode(), CLASS));
+        Assert.assertTrue(g.contains(triple("urn:x-test:i", "a")));
+        Assert.assertEquals(2, g.size());
+        Assert.assertEquals(2, sink.size());
+    }
+
+    @Test
+    public void testDuplicates() {
+        List<Triple> sink = new ArrayList<>();
+        StreamTargetGraph g = new StreamTargetGraph(collect(sink), Collections.singleton(CLASS), 2);
+        Triple a = triple("urn:x-test:j", "a");
+        g.add(a);
+        g.add(a);
+        g.add(triple("urn:x-test:j", "b"));
+        g.add(a);
+        // within the window a duplicate is suppressed:
+        Assert.assertEquals(2, sink.size());
+        g.add(triple("urn:x-test:j", "c"));
+        g.add(triple("urn:x-test:j", "d"));
+        g.add(a);
+        // but it is passed to the sink again, when it is out of the window:
+        Assert.assertEquals(5, sink.size());
+        Assert.assertEquals(2, sink.stream().filter(a::equals).count());
+        Assert.assertEquals(0, g.size());
+    }
+
+    private static StreamRDFBase collect(List<Triple> res) {
+        return new StreamRDFBase() {
+            @Override
+            public void triple(Triple triple) {
+                res.add(triple);
+            }
+        };
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * This file is part of the ONT MAP.
+ * The contents of this file are subject to the Apache License, Version 2.0.
+ * Copyright (c) 2019, The University of Manchester, owl.cs group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.owlcs.map.tests;
+
+import com.github.owlcs.map.MapManager;
+import com.github.owlcs.map.MapModel;
+import com.github.owlcs.map.spin.MapConfigImpl;
+import com.github.owlcs.map.spin.functions.avc.UUID;
+import com.github.owlcs.map.spin.infer.InferenceEngineImpl;
+import com.github.owlcs.map.spin.vocabulary.AVC;
+import com.github.owlcs.map.tests.maps.SelfMapTest;
+import com.github.owlcs.map.utils.TestUtils;
+import com.github.owlcs.ontapi.jena.model.OntClass;
+import com.github.owlcs.ontapi.jena.model.OntIndividual;
+import com.github.owlcs.ontapi.jena.model.OntModel;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * To test the direct {@link UUID avc:UUID} implementation.
+ */
+public class UUIDFunctionTest {
+    private static final List<String> NAMES = Arrays.asList("http://ex.com#A", "", "urn:x:Ъ-√", "b0");
+
+    @Test
+    public void testMD5Mode() {
+        for (String s : NAMES) {
+            String expected = UUID.MD5_CALCULATOR.eval(NodeValue.makeString(s)).getString();
+            Assert.assertEquals(expected, UUID.Mode.MD5.apply(s));
+            Assert.assertEquals(UUID.URI_PREFIX + expected, UUID.URI_MAKER.apply(s));
+        }
+    }
+
+    @Test
+    public void testNameBasedModes() {
+        byte[] ns = toBytes(java.util.UUID.fromString("6ba7b811-9dad-11d1-80b4-00c04fd430c8"));
+        for (String s : NAMES) {
+            byte[] name = s.getBytes(StandardCharsets.UTF_8);
+            byte[] input = Arrays.copyOf(ns, ns.length + name.length);
+            System.arraycopy(name, 0, input, ns.length, name.length);
+            Assert.assertEquals(java.util.UUID.nameUUIDFromBytes(input).toString(), UUID.Mode.NAME_BASED_V3.apply(s));
+
+            java.util.UUID v5 = java.util.UUID.fromString(UUID.Mode.NAME_BASED_V5.apply(s));
+            Assert.assertEquals(5, v5.version());
+            Assert.assertEquals(2, v5.variant());
+        }
+        // known value from the python uuid module: uuid5(NAMESPACE_URL, 'http://ex.com#A')
+        Assert.assertEquals("6fe592f6-5938-55b8-85fd-d4e156d3228a", UUID.Mode.NAME_BASED_V5.apply("http://ex.com#A"));
+    }
+
+    @Test
+    public void testInferenceWithoutCache() {
+        MapConfigImpl conf = MapConfigImpl.INSTANCE.setUUIDCacheSize(0).setUUIDMode(UUID.Mode.NAME_BASED_V5);
+        MapManager manager = TestUtils.withConfig(conf);
+        OntModel s = SelfMapTest.createSourceModel(7);
+        OntModel t = SelfMapTest.createTargetModel();
+        OntClass src = s.classes().findFirst().orElseThrow(AssertionError::new);
+        OntClass dst = t.classes().findFirst().orElseThrow(AssertionError::new);
+        MapModel m = manager.createMapModel();
+        m.createContext(src, dst).addClassBridge(manager.getFunction(AVC.UUID).create().build());
+
+        InferenceEngineImpl engine = (InferenceEngineImpl) manager.getInferenceEngine(m);
+        OntModel res = TestUtils.forSchema(t);
+        engine.run(s.getGraph(), res.getGraph());
+        List<String> expected = s.individuals().map(i -> UUID.URI_PREFIX + UUID.Mode.NAME_BASED_V5.apply(i.getURI()))
+                .sorted().collect(Collectors.toList());
+        List<String> actual = res.individuals().map(OntIndividual::getURI).sorted().collect(Collectors.toList());
+        Assert.assertEquals(expected, actual);
+        Assert.assertFalse(engine.getCacheStats().containsKey("nodeToValue"));
+    }
+
+    private static byte[] toBytes(java.util.UUID uuid) {
+        byte[] res = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            res[i] = (byte) (uuid.getMostSignificantBits() >>> (56 - 8 * i));
+            res[i + 8] = (byte) (uuid.getLeastSignificantBits() >>> (56 - 8 * i));
+        }
+        return res;
+    }
+}
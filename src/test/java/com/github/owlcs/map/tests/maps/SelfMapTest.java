@@ -25,10 +25,12 @@ import com.github.owlcs.map.MapModel;
 import com.github.owlcs.map.spin.vocabulary.ARQ;
 import com.github.owlcs.map.spin.vocabulary.AVC;
 import com.github.owlcs.map.spin.vocabulary.SPINMAPL;
+import com.github.owlcs.map.utils.GraphLogListener;
 import com.github.owlcs.map.utils.TestUtils;
 import com.github.owlcs.ontapi.jena.OntModelFactory;
 import com.github.owlcs.ontapi.jena.model.OntClass;
 import com.github.owlcs.ontapi.jena.model.OntModel;
+import org.apache.jena.graph.Graph;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -36,6 +38,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.topbraid.spin.vocabulary.SP;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Created by @ssz on 18.11.2018.
  */
@@ -66,6 +70,19 @@ public class SelfMapTest extends AbstractMapTest {
         Assert.assertEquals(4, t.individuals().count());
     }
 
+    @Test
+    public void testMappingIsNotModifiedWhileInference() {
+        OntModel s = createSourceModel(12);
+        OntModel t = createTargetModel();
+        MapModel m = composeIfMapping(Managers.createMapManager(), s, t);
+        Graph g = m.asGraphModel().getBaseGraph();
+        AtomicInteger changes = new AtomicInteger();
+        g.getEventManager().register(new GraphLogListener((x, y) -> changes.incrementAndGet()));
+        m.runInference(s.getGraph(), t.getGraph());
+        Assert.assertEquals(4, t.individuals().count());
+        Assert.assertEquals("The mapping has been modified", 0, changes.get());
+    }
+
     public static OntModel createTargetModel() {
         LOGGER.debug("Create the target model.");
         String uri = "http://target.avicomp.ru";
@@ -80,6 +80,10 @@ public class SPINLibraryMaker {
         runtime.addRange(xsdString);
         runtime.addComment("A property for using to describe runtime functionality provided by ONT-MAP API", null);
 
+        OntDataProperty deterministic = m.createDataProperty(AVC.deterministic.getURI());
+        deterministic.addRange(m.getDatatype(XSD.xboolean));
+        deterministic.addComment("A property for marking functions, whose results depend on the arguments only", null);
+
         // any rdf-node datatype
         m.createDatatype(AVC.undefined.getURI()).addProperty(RDFS.comment, "Any RDF Node, i.e. either resource or literal");
 
@@ -127,7 +131,10 @@ public class SPINLibraryMaker {
 
         // SPINMAPL:concatWithSeparator optimization
         SPINMAPL.concatWithSeparator.inModel(m)
-                .addProperty(AVC.optimize, concatWithSeparator.class.getName());
+                .addProperty(AVC.optimize, concatWithSeparator.class.getName())
+                .addProperty(AVC.deterministic, Models.TRUE);
+        // SPINMAPL:changeNamespace is a pure string function
+        SPINMAPL.changeNamespace.inModel(m).addProperty(AVC.deterministic, Models.TRUE);
 
         // SPL:object optimization and optional args
         SPL.object.inModel(m)